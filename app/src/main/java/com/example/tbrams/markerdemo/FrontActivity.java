@@ -5,6 +5,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.design.widget.NavigationView;
@@ -26,15 +27,22 @@ import android.widget.Toast;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.DeclinationGrid;
+import com.example.MagneticModel;
+import com.example.WmmCoefficients;
 import com.example.tbrams.markerdemo.data.Aerodrome;
 import com.example.tbrams.markerdemo.data.ExtraMarkers;
+import com.example.tbrams.markerdemo.data.MarkerObject;
 import com.example.tbrams.markerdemo.data.NavAid;
 import com.example.tbrams.markerdemo.data.Obstacle;
 import com.example.tbrams.markerdemo.data.ReportingPoint;
 import com.example.tbrams.markerdemo.db.DataSourceArea;
 import com.example.tbrams.markerdemo.db.DbAdmin;
 import com.example.tbrams.markerdemo.dbModel.AreaItem;
+import com.google.android.gms.maps.model.LatLng;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,6 +52,11 @@ public class FrontActivity extends AppCompatActivity {
     public static final String TAG="TBR:FA";
     private static final int SETTINGS_RESULT = 3;
 
+    // Declination grid spacing and the margin added around the reference data
+    private static final double DECLINATION_CELL_SIZE = 0.25;
+    private static final double DECLINATION_MARGIN = 1.0;
+    private static final String WMM_CACHE_DIR = "wmm";
+
 
     // urls to load navigation header background image
     // and profile image
@@ -103,6 +116,10 @@ public class FrontActivity extends AppCompatActivity {
         Log.d(TAG, "onCreate: After prepare DB content, mNavAidList.size(): "+ mNavAidList.size());
         Log.d(TAG, "onCreate: After prepare DB content, AdList.size(): "+ mAerodromeList.size());
 
+        // Pick the magnetic model, then load or build the declination grid for the reference data
+        // region. Both run in the background, one after the other on the serial AsyncTask executor.
+        new MagneticModelTask().execute();
+        new DeclinationGridTask().execute();
 
         myHandler = new Handler();
 
@@ -198,13 +215,16 @@ public class FrontActivity extends AppCompatActivity {
 
 
         // Check if we can load Areas and Coordinates from the database.
-        List<AreaItem> areaList = mDataSourceArea.getAllAreas(null);
+        // Stale geometry is not generated here but stored by the map prewarm task, off this thread
+        List<AreaItem> staleList = new ArrayList<>();
+        List<AreaItem> areaList = mDataSourceArea.getAllAreas(null, staleList);
         Log.d(TAG, "onCreate: Areas from DB - areaList.size(): "+areaList.size());
         if (areaList==null||areaList.size()==0) {
             Log.d(TAG, "No area data in database");
         } else {
             // use the area list from the database
             sExtraMarkers.setAreaItemList(areaList);
+            sExtraMarkers.setStaleAreaList(staleList);
         }
     }
 
@@ -530,4 +550,100 @@ public class FrontActivity extends AppCompatActivity {
     }
 
 
+
+    /**
+     * Background task looking for a newer magnetic model, run on every start.
+     *
+     * The built in model only covers 2015 to 2020. Newer WMM .COF files dropped into the files
+     * directory are converted to binary once and then mapped on later starts, so a new model
+     * epoch does not need a new build of the app. Without a usable cache directory the COF file
+     * is simply parsed every time.
+     */
+    private class MagneticModelTask extends AsyncTask<Void, Void, Void> {
+        private final File mDir = getFilesDir();
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            double year = MagneticModel.getDecimalYear();
+            if (MarkerObject.getMagneticModel().getCoefficients().isValidFor(year)) return null;
+
+            File[] cofFiles = mDir.listFiles();
+            if (cofFiles == null) return null;
+
+            File cacheDir = new File(mDir, WMM_CACHE_DIR);
+            boolean cached = cacheDir.isDirectory() || cacheDir.mkdirs();
+
+            for (File cofFile : cofFiles) {
+                if (!cofFile.getName().toUpperCase().endsWith(".COF")) continue;
+                try {
+                    WmmCoefficients cof = cached ? WmmCoefficients.loadOrConvert(cofFile, cacheDir)
+                            : WmmCoefficients.readCof(cofFile);
+                    if (cof.isValidFor(year)) {
+                        Log.d(TAG, "MagneticModelTask: using magnetic model " + cofFile.getName());
+                        MarkerObject.setMagneticModel(new MagneticModel(cof));
+                        break;
+                    }
+                } catch (IOException e) {
+                    Log.d(TAG, "MagneticModelTask: cannot read " + cofFile.getName() + ": " + e.getMessage());
+                }
+            }
+            return null;
+        }
+    }
+
+
+
+    /**
+     * Background task loading the cached declination grid covering all nav aids and aerodromes,
+     * building and saving a new one first if there is no usable file for the current year.
+     */
+    private class DeclinationGridTask extends AsyncTask<Void, Void, DeclinationGrid> {
+        private final List<LatLng> mPositions = new ArrayList<>();
+        private final File mDir = getFilesDir();
+
+        @Override
+        protected void onPreExecute() {
+            for (NavAid na : mNavAidList) mPositions.add(na.getPosition());
+            for (Aerodrome ad : mAerodromeList) mPositions.add(ad.getPosition());
+        }
+
+        @Override
+        protected DeclinationGrid doInBackground(Void... params) {
+            if (mPositions.size() == 0) return null;
+
+            double minLat = 90, minLon = 180, maxLat = -90, maxLon = -180;
+            for (LatLng pos : mPositions) {
+                minLat = Math.min(minLat, pos.latitude);
+                maxLat = Math.max(maxLat, pos.latitude);
+                minLon = Math.min(minLon, pos.longitude);
+                maxLon = Math.max(maxLon, pos.longitude);
+            }
+
+            double year = MagneticModel.getDecimalYear();
+            MagneticModel model = MarkerObject.getMagneticModel();
+            if (!model.getCoefficients().isValidFor(year)) {
+                Log.d(TAG, "DeclinationGridTask: magnetic model not valid for " + year);
+                return null;
+            }
+
+            try {
+                return DeclinationGrid.loadOrBuild(mDir, model, year,
+                        Math.max(-89, minLat - DECLINATION_MARGIN), minLon - DECLINATION_MARGIN,
+                        Math.min(89, maxLat + DECLINATION_MARGIN), maxLon + DECLINATION_MARGIN,
+                        DECLINATION_CELL_SIZE, Runtime.getRuntime().availableProcessors());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(DeclinationGrid grid) {
+            if (grid != null) {
+                Log.d(TAG, "DeclinationGridTask: grid ready, " + grid.getRows() + "x" + grid.getCols());
+                MarkerObject.setDeclinationGrid(grid);
+            }
+        }
+    }
+
 }
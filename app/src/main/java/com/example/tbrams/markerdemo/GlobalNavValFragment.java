@@ -17,6 +17,7 @@ import android.widget.TextView;
 import com.example.tbrams.markerdemo.data.GlobalNavValData;
 import com.example.tbrams.markerdemo.data.MarkerLab;
 import com.example.tbrams.markerdemo.data.MarkerObject;
+import com.example.tbrams.markerdemo.data.RouteNav;
 
 import java.util.List;
 
@@ -149,21 +150,11 @@ updateModelData();            }
         String wind = String.valueOf(editTextWIND.getText());
 
         GlobalNavValData gnd=new GlobalNavValData(alt,tas,wind);
-        double eto=0;
-        for (int i=1;i<markerList.size();i++){
-            markerList.get(i).calcGS(gnd.getTAS(), gnd.getWINDfrom(), gnd.getWINDkts());
-            markerList.get(i).calcWCA(gnd.getTAS(), gnd.getWINDfrom(), gnd.getWINDkts());
-            markerList.get(i).calcIAS(gnd.getTAS(), gnd.getALT());
-            markerList.get(i).calcTH();
-            markerList.get(i).calcMH();
-            markerList.get(i).calcTIME();
-            if (i==1) markerList.get(i).addStartTIME();
-
-            // calculate the accumulated ETO time and update each marker accordingly
-            eto+=markerList.get(i).getTIME();
-            markerList.get(i).setETO(eto);
-            Log.d("TBR:", markerList.get(i).getText()+" ETO set to "+eto);
-        }
+
+        // Only the legs depending on values that changed are calculated again, ETO included
+        RouteNav route = markerLab.getRoute();
+        route.setGlobals(gnd.getTAS(), gnd.getALT(), gnd.getWINDfrom(), gnd.getWINDkts());
+        route.update(markerList);
 
         sendResult(RESULT_OK);
     }
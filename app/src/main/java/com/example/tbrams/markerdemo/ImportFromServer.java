@@ -4,18 +4,17 @@ package com.example.tbrams.markerdemo;
 import android.app.Activity;
 import android.util.Log;
 
-import com.example.tbrams.markerdemo.components.OpenAirParser;
 import com.example.tbrams.markerdemo.data.Aerodrome;
 import com.example.tbrams.markerdemo.data.NavAid;
 import com.example.tbrams.markerdemo.data.Obstacle;
 import com.example.tbrams.markerdemo.data.ReportingPoint;
 import com.example.tbrams.markerdemo.db.DbAdmin;
-import com.example.tbrams.markerdemo.dbModel.AreaItem;
 import com.google.api.services.sheets.v4.Sheets;
 import com.google.api.services.sheets.v4.model.ValueRange;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class ImportFromServer {
@@ -496,34 +495,46 @@ public class ImportFromServer {
                 .execute();
 
 
-        OpenAirParser  openAirParser = new OpenAirParser();
-
-        List<List<Object>> values = response.getValues();
+        final List<List<Object>> values = response.getValues();
         // Now we have an array packed with Strings from the spreadsheet
         // column 0: OpenAir Command [STRING]
         // column 1: Additional Comments [STRING] (optional)
+        if (values == null) return "No OpenAir Areas found\n";
+
+
+        // Hand the rows to the parser one OpenAir command at a time, blank and comment rows end an area
+        Iterable<String> openAirCommands = new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<List<Object>> rows = values.iterator();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return rows.hasNext();
+                    }
 
+                    @Override
+                    public String next() {
+                        List row = rows.next();
+                        if (row.size()==0 || row.get(0).toString().charAt(0)=='*') {
+                            return "DONE";
+                        }
+                        return row.get(0).toString();
+                    }
 
-        // Convert input objects to a list of OpenAir String commands
-        List<String> openAircommands=new ArrayList<>();
-        for (int i = 0; i < values.size(); i++) {
-            List row = values.get(i);
-            String tempCommand;
-            if (row.size()==0 || row.get(0).toString().charAt(0)=='*') {
-                tempCommand="DONE";
-            } else {
-                tempCommand = row.get(0).toString();
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
             }
-            openAircommands.add(tempCommand);
-        }
-
-        List<AreaItem> areaList = openAirParser.parseInitialCommands(openAircommands);
+        };
 
-        // inserting these into the database with a cleanup operation
+        // Each area goes into the database as soon as it has been parsed, replacing the old ones
         DbAdmin dbAdmin = new DbAdmin(mActivity);
-        dbAdmin.updateAreasFromMaster(areaList, true);
+        int count = dbAdmin.importAreas(openAirCommands, true);
 
-        return "OpenAir Areas parsed\n";
+        return count + " OpenAir Areas parsed\n";
     }
 
 }
@@ -3,16 +3,20 @@ package com.example.tbrams.markerdemo;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteException;
 import android.graphics.Color;
 import android.location.Address;
 import android.location.Geocoder;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Vibrator;
 import android.preference.PreferenceManager;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.DialogFragment;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -21,10 +25,15 @@ import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.IsogonicLines;
+import com.example.MagneticModel;
+import com.example.tbrams.markerdemo.components.FrameScheduler;
 import com.example.tbrams.markerdemo.components.MarkerDemoUtils;
+import com.example.tbrams.markerdemo.components.MarkerLayer;
 import com.example.tbrams.markerdemo.data.Aerodrome;
 import com.example.tbrams.markerdemo.data.ExtraMarkers;
 import com.example.tbrams.markerdemo.data.MarkerLab;
@@ -34,6 +43,7 @@ import com.example.tbrams.markerdemo.data.Obstacle;
 import com.example.tbrams.markerdemo.data.Pejling;
 import com.example.tbrams.markerdemo.data.ReportingPoint;
 import com.example.tbrams.markerdemo.db.DataSource;
+import com.example.tbrams.markerdemo.db.DataSourceArea;
 import com.example.tbrams.markerdemo.dbModel.AreaItem;
 import com.example.tbrams.markerdemo.dbModel.TripItem;
 import com.example.tbrams.markerdemo.dbModel.WpItem;
@@ -44,9 +54,11 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.Polyline;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -69,6 +81,9 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
     private static final int SETTINGS_RESULT = 3;
 
     private static final float ZOOM_OVERVIEW = 10.0f;
+    private static final double ISOGONIC_STEP = 1.0;        // Degrees between isogonic lines
+    private static final long CAMERA_IDLE_DELAY_MS = 150;   // Camera events closer than this are handled once
+    private static final long SAVE_ZOOM_DELAY_MS = 1000;    // The zoom level is saved at most this often
 
     private static final String TAG = "TBR:MDA";
 
@@ -93,12 +108,43 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
     private final List<NavAid> mVorList = new ArrayList<>();
 
     // This is used for map marker storage locally
-    private final List<Marker> mNavAidMarkers = new ArrayList<>();
-    private final List<Marker> mADMarkers = new ArrayList<>();
-    private final List<Marker> mRPMarkers = new ArrayList<>();
-    private final List<Marker> mObstacleMarkers = new ArrayList<>();
+    private MarkerLayer<NavAid> mNavAidLayer;
+    private MarkerLayer<Aerodrome> mADLayer;
+    private MarkerLayer<ReportingPoint> mRPLayer;
+    private MarkerLayer<Obstacle> mObstacleLayer;
     private final List<Polygon> mPolygons = new ArrayList<>();
 
+    // Waypoint being dragged, and whether a route update is already waiting for the next frame
+    private int mDragIndex = -1;
+    private boolean mDragFramePending;
+    private final Choreographer.FrameCallback mDragFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mDragFramePending = false;
+            updateMovedMarker(markerList, mDragIndex, mMap);
+        }
+    };
+
+    // Camera moves in quick succession are coalesced into one plot, and one save of the zoom level
+    private final Handler mHandler = new Handler();
+    private boolean mSaveZoomPending;
+    private final Runnable mCameraIdleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            plotReferenceData();
+            updateIsogonicLines();
+        }
+    };
+    private final Runnable mSaveZoomRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSaveZoomPending = false;
+            writePreferenceChanges();
+        }
+    };
+    private final List<Polyline> mIsogonicPolylines = new ArrayList<>();
+    private IsogonicTask mIsogonicTask;
+
     private static int currentMarkerIndex = -1;
 
     private Vibrator mVib;
@@ -133,6 +179,9 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
         mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
         updatePreferenceFlags();
 
+        // Generate the geometry of the areas we are going to show while the map is loading
+        new AreaPrewarmTask().execute();
+
 
         mVib = (Vibrator) this.getSystemService(VIBRATOR_SERVICE);
 
@@ -250,63 +299,51 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
             // Disable my location button though
             mMap.getUiSettings().setMyLocationButtonEnabled(false);
 
-            plotNavAids(mNavAidMarkers, mNavAidList, mMap);
-            plotAerodromes(mADMarkers, mAerodromeList, mMap);
-            plotReportingPoints(mRPMarkers, mReportingPointList, mMap);
-            plotObstacles(mObstacleMarkers, mObstacleList, mMap);
-            plotAreas(mPolygons, mAreaList, mMap);
+            prewarmIcons();
+
+            if (mNavAidLayer == null) {
+                mNavAidLayer = createNavAidLayer(mNavAidList);
+                mADLayer = createAerodromeLayer(mAerodromeList);
+                mRPLayer = createReportingPointLayer(mReportingPointList);
+                mObstacleLayer = createObstacleLayer(mObstacleList);
+                mNavAidLayer.setScheduler(getFrameScheduler());
+                mADLayer.setScheduler(getFrameScheduler());
+                mRPLayer.setScheduler(getFrameScheduler());
+                mObstacleLayer.setScheduler(getFrameScheduler());
+            }
+
+            final ProgressBar progressBar = (ProgressBar) findViewById(R.id.mapLoadProgress);
+            getFrameScheduler().setProgressListener(new FrameScheduler.ProgressListener() {
+                @Override
+                public void onProgress(int done, int total) {
+                    if (total == 0) {
+                        progressBar.setVisibility(View.GONE);
+                    } else {
+                        progressBar.setMax(total);
+                        progressBar.setProgress(done);
+                        progressBar.setVisibility(View.VISIBLE);
+                    }
+                }
+            });
+
+            plotReferenceData();
 
             mMap.setOnPolygonClickListener(new GoogleMap.OnPolygonClickListener() {
 
                 @Override
                 public void onPolygonClick(Polygon polygon) {
                     Log.d(TAG, "onPolygonClick: polygon clicked, id: " + polygon.getId());
-                    for (int i = 0; i < mPolygons.size(); i++) {
-                        Log.d(TAG, "check polygon with id: " + polygon.getId());
-                        Log.d(TAG, "mPolygons.get(i).getId(): " + mPolygons.get(i).getId());
-                        if (mPolygons.get(i).getId().equals(polygon.getId().toString())) {
-
-                            AreaItem area=mAreaList.get(i);
-                            String areaType="";
-                            switch (area.getAreaType()) {
-                                case AreaItem.CTR:
-                                    areaType="Control Zone";
-                                    break;
-                                case AreaItem.TMA:
-                                    areaType="TMA";
-                                    break;
-                                case AreaItem.TIZ:
-                                    areaType="TIZ";
-                                    break;
-                                case AreaItem.TIA:
-                                    areaType="TIA";
-                                    break;
-                                case AreaItem.LTA:
-                                    areaType="Local ATS Area";
-                                    break;
-                                case AreaItem.PROHIBITED:
-                                    areaType="Prohibited";
-                                    break;
-                                case AreaItem.RESTRICTED:
-                                    areaType="Restricted";
-                                    break;
-                                case AreaItem.SENSITIVE:
-                                    areaType="Sensitive";
-                                    break;
-                                case AreaItem.DANGER:
-                                    areaType="Danger";
-                                    break;
-                            }
-                            Snackbar.make(getCurrentFocus(),
-                                    String.format(Locale.ENGLISH, "that is %s %s %s\nFrom: %d to %d ft",
-                                            area.getAreaName(),
-                                            areaType,
-                                            area.getAreaIdent(),
-                                            area.getAreaFromAlt(),
-                                            area.getAreaToAlt()), Snackbar.LENGTH_LONG).show();
-                            break;
-                        }
-                    }
+                    AreaItem area = getAreaForPolygon(polygon);
+                    if (area != null) showAreaInfo(area);
+                }
+            });
+
+            // When areas are drawn as tiles there are no polygons to click, look the area up instead
+            mMap.setOnMapClickListener(new GoogleMap.OnMapClickListener() {
+                @Override
+                public void onMapClick(LatLng latLng) {
+                    AreaItem area = getAreaAt(latLng);
+                    if (area != null) showAreaInfo(area);
                 }
             });
 
@@ -315,7 +352,10 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
                 public void onCameraIdle() {
                     CameraPosition cameraPosition = mMap.getCameraPosition();
                     setZoomLevel(cameraPosition.zoom);
-                    writePreferenceChanges();
+                    if (!mSaveZoomPending) {
+                        mSaveZoomPending = true;
+                        mHandler.postDelayed(mSaveZoomRunnable, SAVE_ZOOM_DELAY_MS);
+                    }
 
                     if (getZoomLevel() > ZOOM_CHANGE_MAP_TYPE) {
                         Log.d(TAG, "onCameraIdle: Changing to hybrid map");
@@ -331,12 +371,9 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
                         }
 
                     }
-                    // Update both Aerodrome and Navigational aid icons was well
-                    plotNavAids(mNavAidMarkers, mNavAidList, mMap);
-                    plotAerodromes(mADMarkers, mAerodromeList, mMap);
-                    plotReportingPoints(mRPMarkers, mReportingPointList, mMap);
-                    plotObstacles(mObstacleMarkers, mObstacleList, mMap);
-                    plotAreas(mPolygons, mAreaList, mMap);
+                    // Update both Aerodrome and Navigational aid icons was well, once the camera settles
+                    mHandler.removeCallbacks(mCameraIdleRunnable);
+                    mHandler.postDelayed(mCameraIdleRunnable, CAMERA_IDLE_DELAY_MS);
 
                 }
             });
@@ -354,35 +391,27 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
                 public View getInfoContents(Marker marker) {
 
                     // check if a NavAid has been clicked
-                    for (Marker m : mNavAidMarkers) {
-                        if (marker.getId().equals(m.getId())) {
-                            Log.d(TAG, "NavAid marker clicked");
-                            return null;
-                        }
+                    if (mNavAidLayer.contains(marker)) {
+                        Log.d(TAG, "NavAid marker clicked");
+                        return null;
                     }
 
                     // check if an Aerodrome has been clicked
-                    for (Marker m : mADMarkers) {
-                        if (marker.getId().equals(m.getId())) {
-                            Log.d(TAG, "Aerodrome marker clicked");
-                            return null;
-                        }
+                    if (mADLayer.contains(marker)) {
+                        Log.d(TAG, "Aerodrome marker clicked");
+                        return null;
                     }
 
                     // check if a Reporting Point has been clicked
-                    for (Marker m : mRPMarkers) {
-                        if (marker.getId().equals(m.getId())) {
-                            Log.d(TAG, "Reporting Point marker clicked");
-                            return null;
-                        }
+                    if (mRPLayer.contains(marker)) {
+                        Log.d(TAG, "Reporting Point marker clicked");
+                        return null;
                     }
 
                     // check if an obstacle has been clicked
-                    for (Marker m : mObstacleMarkers) {
-                        if (marker.getId().equals(m.getId())) {
-                            Log.d(TAG, "Obstacle marker clicked");
-                            return null;
-                        }
+                    if (mObstacleLayer.contains(marker)) {
+                        Log.d(TAG, "Obstacle marker clicked");
+                        return null;
                     }
 
 
@@ -413,6 +442,12 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
         mMap.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
             @Override
             public boolean onMarkerClick(Marker marker) {
+                // Zoom in on a cluster rather than showing its info window
+                if (mADLayer.isCluster(marker) || mObstacleLayer.isCluster(marker)) {
+                    mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(), getZoomLevel() + 2));
+                    return true;
+                }
+
                 currentMarkerIndex = getIndexById(marker.getId(), markerList);
 
                 if (isMidPoint(marker)) {
@@ -435,22 +470,31 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
             @Override
             public void onMarkerDragStart(Marker marker) {
                 mVib.vibrate(25);
+                mDragIndex = getIndexById(marker.getId(), markerList);
             }
 
             @Override
             public void onMarkerDrag(Marker marker) {
-                updatePolyline(markerList, mMap);
+                // Drag events can come faster than the display refreshes, update once per frame
+                if (!mDragFramePending) {
+                    mDragFramePending = true;
+                    Choreographer.getInstance().postFrameCallback(mDragFrameCallback);
+                }
             }
 
             @Override
             public void onMarkerDragEnd(Marker marker) {
+                Choreographer.getInstance().removeFrameCallback(mDragFrameCallback);
+                mDragFramePending = false;
 
                 mPlanUpdated = true;
 
                 mVib.vibrate(50);
                 updateMarkerInfo(marker);
-                updatePolyline(markerList, mMap);
+                updateMovedMarker(markerList, mDragIndex, mMap);
+                if (mDragIndex >= 0) markerLab.markerMoved(mDragIndex);
                 updateNavinfo(markerList);
+                mDragIndex = -1;
             }
         });
 
@@ -516,8 +560,9 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
 
                         // Delete physical marker and then the MarkerObject
                         markerList.get(markerIndex).getMarker().remove();
-                        markerList.remove(markerIndex);
+                        markerLab.removeMarker(markerIndex);
                         updatePolyline(markerList, mMap);
+                        updateNavinfo(markerList);
 
                         // Make a snackbar message offering undo
                         Snackbar.make(findViewById(R.id.map), "Marker deleted", Snackbar.LENGTH_LONG)
@@ -577,11 +622,152 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
 
             updateMapType(mSharedPrefs, mMap);
             updateZoom(mSharedPrefs, mMap);
+            updateIsogonicLines();
 
         }
 
     }
 
+    /*
+     * Start calculating isogonic lines for the visible region in the background, or remove them if
+     * they have been switched off. A calculation still running for an earlier camera position is
+     * cancelled.
+     */
+    private void updateIsogonicLines() {
+        if (mIsogonicTask != null) {
+            mIsogonicTask.cancel(false);
+            mIsogonicTask = null;
+        }
+
+        if (isHide_isogonic()) {
+            plotIsogonicLines(mIsogonicPolylines, new ArrayList<IsogonicLines.Line>(), mMap);
+            return;
+        }
+
+        mIsogonicTask = new IsogonicTask();
+        mIsogonicTask.execute(mMap.getProjection().getVisibleRegion().latLngBounds);
+    }
+
+
+    /*
+     * Tessellate and simplify the areas that pass the current filter settings in the background,
+     * spread over all cores, so the first plotAreas() after the map is ready does not have to.
+     * Hidden areas are left alone until they are switched on.
+     *
+     * Areas loaded without usable stored geometry have their polygons written back to the
+     * database afterwards, but only those that have been generated by now - shown here or on an
+     * earlier visit to the map.
+     */
+    private class AreaPrewarmTask extends AsyncTask<Void, Void, List<AreaItem>> {
+        private final List<AreaItem> mShownAreas = new ArrayList<>();
+        private final List<AreaItem> mStaleAreas = new ArrayList<>();
+
+        @Override
+        protected void onPreExecute() {
+            for (AreaItem areaItem : mAreaList) {
+                if (!areaItem.hasLevelsOfDetail() && !isAreaHidden(areaItem)) mShownAreas.add(areaItem);
+            }
+            mStaleAreas.addAll(sExtraMarkers.getStaleAreaList());
+        }
+
+        @Override
+        protected List<AreaItem> doInBackground(Void... params) {
+            AreaItem.prepareLevelsOfDetail(mShownAreas, Runtime.getRuntime().availableProcessors());
+
+            List<AreaItem> generated = new ArrayList<>();
+            for (AreaItem areaItem : mStaleAreas) {
+                if (areaItem.hasCoordList()) generated.add(areaItem);
+            }
+            try {
+                DataSourceArea.storeGeometry(generated);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "AreaPrewarmTask: Could not store area geometry: " + e.getMessage());
+                generated.clear();
+            }
+            return generated;
+        }
+
+        @Override
+        protected void onPostExecute(List<AreaItem> stored) {
+            sExtraMarkers.getStaleAreaList().removeAll(stored);
+        }
+    }
+
+
+    private class IsogonicTask extends AsyncTask<LatLngBounds, Void, List<IsogonicLines.Line>> {
+
+        @Override
+        protected List<IsogonicLines.Line> doInBackground(LatLngBounds... params) {
+            LatLngBounds bounds = params[0];
+            double west = bounds.southwest.longitude;
+            double east = bounds.northeast.longitude;
+            if (east < west) east += 360;      // Across the date line
+
+            // Keep the number of grid nodes about the same whatever the zoom level
+            double span = Math.max(bounds.northeast.latitude - bounds.southwest.latitude, east - west);
+            double cellSize;
+            if (span <= 3) cellSize = 0.1;
+            else if (span <= 8) cellSize = 0.25;
+            else if (span <= 20) cellSize = 0.5;
+            else cellSize = 1.0;
+
+            return IsogonicLines.forRegion(MarkerObject.getMagneticModel(), MagneticModel.getDecimalYear(),
+                    bounds.southwest.latitude, west, bounds.northeast.latitude, east,
+                    cellSize, ISOGONIC_STEP, Runtime.getRuntime().availableProcessors());
+        }
+
+        @Override
+        protected void onPostExecute(List<IsogonicLines.Line> lines) {
+            if (mIsogonicTask == this) mIsogonicTask = null;
+            plotIsogonicLines(mIsogonicPolylines, lines, mMap);
+        }
+    }
+
+
+    /*
+     * Tell what area was clicked, from a polygon or a position on the area tiles
+     */
+    private void showAreaInfo(AreaItem area) {
+        String areaType="";
+        switch (area.getAreaType()) {
+            case AreaItem.CTR:
+                areaType="Control Zone";
+                break;
+            case AreaItem.TMA:
+                areaType="TMA";
+                break;
+            case AreaItem.TIZ:
+                areaType="TIZ";
+                break;
+            case AreaItem.TIA:
+                areaType="TIA";
+                break;
+            case AreaItem.LTA:
+                areaType="Local ATS Area";
+                break;
+            case AreaItem.PROHIBITED:
+                areaType="Prohibited";
+                break;
+            case AreaItem.RESTRICTED:
+                areaType="Restricted";
+                break;
+            case AreaItem.SENSITIVE:
+                areaType="Sensitive";
+                break;
+            case AreaItem.DANGER:
+                areaType="Danger";
+                break;
+        }
+        Snackbar.make(getCurrentFocus(),
+                String.format(Locale.ENGLISH, "that is %s %s %s\nFrom: %d to %d ft",
+                        area.getAreaName(),
+                        areaType,
+                        area.getAreaIdent(),
+                        area.getAreaFromAlt(),
+                        area.getAreaToAlt()), Snackbar.LENGTH_LONG).show();
+    }
+
+
     private void gotoPreferredStartLocation() {
         LatLng position = null;
         try {
@@ -600,6 +786,9 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
         setHide_recreational_ad(!mSharedPrefs.getBoolean("show_recreational_ad", true));
         setHide_reporting_points(!mSharedPrefs.getBoolean("show_reporting", true));
         setHide_obstacles(!mSharedPrefs.getBoolean("show_obstacles", true));
+        setHide_isogonic(!mSharedPrefs.getBoolean("show_isogonic", false));
+        setUse_clustering(mSharedPrefs.getBoolean("cluster_markers", true));
+        setUse_area_tiles(mSharedPrefs.getBoolean("area_tiles", false));
 
         setMaxAirspaceAlt(mSharedPrefs.getString("show_TMA_MAXALT", "5000"));
         setHide_CTR(!mSharedPrefs.getBoolean("show_CTR", false));
@@ -801,7 +990,7 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
         pejlinger = nearestVORs(marker, mVorList);
 
         MarkerObject mo = new MarkerObject(marker, marker.getTitle(), marker.getSnippet(), pejlinger);
-        markerList.add(mo);
+        markerLab.addMarker(mo);
 
         updatePolyline(markerList, mMap);
         updateNavinfo(markerList);
@@ -823,7 +1012,7 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
 
         MarkerObject mo = new MarkerObject(marker, marker.getTitle(), marker.getSnippet(), pejlinger);
 
-        markerList.add(afterThis + 1, mo);
+        markerLab.addMarker(afterThis + 1, mo);
         updatePolyline(markerList, mMap);
         updateNavinfo(markerList);
     }
@@ -870,8 +1059,13 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
 
 
     private void writePreferenceChanges() {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(this).edit();
-        editor.putString("zoomLevel", String.format(Locale.US, "%.1f", getZoomLevel()));
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String zoomLevel = String.format(Locale.US, "%.1f", getZoomLevel());
+        if (zoomLevel.equals(prefs.getString("zoomLevel", null))) return;
+
+        // apply() writes to disk in the background
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putString("zoomLevel", zoomLevel);
         editor.apply();
 
     }
@@ -895,11 +1089,22 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
         // In this version map between WpItem og MarkerObject ... we probably need to store the
         // MarkerObject in the DB when we get furhter down the road
 
+        // Nearest VORs for the whole route in one go
+        List<LatLng> locations = new ArrayList<>();
+        double[] altitudes = new double[ListFromDB.size()];
+        for (int i = 0; i < ListFromDB.size(); i++) {
+            WpItem wp = ListFromDB.get(i);
+            locations.add(new LatLng(wp.getWpLat(), wp.getWpLon()));
+            altitudes[i] = wp.getWpAltitude() == null ? 0 : wp.getWpAltitude();
+        }
+        List<ArrayList<Pejling>> pejlingList = nearestVORs(locations, altitudes, mVorList);
+
         LatLng startPoint = null;
-        for (WpItem wp : ListFromDB) {
+        for (int i = 0; i < ListFromDB.size(); i++) {
+            WpItem wp = ListFromDB.get(i);
 
             String name = wp.getWpName();
-            LatLng location = new LatLng(wp.getWpLat(), wp.getWpLon());
+            LatLng location = locations.get(i);
 
             MarkerOptions options = new MarkerOptions()
                     .draggable(true)
@@ -908,10 +1113,7 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
             Marker m = mMap.addMarker(options);
             m.setTitle(name);
 
-            ArrayList<Pejling> pejlinger = new ArrayList<>();
-            pejlinger = nearestVORs(m, mVorList);
-
-            MarkerObject mo = new MarkerObject(m, name, null, pejlinger);
+            MarkerObject mo = new MarkerObject(m, name, null, pejlingList.get(i));
 
             mo.setMyId(wp.getWpId());      // WP id
             mo.setALT(wp.getWpAltitude()); // WP Alt
@@ -923,7 +1125,7 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
                     startPoint = location;
                 }
             }
-            markerList.add(mo);
+            markerLab.addMarker(mo);
         }
 
         // Now if we did not get a starting point, we will just use the first one ... or the
@@ -963,15 +1165,41 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
 
     }
 
+
+    /*
+     * Bring the markers and areas on the map up to date with the camera and the settings. New map
+     * objects are added over the following frames, see getFrameScheduler().
+     */
+    private void plotReferenceData() {
+        plotNavAids(mNavAidLayer, mMap);
+        plotAerodromes(mADLayer, mMap);
+        plotReportingPoints(mRPLayer, mMap);
+        plotObstacles(mObstacleLayer, mMap);
+        plotAreas(mPolygons, mAreaList, mMap);
+    }
+
+
     @Override
     protected void onPause() {
         super.onPause();
 
+        // Map objects not added yet are asked for again by the next plot
+        getFrameScheduler().cancel();
+        mHandler.removeCallbacks(mCameraIdleRunnable);
+
+        if (mSaveZoomPending) {
+            mHandler.removeCallbacks(mSaveZoomRunnable);
+            mSaveZoomRunnable.run();
+        }
     }
 
     @Override
     protected void onResume() {
         super.onResume();
+
+        if (mMap != null && mNavAidLayer != null) {
+            plotReferenceData();
+        }
     }
 
     public static String getCurrentTripId() {
@@ -1068,8 +1296,9 @@ public class MarkerDemoActivity extends MarkerDemoUtils implements
 
     private void cleanUp() {
 
+        getFrameScheduler().cancel();
         mMap.clear();
-        markerList.clear();
+        markerLab.clearMarkers();
         clearMidpoints();
         clearPolyline();
     }
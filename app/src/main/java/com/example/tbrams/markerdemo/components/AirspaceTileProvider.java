@@ -0,0 +1,421 @@
+package com.example.tbrams.markerdemo.components;
+
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.BoxIndex;
+import com.example.tbrams.markerdemo.dbModel.AreaItem;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Draws the airspace areas into map tiles instead of adding a Polygon per area.
+ * <p>
+ * The map asks for tiles from its own background threads. Each tile is rendered once with a
+ * Canvas and kept as PNG bytes, in a memory LRU cache shared by all providers and in files below
+ * the cache directory. Both are keyed by a dataset version, made from the area definitions, and
+ * by the set of areas shown, so a provider for settings seen before starts with a warm cache
+ * and a new dataset never picks up old tiles.
+ * <p>
+ * The disk cache is bounded. Only the MAX_FILTER_DIRS most recently used sets of shown areas keep
+ * their tiles, and once the files add up to more than DISK_CACHE_BYTES the least recently used
+ * tiles, by file time, are removed until it is down to three quarters of that.
+ * <p>
+ * A provider is made for one fixed set of areas; when the settings change the map gets a new
+ * one. hitTest() finds the area at a position for click handling, since tiles cannot be clicked.
+ */
+public class AirspaceTileProvider implements TileProvider {
+    private static final String TAG = "TBR:AirspaceTiles";
+
+    public static final int TILE_SIZE = 256;
+    private static final String DISK_CACHE_DIR = "area_tiles";
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final long DISK_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final int MAX_FILTER_DIRS = 4;
+    private static final double INDEX_CELL_SIZE = 0.5;          // Degrees
+    private static final float STROKE_WIDTH = 3.f;              // Same as the polygons
+
+    // PNG bytes by dataset, filter and tile. An empty array is a tile with nothing on it.
+    private static final LruCache<String, byte[]> sMemoryCache = new LruCache<String, byte[]>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length + key.length() * 2;
+        }
+    };
+
+    // Bytes in the disk cache, counted when it is trimmed and then kept up to date by writeTile()
+    private static final AtomicLong sDiskBytes = new AtomicLong();
+    private static final Object sDiskLock = new Object();
+
+    private final List<AreaItem> mAreas;    // Areas to draw, lowest first
+    private final String mDataset;
+    private final String mCacheKey;
+    private final File mCacheRoot;
+    private final File mDiskDir;
+    private Geometry mGeometry;
+
+
+    /**
+     * @param allAreas  All areas of the dataset
+     * @param shown     Which of them to draw, by position in allAreas
+     * @param cacheDir  Application cache directory
+     */
+    public AirspaceTileProvider(List<AreaItem> allAreas, boolean[] shown, File cacheDir) {
+        int dataset = allAreas.size();
+        List<AreaItem> areas = new ArrayList<>();
+        for (int i = 0; i < allAreas.size(); i++) {
+            dataset = 31 * dataset + allAreas.get(i).getDefinitionHash();
+            if (shown[i]) areas.add(allAreas.get(i));
+        }
+
+        // Higher areas on top, same as the polygon z-index
+        Collections.sort(areas, new Comparator<AreaItem>() {
+            @Override
+            public int compare(AreaItem a, AreaItem b) {
+                return a.getAreaToAlt() < b.getAreaToAlt() ? -1 : (a.getAreaToAlt() == b.getAreaToAlt() ? 0 : 1);
+            }
+        });
+
+        mAreas = areas;
+        mDataset = Integer.toHexString(dataset);
+        mCacheKey = mDataset + "_" + Integer.toHexString(Arrays.hashCode(shown));
+        mCacheRoot = new File(cacheDir, DISK_CACHE_DIR);
+        mDiskDir = new File(mCacheRoot, mCacheKey);
+    }
+
+
+    /*
+     * Polygons in world coordinates - web mercator scaled to 0..1 - and an index over their
+     * bounding boxes. Made on first use, normally on one of the tile threads.
+     */
+    private static class Geometry {
+        double[][] x;
+        double[][] y;
+        BoxIndex index;
+    }
+
+
+    private synchronized Geometry getGeometry() {
+        if (mGeometry != null) return mGeometry;
+
+        int n = mAreas.size();
+        Geometry g = new Geometry();
+        g.x = new double[n][];
+        g.y = new double[n][];
+        double[] minLat = new double[n], minLon = new double[n], maxLat = new double[n], maxLon = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            List<LatLng> coords = mAreas.get(i).getCoordList();
+            int m = coords.size();
+            g.x[i] = new double[m];
+            g.y[i] = new double[m];
+            minLat[i] = minLon[i] = Double.MAX_VALUE;
+            maxLat[i] = maxLon[i] = -Double.MAX_VALUE;
+            for (int k = 0; k < m; k++) {
+                LatLng p = coords.get(k);
+                g.x[i][k] = worldX(p.longitude);
+                g.y[i][k] = worldY(p.latitude);
+                minLat[i] = Math.min(minLat[i], p.latitude);
+                maxLat[i] = Math.max(maxLat[i], p.latitude);
+                minLon[i] = Math.min(minLon[i], p.longitude);
+                maxLon[i] = Math.max(maxLon[i], p.longitude);
+            }
+            if (m == 0) {
+                minLat[i] = maxLat[i] = minLon[i] = maxLon[i] = 0;
+            }
+        }
+        g.index = new BoxIndex(minLat, minLon, maxLat, maxLon, INDEX_CELL_SIZE);
+
+        trimDiskCache();
+        mGeometry = g;
+        return g;
+    }
+
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        String name = zoom + "_" + x + "_" + y;
+        String key = mCacheKey + "/" + name;
+
+        byte[] png = sMemoryCache.get(key);
+        if (png == null) {
+            File file = new File(mDiskDir, name + ".png");
+            png = readTile(file);
+            if (png == null) {
+                png = renderTile(x, y, zoom);
+                writeTile(file, png);
+            }
+            sMemoryCache.put(key, png);
+        }
+
+        return png.length == 0 ? NO_TILE : new Tile(TILE_SIZE, TILE_SIZE, png);
+    }
+
+
+    private byte[] renderTile(int x, int y, int zoom) {
+        Geometry g = getGeometry();
+        double scale = Math.pow(2, zoom);
+
+        // Tile edges, padded for the stroke width
+        double pad = STROKE_WIDTH / TILE_SIZE;
+        double west = longitude((x - pad) / scale);
+        double east = longitude((x + 1 + pad) / scale);
+        double north = latitude((y - pad) / scale);
+        double south = latitude((y + 1 + pad) / scale);
+
+        int[] found = new int[g.index.size()];
+        int n = g.index.query(south, west, north, east, found);
+        if (n == 0) return new byte[0];
+        Arrays.sort(found, 0, n);
+
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fill.setStyle(Paint.Style.FILL);
+        Paint stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stroke.setStyle(Paint.Style.STROKE);
+        stroke.setStrokeWidth(STROKE_WIDTH);
+        stroke.setColor(Color.BLACK);
+
+        Path path = new Path();
+        for (int k = 0; k < n; k++) {
+            int i = found[k];
+            double[] px = g.x[i];
+            double[] py = g.y[i];
+            if (px.length < 2) continue;
+
+            path.rewind();
+            for (int v = 0; v < px.length; v++) {
+                float sx = (float) ((px[v] * scale - x) * TILE_SIZE);
+                float sy = (float) ((py[v] * scale - y) * TILE_SIZE);
+                if (v == 0) path.moveTo(sx, sy);
+                else path.lineTo(sx, sy);
+            }
+            path.close();
+
+            boolean control = mAreas.get(i).getAreaType() == AreaItem.CTR;
+            fill.setColor(Color.parseColor(control ? MarkerDemoUtils.CONTROL_AREA_COLOR : MarkerDemoUtils.TERMINAL_AREA_COLOR));
+            canvas.drawPath(path, fill);
+            canvas.drawPath(path, stroke);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+
+    /**
+     * The topmost area drawn at a position.
+     *
+     * @param position  Where the map was clicked
+     * @return the area, or null if there is none
+     */
+    public AreaItem hitTest(LatLng position) {
+        Geometry g = getGeometry();
+        int[] found = new int[g.index.size()];
+        int n = g.index.query(position.latitude, position.longitude, found);
+        if (n == 0) return null;
+        Arrays.sort(found, 0, n);
+
+        // The edges are straight lines on the tiles, so test in world coordinates as well
+        double wx = worldX(position.longitude);
+        double wy = worldY(position.latitude);
+        for (int k = n - 1; k >= 0; k--) {
+            int i = found[k];
+            if (contains(g.x[i], g.y[i], wx, wy)) return mAreas.get(i);
+        }
+        return null;
+    }
+
+
+    // Even-odd rule, the same as the Path fill on the tiles
+    private static boolean contains(double[] px, double[] py, double x, double y) {
+        boolean inside = false;
+        for (int a = 0, b = px.length - 1; a < px.length; b = a++) {
+            if ((py[a] > y) != (py[b] > y) && x < (px[b] - px[a]) * (y - py[a]) / (py[b] - py[a]) + px[a]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+
+    private static double worldX(double lon) {
+        return (lon + 180) / 360;
+    }
+
+    private static double worldY(double lat) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.0511, Math.min(85.0511, lat))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static double longitude(double worldX) {
+        return worldX * 360 - 180;
+    }
+
+    private static double latitude(double worldY) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * worldY))));
+    }
+
+
+    // Null if the tile has not been rendered before
+    private static byte[] readTile(File file) {
+        if (!file.exists()) return null;
+
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int read = 0;
+            while (read < data.length) {
+                int r = in.read(data, read, data.length - read);
+                if (r < 0) return null;
+                read += r;
+            }
+            file.setLastModified(System.currentTimeMillis());     // Recently used, for trimDiskCache()
+            return data;
+        } catch (IOException e) {
+            Log.e(TAG, "readTile: " + e.getMessage());
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+
+    // Written to a temporary file first, so a tile is either complete or not there
+    private void writeTile(File file, byte[] png) {
+        if (!mDiskDir.isDirectory() && !mDiskDir.mkdirs()) return;
+
+        File tmp = new File(mDiskDir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(png);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            } else if (sDiskBytes.addAndGet(png.length) > DISK_CACHE_BYTES) {
+                trimDiskCache();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "writeTile: " + e.getMessage());
+            tmp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+
+    /*
+     * Keep the disk cache within bounds. Tiles of other datasets can never be used again and go
+     * first, then the sets of shown areas not used recently, then the oldest tiles.
+     */
+    private void trimDiskCache() {
+        synchronized (sDiskLock) {
+            long now = System.currentTimeMillis();
+            if (mDiskDir.isDirectory()) mDiskDir.setLastModified(now);
+
+            File[] dirs = mCacheRoot.listFiles();
+            if (dirs == null) {
+                sDiskBytes.set(0);
+                return;
+            }
+            sortNewestFirst(dirs);
+
+            List<File> tiles = new ArrayList<>();
+            long total = 0;
+            int kept = 1;       // This provider's directory is always kept
+            for (File dir : dirs) {
+                boolean current = dir.equals(mDiskDir);
+                if (!current && (!dir.getName().startsWith(mDataset + "_") || kept >= MAX_FILTER_DIRS)) {
+                    deleteDir(dir);
+                    continue;
+                }
+                if (!current) kept++;
+
+                File[] files = dir.listFiles();
+                if (files == null) continue;
+                for (File f : files) {
+                    tiles.add(f);
+                    total += f.length();
+                }
+            }
+
+            if (total > DISK_CACHE_BYTES) {
+                File[] oldest = tiles.toArray(new File[tiles.size()]);
+                sortNewestFirst(oldest);
+                for (int i = oldest.length - 1; i >= 0 && total > DISK_CACHE_BYTES * 3 / 4; i--) {
+                    long length = oldest[i].length();
+                    if (oldest[i].delete()) total -= length;
+                }
+            }
+            sDiskBytes.set(total);
+        }
+    }
+
+
+    private static void sortNewestFirst(File[] files) {
+        // Read the times once, they are file system calls and may change while sorting
+        final long[] times = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            times[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return times[a] > times[b] ? -1 : (times[a] == times[b] ? 0 : 1);
+            }
+        });
+
+        File[] sorted = new File[files.length];
+        for (int i = 0; i < files.length; i++) {
+            sorted[i] = files[order[i]];
+        }
+        System.arraycopy(sorted, 0, files, 0, files.length);
+    }
+
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+}
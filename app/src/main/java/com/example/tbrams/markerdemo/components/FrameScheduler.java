@@ -0,0 +1,144 @@
+package com.example.tbrams.markerdemo.components;
+
+
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.PriorityQueue;
+
+/**
+ * Runs small UI thread jobs, typically adding one map object each, a few at a time so the UI
+ * keeps drawing frames while a large data set goes onto the map.
+ * <p>
+ * Jobs run from a Choreographer frame callback until FRAME_BUDGET_NS has been spent in that
+ * frame, lowest priority value first - the distance from the camera works well. Jobs that are
+ * not run because of cancel() are told so, so their owners can ask for them again later.
+ * <p>
+ * Must be used from the UI thread.
+ */
+public class FrameScheduler implements Choreographer.FrameCallback {
+    private static final long FRAME_BUDGET_NS = 4000000;   // 4 ms
+
+    public interface Job {
+        void run();
+
+        // The job was dropped without running
+        void cancel();
+    }
+
+    public interface ProgressListener {
+        // total is 0 once the queue has run dry or was cancelled
+        void onProgress(int done, int total);
+    }
+
+
+    private static class Entry implements Comparable<Entry> {
+        final Job job;
+        final double priority;
+        final long seq;
+
+        Entry(Job job, double priority, long seq) {
+            this.job = job;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) return priority < other.priority ? -1 : 1;
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+
+    private final PriorityQueue<Entry> mQueue = new PriorityQueue<>();
+    private ProgressListener mListener;
+    private boolean mPosted;
+    private long mSeq;
+    private int mDone;
+    private int mTotal;
+
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+
+    /**
+     * Queue a job for one of the coming frames.
+     *
+     * @param job       The work
+     * @param priority  Lower runs first, ties in the order posted
+     */
+    public void post(Job job, double priority) {
+        mQueue.add(new Entry(job, priority, mSeq++));
+        mTotal++;
+        if (!mPosted) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+
+        long start = System.nanoTime();
+        while (!mQueue.isEmpty() && System.nanoTime() - start < FRAME_BUDGET_NS) {
+            mQueue.poll().job.run();
+            mDone++;
+        }
+
+        if (mQueue.isEmpty()) {
+            mDone = 0;
+            mTotal = 0;
+        } else {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        if (mListener != null) mListener.onProgress(mDone, mTotal);
+    }
+
+
+    // Drop all queued jobs, for example when the activity pauses
+    public void cancel() {
+        if (mPosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mPosted = false;
+        }
+
+        Entry entry;
+        while ((entry = mQueue.poll()) != null) {
+            entry.job.cancel();
+        }
+        mDone = 0;
+        mTotal = 0;
+        if (mListener != null) mListener.onProgress(0, 0);
+    }
+
+
+    /**
+     * Priority for a job working at a position: the squared distance from the camera target in
+     * degrees of latitude, which orders jobs by distance without any trigonometry per job.
+     *
+     * @param focus Camera target
+     * @param lat   Latitude of the job
+     * @param lon   Longitude of the job
+     * @return priority for post()
+     */
+    public static double distance(LatLng focus, double lat, double lon) {
+        double dLat = lat - focus.latitude;
+        double dLon = lon - focus.longitude;
+        if (dLon > 180) dLon -= 360;
+        else if (dLon < -180) dLon += 360;
+        dLon *= Math.cos(Math.toRadians(focus.latitude));
+        return dLat * dLat + dLon * dLon;
+    }
+
+
+    public boolean isBusy() {
+        return !mQueue.isEmpty();
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.tbrams.markerdemo.components;
+
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide cache of map icons.
+ * <p>
+ * Decoded and scaled bitmaps are kept in an LRU cache bounded by their size in bytes, and the
+ * BitmapDescriptors handed to the map in a second one bounded by count. Scaled icons are keyed by
+ * resource and zoom level rounded down to ZOOM_BUCKETS_PER_LEVEL steps per level, so the same
+ * bitmap is used for every zoom inside a bucket instead of being decoded and scaled again.
+ * <p>
+ * BitmapDescriptors can only be made once the map has been initialised, so prewarm() belongs in
+ * onMapReady(). Everything is dropped again from onTrimMemory() through trimMemory().
+ * <p>
+ * Must be used from the UI thread.
+ */
+public class IconCache {
+    private static final String TAG = "TBR:IconCache";
+
+    private static final int ZOOM_BUCKETS_PER_LEVEL = 2;
+    private static final int MAX_BITMAP_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_DESCRIPTORS = 128;
+
+    // Icon sizing, see pixelSize()
+    private static final double PIXEL_SIZE_AT_ZOOM_14 = 500;
+    private static final int MAX_PIXEL_SIZE = 150;
+
+    private static IconCache sIconCache;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mBitmaps;
+    private final LruCache<String, BitmapDescriptor> mDescriptors;
+    private final Map<String, Integer> mResourceIds = new HashMap<>();
+
+
+    private IconCache(Context context) {
+        mContext = context.getApplicationContext();
+
+        int maxBytes = (int) Math.min(MAX_BITMAP_BYTES, Runtime.getRuntime().maxMemory() / 16);
+        mBitmaps = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        mDescriptors = new LruCache<>(MAX_DESCRIPTORS);
+    }
+
+    public static IconCache getIconCache(Context context) {
+        if (sIconCache == null) {
+            sIconCache = new IconCache(context);
+        }
+        return sIconCache;
+    }
+
+
+    /**
+     * Make the descriptors for a set of icons, typically one per marker category, so the first
+     * plot after start does not have to.
+     *
+     * @param resIds    Drawable resources
+     */
+    public void prewarm(int... resIds) {
+        for (int resId : resIds) {
+            fromResource(resId);
+        }
+    }
+
+
+    // Shared replacement for BitmapDescriptorFactory.fromResource()
+    public BitmapDescriptor fromResource(int resId) {
+        String key = String.valueOf(resId);
+        BitmapDescriptor descriptor = mDescriptors.get(key);
+        if (descriptor == null) {
+            descriptor = BitmapDescriptorFactory.fromResource(resId);
+            mDescriptors.put(key, descriptor);
+        }
+        return descriptor;
+    }
+
+
+    /**
+     * Icon scaled for a zoom level.
+     *
+     * @param resId     Drawable resource
+     * @param zoomLevel Camera zoom, rounded down to the bucket
+     * @return shared bitmap, must not be modified or recycled
+     */
+    public Bitmap getScaledBitmap(int resId, double zoomLevel) {
+        double bucket = zoomBucket(zoomLevel);
+        String key = resId + "@" + bucket;
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = BitmapFactory.decodeResource(mContext.getResources(), resId);
+            int size = pixelSize(bucket);
+            if (size > 0) {
+                bitmap = Bitmap.createScaledBitmap(bitmap, size, size, false);
+            }
+            mBitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+
+    // Descriptor for getScaledBitmap()
+    public BitmapDescriptor getScaledDescriptor(int resId, double zoomLevel) {
+        String key = resId + "@" + zoomBucket(zoomLevel);
+        BitmapDescriptor descriptor = mDescriptors.get(key);
+        if (descriptor == null) {
+            descriptor = BitmapDescriptorFactory.fromBitmap(getScaledBitmap(resId, zoomLevel));
+            mDescriptors.put(key, descriptor);
+        }
+        return descriptor;
+    }
+
+
+    // Look up a drawable by name once, getIdentifier() is slow
+    public int getResourceId(String iconName) {
+        Integer resId = mResourceIds.get(iconName);
+        if (resId == null) {
+            resId = mContext.getResources().getIdentifier(iconName, "drawable", mContext.getPackageName());
+            mResourceIds.put(iconName, resId);
+        }
+        return resId;
+    }
+
+
+    // Generated icons, for example cluster icons, are kept with the others under a key of their own
+    public BitmapDescriptor getDescriptor(String key) {
+        return mDescriptors.get(key);
+    }
+
+    public void putDescriptor(String key, BitmapDescriptor descriptor) {
+        mDescriptors.put(key, descriptor);
+    }
+
+
+    /**
+     * Release memory as asked by the system. Markers already on the map keep their icons.
+     *
+     * @param level Level from ComponentCallbacks2.onTrimMemory()
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            Log.d(TAG, "trimMemory: evicting all icons, level " + level);
+            mBitmaps.evictAll();
+            mDescriptors.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(TAG, "trimMemory: evicting scaled bitmaps, level " + level);
+            mBitmaps.evictAll();
+        }
+    }
+
+
+    private static double zoomBucket(double zoomLevel) {
+        return Math.floor(zoomLevel * ZOOM_BUCKETS_PER_LEVEL) / ZOOM_BUCKETS_PER_LEVEL;
+    }
+
+
+    /*
+     * Icon size in pixels at a zoom level. The size doubles with every zoom level, so it stays
+     * the same on the ground, up to MAX_PIXEL_SIZE.
+     */
+    static int pixelSize(double zoomLevel) {
+        int relativePixelSize = (int) Math.round(PIXEL_SIZE_AT_ZOOM_14 * Math.pow(2, (zoomLevel - 14)));
+        return Math.min(relativePixelSize, MAX_PIXEL_SIZE);
+    }
+}
@@ -7,6 +7,7 @@ import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.location.Address;
 import android.location.Geocoder;
+import android.os.AsyncTask;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
 import android.text.SpannableStringBuilder;
@@ -15,8 +16,12 @@ import android.text.style.ForegroundColorSpan;
 import android.util.Log;
 import android.util.TypedValue;
 
+import com.example.Geodesy;
+import com.example.IsogonicLines;
+import com.example.NearestIndex;
 import com.example.tbrams.markerdemo.R;
 import com.example.tbrams.markerdemo.data.Aerodrome;
+import com.example.tbrams.markerdemo.data.MarkerLab;
 import com.example.tbrams.markerdemo.data.MarkerObject;
 import com.example.tbrams.markerdemo.data.NavAid;
 import com.example.tbrams.markerdemo.data.Obstacle;
@@ -25,24 +30,26 @@ import com.example.tbrams.markerdemo.data.ReportingPoint;
 import com.example.tbrams.markerdemo.dbModel.AreaItem;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.Polygon;
 import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.maps.android.ui.IconGenerator;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-
-import static com.google.maps.android.SphericalUtil.computeDistanceBetween;
-import static com.google.maps.android.SphericalUtil.computeHeading;
-import static com.google.maps.android.SphericalUtil.interpolate;
+import java.util.Map;
 
 public class MarkerDemoUtils extends AppCompatActivity {
 
@@ -54,14 +61,21 @@ public class MarkerDemoUtils extends AppCompatActivity {
     public static final int NAVAID_MAX_ZOOM = 17;     // At this point we have switched to sat mode
     public static final int NAVAID_MIN_ZOOM = 7;      // At this point the cluttering is too high
     public static final int ZOOM_CHANGE_MAP_TYPE = 16;
+    public static final int CLUSTER_MAX_ZOOM = 11;    // Closer than this aerodromes and obstacles are never clustered
+    public static final int NEAREST_VOR_COUNT = 3;    // VORs kept for each way point
 
-    private static final String CONTROL_AREA_COLOR = "#10aa0000";
+    static final String CONTROL_AREA_COLOR = "#10aa0000";
     private static final float CONTROL_AREA_BORDER = 1f;
-    private static final String TERMINAL_AREA_COLOR = "#100000aa";
+    static final String TERMINAL_AREA_COLOR = "#100000aa";
     private static final float TERMINAL_AREA_BORDER = 1f;
+    private static final String ISOGONIC_LINE_COLOR = "#aa00aa00";
+    private static final int ISOGONIC_MAJOR_STEP = 5;    // Every 5th degree is drawn wider
 
     private final static List<Marker> midpointList = new ArrayList<>();
+    private final static Map<String, Integer> midpointIndexById = new HashMap<>();
     private static Polyline polyline;
+    private final static List<LatLng> polylinePoints = new ArrayList<>();
+    private final static double[] midpointBuffer = new double[2];      // UI thread only
     private float mZoomLevel;
     private String mSearchedFor;
     private boolean mMapTypeChangedByZoom = false;
@@ -72,6 +86,14 @@ public class MarkerDemoUtils extends AppCompatActivity {
 
     private boolean mHide_reporting_points = false;
     private boolean mHide_obstacles = false;
+    private boolean mHide_isogonic = true;
+    private boolean mUse_clustering = true;
+    private boolean mUse_area_tiles = false;
+
+    private IconGenerator mClusterIconGenerator;
+    private NearestIndex mVorIndex;
+    private List<NavAid> mVorIndexList;
+    private final FrameScheduler mFrameScheduler = new FrameScheduler();
 
     private int mMaxAirspaceAlt = 0;
     private boolean mHide_TMA = false;
@@ -92,6 +114,21 @@ public class MarkerDemoUtils extends AppCompatActivity {
     private boolean mHide_DME = false;
     private boolean mHide_Locator = false;
 
+    // Bumped by the setters further down, so the plot methods can tell if their last result still holds
+    private int mSettingsVersion;
+    private int mAreaSettingsVersion = -1;
+    private int mAreaLevel = -1;
+    private int[] mAreaPolygonLevel;
+    private boolean[] mAreaShown;
+    private boolean[] mAreaQueued;
+    private boolean[] mAreaWanted;          // Areas passing the settings of mAreaSettingsVersion
+    private boolean mAreaTilesStale;
+    private AreaTask mAreaTask;
+    private final Map<String, AreaItem> mAreaByPolygonId = new HashMap<>();
+    private AirspaceTileProvider mAreaTileProvider;
+    private TileOverlay mAreaTileOverlay;
+    private List<IsogonicLines.Line> mIsogonicShown;
+
 
     // MidPoint related
 
@@ -109,20 +146,29 @@ public class MarkerDemoUtils extends AppCompatActivity {
             midpointList.get(i).remove();
         }
         midpointList.clear();
+        midpointIndexById.clear();
 
         // Go through all markers and add new non draggable midpoint markers
         for (int i = 0; i < markerList.size() - 1; i++) {
-            LatLng midPt = interpolate(markerList.get(i).getMarker().getPosition(), markerList.get(i + 1).getMarker().getPosition(), 0.5);
+            LatLng midPt = midpoint(markerList.get(i).getMarker().getPosition(), markerList.get(i + 1).getMarker().getPosition());
             Marker marker = gMap.addMarker(new MarkerOptions()
                     .position(midPt)
                     .anchor((float) 0.5, (float) 0.5)
                     .alpha(.6f)
-                    .icon(BitmapDescriptorFactory.fromResource(R.drawable.ic_circle)));
+                    .icon(getIconCache().fromResource(R.drawable.ic_circle)));
 
+            midpointIndexById.put(marker.getId(), midpointList.size());
             midpointList.add(marker);
         }
     }
 
+    // Half way along the great circle between two positions
+    private static LatLng midpoint(LatLng from, LatLng to) {
+        Geodesy.interpolate(from.latitude, from.longitude, to.latitude, to.longitude, 0.5, midpointBuffer, 0);
+        return new LatLng(midpointBuffer[0], midpointBuffer[1]);
+    }
+
+
     /*
      * Determine if the marker argument is a midpoint marker
      */
@@ -132,20 +178,18 @@ public class MarkerDemoUtils extends AppCompatActivity {
 
 
     /*
-     * Look up the marker in the midpointList and return the index. If not found return
+     * Look up the marker in the midpointList by id and return the index. If not found return
      * minus one.
      */
     public static int getMidpointIndex(Marker marker) {
-        for (int i = 0; i < midpointList.size(); i++) {
-            if (midpointList.get(i).getPosition().equals(marker.getPosition()))
-                return i;
-        }
-        return -1;
+        Integer index = midpointIndexById.get(marker.getId());
+        return index == null ? -1 : index;
     }
 
 
     public static void clearMidpoints() {
         midpointList.clear();
+        midpointIndexById.clear();
     }
 
 
@@ -154,26 +198,12 @@ public class MarkerDemoUtils extends AppCompatActivity {
     /*
      * Update distance and heading info for all markers except the last one
      * After this is done all markers will have the distance to next marker and
-     * the initial heading needed to reach next marker
+     * the initial heading needed to reach next marker.
+     *
+     * Only legs changed since the last call are recalculated, see RouteNav.
      */
     public void updateNavinfo(List<MarkerObject> markerList) {
-        if (markerList.size() < 2) {
-            return;
-        }
-
-        for (int i = 0; i < markerList.size() - 1; i++) {
-            MarkerObject mFrom = markerList.get(i);
-            MarkerObject mTo = markerList.get(i + 1);
-
-            double dist = computeDistanceBetween(mFrom.getMarker().getPosition(), mTo.getMarker().getPosition());
-            double heading = computeHeading(mFrom.getMarker().getPosition(), mTo.getMarker().getPosition());
-
-            // Set these values on the to point, that way we will have all we need in the WP
-            // dist from prev, required heading from prev, IAS, TAS etc later...
-
-            mTo.setDist(dist);
-            mTo.setTT(heading);
-        }
+        MarkerLab.getMarkerLab(this).getRoute().update(markerList);
     }
 
 
@@ -182,36 +212,147 @@ public class MarkerDemoUtils extends AppCompatActivity {
      * with the sorted results
      */
     public ArrayList<Pejling> nearestVORs(Marker m, List<NavAid> vorList) {
+        List<LatLng> positions = new ArrayList<>();
+        positions.add(m.getPosition());
+
+        // A new marker has no altitude yet, only the range counts
+        return nearestVORs(positions, new double[1], vorList).get(0);
+    }
+
 
-        ArrayList<Pejling> plist = new ArrayList<>();
+    /*
+     * Nearest VORs for a whole route in one go. The VORs are found in a NearestIndex, made once
+     * for the list, and distance and heading are only calculated for the ones kept.
+     *
+     * VORs that can be received at the position and altitude - within their published range
+     * and below their ceiling - come first. If there are not enough of them the list is filled
+     * up with the nearest other VORs, so there are always NEAREST_VOR_COUNT when the list has
+     * that many.
+     */
+    public List<ArrayList<Pejling>> nearestVORs(List<LatLng> positions, double[] altitudes, List<NavAid> vorList) {
+        NearestIndex index = getVorIndex(vorList);
+
+        int count = positions.size();
+        double[] lat = new double[count];
+        double[] lon = new double[count];
+        for (int i = 0; i < count; i++) {
+            lat[i] = positions.get(i).latitude;
+            lon[i] = positions.get(i).longitude;
+        }
+        int[] found = new int[count * NEAREST_VOR_COUNT];
+        double[] dist2 = new double[found.length];
+        int[] covered = new int[count];
+        index.nearestCovered(lat, lon, altitudes, NEAREST_VOR_COUNT, found, dist2, covered);
+
+        int[] nearest = new int[NEAREST_VOR_COUNT];
+        List<ArrayList<Pejling>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ArrayList<Pejling> plist = new ArrayList<>(NEAREST_VOR_COUNT);
+            for (int k = 0; k < covered[i]; k++) {
+                plist.add(pejling(vorList.get(found[i * NEAREST_VOR_COUNT + k]), positions.get(i)));
+            }
 
-        for (int i = 0; i < vorList.size(); i++) {
-            LatLng position = vorList.get(i).getPosition();
-            double dist = computeDistanceBetween(position, m.getPosition());
-            double heading = computeHeading(position, m.getPosition());
-            int original_id = vorList.get(i).getSeq_id();
-            plist.add(new Pejling(original_id, dist, heading));
+            if (covered[i] < NEAREST_VOR_COUNT) {
+                int n = index.nearest(lat[i], lon[i], NEAREST_VOR_COUNT, nearest, dist2);
+                for (int k = 0; k < n && plist.size() < NEAREST_VOR_COUNT; k++) {
+                    if (!contains(found, i * NEAREST_VOR_COUNT, covered[i], nearest[k])) {
+                        plist.add(pejling(vorList.get(nearest[k]), positions.get(i)));
+                    }
+                }
+            }
+            result.add(plist);
         }
 
+        return result;
+    }
+
 
-        Collections.sort(plist);
+    private static Pejling pejling(NavAid vor, LatLng to) {
+        LatLng position = vor.getPosition();
+        return new Pejling(vor.getSeq_id(),
+                Geodesy.distance(position.latitude, position.longitude, to.latitude, to.longitude),
+                Geodesy.heading(position.latitude, position.longitude, to.latitude, to.longitude));
+    }
 
-        ArrayList<Pejling> result = new ArrayList<>();
-        for (int i = 0; i < 3; i++) {
-            result.add(plist.get(i));
+
+    private static boolean contains(int[] values, int from, int count, int value) {
+        for (int k = from; k < from + count; k++) {
+            if (values[k] == value) return true;
         }
+        return false;
+    }
 
-        return result;
+
+    /*
+     * The index holds the published coverage of each VOR, see Util.parseLimitations(): the
+     * range in nautical miles and the ceiling as a flight level. Altitudes are in feet.
+     */
+    private NearestIndex getVorIndex(List<NavAid> vorList) {
+        if (mVorIndex == null || mVorIndexList != vorList || mVorIndex.size() != vorList.size()) {
+            int n = vorList.size();
+            double[] lat = new double[n];
+            double[] lon = new double[n];
+            double[] range = new double[n];
+            double[] ceiling = new double[n];
+            for (int i = 0; i < n; i++) {
+                NavAid vor = vorList.get(i);
+                lat[i] = vor.getPosition().latitude;
+                lon[i] = vor.getPosition().longitude;
+                range[i] = vor.getMax_range() * 1852.;
+                ceiling[i] = vor.getMax_alt() * 100.;
+            }
+            mVorIndex = new NearestIndex(lat, lon, range, ceiling);
+            mVorIndexList = vorList;
+        }
+        return mVorIndex;
     }
 
 
     // Bitmap related
 
+    public IconCache getIconCache() {
+        return IconCache.getIconCache(this);
+    }
+
+
+    /*
+     * Make the descriptors for the marker category icons up front. Needs an initialised map,
+     * so call it from onMapReady().
+     */
+    public void prewarmIcons() {
+        getIconCache().prewarm(R.drawable.ic_device_gps_blue, R.drawable.ic_device_gps_green,
+                R.drawable.ic_device_gps_purple, R.drawable.ic_device_gps_black,
+                R.drawable.ic_device_gps_red, R.drawable.ic_device_gps_orange,
+                R.drawable.ic_device_gps_grey, R.drawable.ic_public_airfield,
+                R.drawable.ic_private_airfield, R.drawable.ic_recreational_airfield,
+                R.drawable.ic_reporting_point, R.drawable.ic_obstacle, R.drawable.ic_circle);
+    }
+
+
+    /*
+     * Map objects are added through this scheduler, a few per frame, so putting a large data set
+     * on the map does not freeze the UI. Cancel it when the activity pauses.
+     */
+    public FrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        getIconCache().trimMemory(level);
+    }
+
+
     private Dimension getDimensions(String iconName) {
-        Bitmap imageBitmap = BitmapFactory.decodeResource(getResources(), getResources().getIdentifier(iconName, "drawable", getPackageName()));
+        // Only the header is needed for the size
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(getResources(), getIconCache().getResourceId(iconName), options);
         Dimension d = new Dimension();
-        d.w = imageBitmap.getWidth();
-        d.h = imageBitmap.getHeight();
+        d.w = options.outWidth;
+        d.h = options.outHeight;
 
         return d;
     }
@@ -223,29 +364,8 @@ public class MarkerDemoUtils extends AppCompatActivity {
 
     public Bitmap resizeMapIcons(String iconName, double zoomLevel) {
 
-        // Try to get the sizing right
-        // At ZoomLevel 12 60px
-
-        // At Zoomlevel  12 100px ... not more than that
-        // 13.9  233  seems OK
-
-        double pixelSizeAtZoom14 = 500; //the size of the icon at zoom level 0
-        int maxPixelSize = 150;       //restricts the maximum size of the icon, otherwise the browser will choke at higher zoom levels trying to scale an image to millions of pixels
-        int relativePixelSize = (int) Math.round(pixelSizeAtZoom14 * Math.pow(2, (zoomLevel - 14))); // use 2 to the power of current zoom to calculate relative pixel size.  Base of exponent is 2 because relative size should double every time you zoom in
-
-        if (relativePixelSize > maxPixelSize) //restrict the maximum size of the icon
-            relativePixelSize = maxPixelSize;
-
-        Log.d(TAG, "Rel pixel size: " + relativePixelSize);
-
-        // Create bitmap from drawable and size it.. if it makes sense
-        Bitmap imageBitmap = BitmapFactory.decodeResource(getResources(), getResources().getIdentifier(iconName, "drawable", getPackageName()));
-        if (relativePixelSize > 0) {
-            Bitmap resizedBitmap = Bitmap.createScaledBitmap(imageBitmap, relativePixelSize, relativePixelSize, false);
-            return resizedBitmap;
-        } else {
-            return imageBitmap;
-        }
+        // Size doubles with each zoom level up to a max - decoded and scaled once per zoom bucket
+        return getIconCache().getScaledBitmap(getIconCache().getResourceId(iconName), zoomLevel);
     }
 
 
@@ -293,6 +413,12 @@ public class MarkerDemoUtils extends AppCompatActivity {
      * otherwise return minus one
      */
     public int getIndexById(String mid, List<MarkerObject> markerList) {
+        // The route itself has a hash index
+        MarkerLab markerLab = MarkerLab.getMarkerLab(this);
+        if (markerList == markerLab.getMarkers()) {
+            return markerLab.getIndexById(mid);
+        }
+
         for (int i = 0; i < markerList.size(); i++) {
             if (markerList.get(i).getMarker().getId().equals(mid)) {
                 return i;
@@ -367,20 +493,48 @@ public class MarkerDemoUtils extends AppCompatActivity {
             polyline = gMap.addPolyline(lineOptions);
         }
 
-        List<LatLng> points = new ArrayList<>();
+        polylinePoints.clear();
         for (int i = 0; i < markerList.size(); i++) {
-            points.add(markerList.get(i).getMarker().getPosition());
+            polylinePoints.add(markerList.get(i).getMarker().getPosition());
         }
-        polyline.setPoints(points);
+        polyline.setPoints(polylinePoints);
 
         updateMidpoints(markerList, gMap);
 
     }
 
 
+    /*
+     * Refresh the route after a single marker has moved, typically while it is being dragged.
+     *
+     * Only the point of the moved marker is replaced, and the midpoints of the legs on either
+     * side are moved rather than recreated. Anything that changes the number of markers must
+     * still go through updatePolyline(), which is also used as fallback if the two are out of step.
+     */
+    public void updateMovedMarker(List<MarkerObject> markerList, int index, GoogleMap gMap) {
+        if (polyline == null || index < 0 || polylinePoints.size() != markerList.size()
+                || (markerList.size() > 1 && midpointList.size() != markerList.size() - 1)) {
+            updatePolyline(markerList, gMap);
+            return;
+        }
+
+        LatLng position = markerList.get(index).getMarker().getPosition();
+        polylinePoints.set(index, position);
+        polyline.setPoints(polylinePoints);
+
+        if (index > 0) {
+            midpointList.get(index - 1).setPosition(midpoint(polylinePoints.get(index - 1), position));
+        }
+        if (index < markerList.size() - 1) {
+            midpointList.get(index).setPosition(midpoint(position, polylinePoints.get(index + 1)));
+        }
+    }
+
+
     public void clearPolyline() {
         polyline.remove();
         polyline = null;
+        polylinePoints.clear();
     }
 
 
@@ -451,7 +605,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_public_ad(boolean hide_public_ad) {
-        mHide_public_ad = hide_public_ad;
+        if (mHide_public_ad != hide_public_ad) {
+            mHide_public_ad = hide_public_ad;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_private_ad() {
@@ -459,7 +616,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_private_ad(boolean hide_private_ad) {
-        mHide_private_ad = hide_private_ad;
+        if (mHide_private_ad != hide_private_ad) {
+            mHide_private_ad = hide_private_ad;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_obstacles() {
@@ -467,7 +627,43 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_obstacles(boolean hide_obstacles) {
-        mHide_obstacles = hide_obstacles;
+        if (mHide_obstacles != hide_obstacles) {
+            mHide_obstacles = hide_obstacles;
+            mSettingsVersion++;
+        }
+    }
+
+    public boolean isUse_area_tiles() {
+        return mUse_area_tiles;
+    }
+
+    public void setUse_area_tiles(boolean use_area_tiles) {
+        if (mUse_area_tiles != use_area_tiles) {
+            mUse_area_tiles = use_area_tiles;
+            mSettingsVersion++;
+        }
+    }
+
+    public boolean isUse_clustering() {
+        return mUse_clustering;
+    }
+
+    public void setUse_clustering(boolean use_clustering) {
+        if (mUse_clustering != use_clustering) {
+            mUse_clustering = use_clustering;
+            mSettingsVersion++;
+        }
+    }
+
+    public boolean isHide_isogonic() {
+        return mHide_isogonic;
+    }
+
+    public void setHide_isogonic(boolean hide_isogonic) {
+        if (mHide_isogonic != hide_isogonic) {
+            mHide_isogonic = hide_isogonic;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_recreational_ad() {
@@ -475,7 +671,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_recreational_ad(boolean hide_recreational_ad) {
-        mHide_recreational_ad = hide_recreational_ad;
+        if (mHide_recreational_ad != hide_recreational_ad) {
+            mHide_recreational_ad = hide_recreational_ad;
+            mSettingsVersion++;
+        }
     }
 
     public int getMaxAirspaceAlt() {
@@ -483,11 +682,19 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setMaxAirspaceAlt(int maxAirspaceAlt) {
-        mMaxAirspaceAlt = maxAirspaceAlt;
+        if (mMaxAirspaceAlt != maxAirspaceAlt) {
+            mMaxAirspaceAlt = maxAirspaceAlt;
+            mSettingsVersion++;
+        }
     }
 
     public void setMaxAirspaceAlt(String maxAirspaceAlt) {
-        mMaxAirspaceAlt = (int) Double.parseDouble(maxAirspaceAlt);
+        setMaxAirspaceAlt((int) Double.parseDouble(maxAirspaceAlt));
+    }
+
+    // Changes whenever a setting deciding what is shown on the map changes
+    public int getSettingsVersion() {
+        return mSettingsVersion;
     }
 
     public boolean isHide_TMA() {
@@ -495,7 +702,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_TMA(boolean hide_TMA) {
-        mHide_TMA = hide_TMA;
+        if (mHide_TMA != hide_TMA) {
+            mHide_TMA = hide_TMA;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_CTR() {
@@ -503,7 +713,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_CTR(boolean hide_CTR) {
-        mHide_CTR = hide_CTR;
+        if (mHide_CTR != hide_CTR) {
+            mHide_CTR = hide_CTR;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_TIZ() {
@@ -511,7 +724,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_TIZ(boolean hide_TIZ) {
-        mHide_TIZ = hide_TIZ;
+        if (mHide_TIZ != hide_TIZ) {
+            mHide_TIZ = hide_TIZ;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_TIA() {
@@ -519,7 +735,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_TIA(boolean hide_TIA) {
-        mHide_TIA = hide_TIA;
+        if (mHide_TIA != hide_TIA) {
+            mHide_TIA = hide_TIA;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_LTA() {
@@ -527,7 +746,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_LTA(boolean hide_LTA) {
-        mHide_LTA = hide_LTA;
+        if (mHide_LTA != hide_LTA) {
+            mHide_LTA = hide_LTA;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_P() {
@@ -535,7 +757,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_P(boolean hide_P) {
-        mHide_P = hide_P;
+        if (mHide_P != hide_P) {
+            mHide_P = hide_P;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_R() {
@@ -543,7 +768,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_R(boolean hide_R) {
-        mHide_R = hide_R;
+        if (mHide_R != hide_R) {
+            mHide_R = hide_R;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_D() {
@@ -551,7 +779,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_D(boolean hide_D) {
-        mHide_D = hide_D;
+        if (mHide_D != hide_D) {
+            mHide_D = hide_D;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_ENV() {
@@ -559,7 +790,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_ENV(boolean hide_ENV) {
-        mHide_ENV = hide_ENV;
+        if (mHide_ENV != hide_ENV) {
+            mHide_ENV = hide_ENV;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_VOR() {
@@ -567,7 +801,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_VOR(boolean hide_VOR) {
-        mHide_VOR = hide_VOR;
+        if (mHide_VOR != hide_VOR) {
+            mHide_VOR = hide_VOR;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_VORDME() {
@@ -575,7 +812,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_VORDME(boolean hide_VORDME) {
-        mHide_VORDME = hide_VORDME;
+        if (mHide_VORDME != hide_VORDME) {
+            mHide_VORDME = hide_VORDME;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_NDB() {
@@ -583,7 +823,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_NDB(boolean hide_NDB) {
-        mHide_NDB = hide_NDB;
+        if (mHide_NDB != hide_NDB) {
+            mHide_NDB = hide_NDB;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_TACAN() {
@@ -591,7 +834,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_TACAN(boolean hide_TACAN) {
-        mHide_TACAN = hide_TACAN;
+        if (mHide_TACAN != hide_TACAN) {
+            mHide_TACAN = hide_TACAN;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_VORTAC() {
@@ -599,7 +845,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_VORTAC(boolean hide_VORTAC) {
-        mHide_VORTAC = hide_VORTAC;
+        if (mHide_VORTAC != hide_VORTAC) {
+            mHide_VORTAC = hide_VORTAC;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isHide_Locator() {
@@ -607,7 +856,10 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_Locator(boolean hide_Locator) {
-        mHide_Locator = hide_Locator;
+        if (mHide_Locator != hide_Locator) {
+            mHide_Locator = hide_Locator;
+            mSettingsVersion++;
+        }
     }
 
 
@@ -620,11 +872,17 @@ public class MarkerDemoUtils extends AppCompatActivity {
     }
 
     public void setHide_DME(boolean hide_DME) {
-        mHide_DME = hide_DME;
+        if (mHide_DME != hide_DME) {
+            mHide_DME = hide_DME;
+            mSettingsVersion++;
+        }
     }
 
     public void setHide_reporting_points(boolean hide_reporting_points) {
-        mHide_reporting_points = hide_reporting_points;
+        if (mHide_reporting_points != hide_reporting_points) {
+            mHide_reporting_points = hide_reporting_points;
+            mSettingsVersion++;
+        }
     }
 
     public boolean isMapTypeChangedByZoom() {
@@ -639,29 +897,21 @@ public class MarkerDemoUtils extends AppCompatActivity {
     // Nav Aids Related
 
     /*
-     * Plot NavAid icons on the map with customized markers
-     * All markers are initially created and filed away in the m list. Everything is
-     * Offset 50% in both directions, so they will center on the position of the AD.
-     *
-     *
-     * Should the markers are already be created, all we need to do is resize the icon depending on
-     * the Zoom level.
-     *
-     * For zoom levels above 16 the map type will be changed to Hybrid and there is no longer need
-     * for this marker.
-     *
+     * Marker layer for the Nav Aids. Markers are only created for Nav Aids in view, see MarkerLayer.
+     * Everything is Offset 50% in both directions, so they will center on the position of the Nav Aid.
      */
-    public void plotNavAids(List<Marker> navAidMarkers, List<NavAid> navAidList, GoogleMap gMap) {
-
-        Log.d(TAG, "plotNavAids: navAidList.size(): " + navAidList.size());
-        Log.d(TAG, "plotNavAids: navAidMarkers.size(): " + navAidMarkers.size());
+    public MarkerLayer<NavAid> createNavAidLayer(List<NavAid> navAidList) {
+        return new MarkerLayer<NavAid>(navAidList) {
+            @Override
+            protected LatLng getPosition(NavAid item) {
+                return item.getPosition();
+            }
 
-        String snippetText = "invalid";
-        int iconInt = R.drawable.ic_device_gps_blue;
-        if (navAidMarkers.size() == 0) {
-            // Create all Nav Aids markers and keep record in an ArrayList
-            for (int i = 0; i < navAidList.size(); i++) {
-                switch (navAidList.get(i).getType()) {
+            @Override
+            protected MarkerOptions createMarkerOptions(NavAid item) {
+                String snippetText = "invalid";
+                int iconInt = R.drawable.ic_device_gps_blue;
+                switch (item.getType()) {
                     case NavAid.VOR:
                         iconInt = R.drawable.ic_device_gps_blue;
                         snippetText = "VOR";
@@ -692,149 +942,94 @@ public class MarkerDemoUtils extends AppCompatActivity {
                         break;
                 }
 
-
-                Marker m = gMap.addMarker(new MarkerOptions()
-                        .title(navAidList.get(i).getIdent())
-                        .snippet(snippetText + " " + navAidList.get(i).getFreq())
-                        .position(navAidList.get(i).getPosition()).icon(BitmapDescriptorFactory.fromResource(iconInt)));
-
-                m.setAnchor(.5f, .5f);
-                navAidMarkers.add(m);
+                return new MarkerOptions()
+                        .title(item.getIdent())
+                        .snippet(snippetText + " " + item.getFreq())
+                        .position(item.getPosition())
+                        .icon(getIconCache().fromResource(iconInt))
+                        .anchor(.5f, .5f);
             }
-        }
-
-
-        // Hide/show selected markers
-        for (int i = 0; i < navAidList.size(); i++) {
-            NavAid na = navAidList.get(i);
-            Marker m = navAidMarkers.get(i);
-
-            // Double check the zoom level
-            if (getZoomLevel() > NAVAID_MAX_ZOOM || getZoomLevel() < NAVAID_MIN_ZOOM) {
-                // If exceeded then hide all markers in this category
-                m.setVisible(false);
-
-            } else {
 
+            @Override
+            protected boolean isShown(NavAid item) {
                 // Set visibility according to preferences
-                switch (na.getType()) {
+                switch (item.getType()) {
                     case NavAid.LOCATOR:
-                        if (mHide_Locator) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_Locator;
                     case NavAid.VOR:
-                        if (mHide_VOR) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_VOR;
                     case NavAid.DME:
-                        if (mHide_DME) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_DME;
                     case NavAid.VORDME:
-                        if (mHide_VORDME) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_VORDME;
                     case NavAid.NDB:
-                        if (mHide_NDB) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_NDB;
                     case NavAid.TACAN:
-                        if (mHide_TACAN) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_TACAN;
                     case NavAid.VORTAC:
-                        if (mHide_VORTAC) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_VORTAC;
+                    default:
+                        return true;
                 }
             }
-        }
+        };
+    }
 
+
+    /*
+     * Show the Nav Aid markers in the current viewport.
+     *
+     * For zoom levels above 16 the map type will be changed to Hybrid and there is no longer need
+     * for this marker.
+     */
+    public void plotNavAids(MarkerLayer<NavAid> navAidLayer, GoogleMap gMap) {
+        boolean zoomOk = getZoomLevel() <= NAVAID_MAX_ZOOM && getZoomLevel() >= NAVAID_MIN_ZOOM;
+        navAidLayer.update(gMap, gMap.getProjection().getVisibleRegion().latLngBounds, zoomOk, getSettingsVersion());
+        Log.d(TAG, "plotNavAids: markers on map: " + navAidLayer.getLiveCount());
     }
 
 
     // AD Related
 
     /*
-     * Plot Aerodrome icons on the map with customized markers
-     * All markers are initially created and filed away in the mADMarkers list. Everything is
-     * Offset 50% in both directions, so they will center on the position of the AD.
-     *
-     * When the markers are already done, all we need to do is resize the icon depending on
-     * the Zoom level.
-     *
-     * For zoom levels above 14 it seems there is n need for this functionality as the native
-     * airport markers start to appear in Google Maps.
-     *
-     * Zooming out over level 7 makes the maps ugly because of the extra large icons, so they
-     * are hidden at these levels as well
-     *
+     * Marker layer for the Aerodromes. Everything is Offset 50% in both directions, so they will
+     * center on the position of the AD.
      */
-    public void plotAerodromes(List<Marker> adMarkers, List<Aerodrome> adList, GoogleMap gMap) {
-
-        Log.d(TAG, "plotAerodromes: Entering, adList.size(): " + adList.size());
+    public MarkerLayer<Aerodrome> createAerodromeLayer(List<Aerodrome> adList) {
+        return new MarkerLayer<Aerodrome>(adList) {
+            @Override
+            protected LatLng getPosition(Aerodrome item) {
+                return item.getPosition();
+            }
 
-        // Create the markers if not already there
-        int iconPublicAirfield = R.drawable.ic_public_airfield;
-        int iconPrivateAirfield = R.drawable.ic_private_airfield;
-        int iconRecreationalAirfield = R.drawable.ic_recreational_airfield;
-        if (adMarkers.size() == 0) {
-            // Create all AD markers and keep record in an ArrayList
-            for (int i = 0; i < adList.size(); i++) {
+            @Override
+            protected MarkerOptions createMarkerOptions(Aerodrome item) {
                 int iconAD = 0;
                 String title = "";
                 String note = "";
-                switch (adList.get(i).getType()) {
+                switch (item.getType()) {
                     case Aerodrome.PUBLIC:
-                        iconAD = iconPublicAirfield;
-                        title = adList.get(i).getIcaoName();
-                        note = adList.get(i).getName();
+                        iconAD = R.drawable.ic_public_airfield;
+                        title = item.getIcaoName();
+                        note = item.getName();
                         break;
 
                     case Aerodrome.PRIVATE:
-                        iconAD = iconPrivateAirfield;
-                        title = adList.get(i).getName();
-                        if (!adList.get(i).getIcaoName().equals(""))
-                            title += " (" + adList.get(i).getIcaoName() + ")";
+                        iconAD = R.drawable.ic_private_airfield;
+                        title = item.getName();
+                        if (!item.getIcaoName().equals(""))
+                            title += " (" + item.getIcaoName() + ")";
                         note = "Private airfield ";
-                        if (adList.get(i).getRemarks() != null) note += adList.get(i).getRemarks();
+                        if (item.getRemarks() != null) note += item.getRemarks();
                         break;
 
                     case Aerodrome.RECREATIONAL:
-                        iconAD = iconRecreationalAirfield;
-                        title = adList.get(i).getName();
-                        if (!adList.get(i).getIcaoName().equals(""))
-                            title += " (" + adList.get(i).getIcaoName() + ")";
-                        note = adList.get(i).getRemarks();
-                        String activity = adList.get(i).getActivity().toUpperCase();
+                        iconAD = R.drawable.ic_recreational_airfield;
+                        title = item.getName();
+                        if (!item.getIcaoName().equals(""))
+                            title += " (" + item.getIcaoName() + ")";
+                        note = item.getRemarks();
+                        String activity = item.getActivity().toUpperCase();
                         String extraNote = "";
                         if (activity.contains("HG")) {
                             extraNote += "Hang Gliders";
@@ -856,230 +1051,494 @@ public class MarkerDemoUtils extends AppCompatActivity {
                         }
                         break;
                 }
-                Marker m = gMap.addMarker(new MarkerOptions()
+
+                return new MarkerOptions()
                         .title(title)
                         .snippet(note)
-                        .position(adList.get(i).getPosition())
-                        .icon(BitmapDescriptorFactory.fromResource(iconAD)));
-
-                m.setAnchor(0.5f, .5f);
-                adMarkers.add(m);
+                        .position(item.getPosition())
+                        .icon(getIconCache().fromResource(iconAD))
+                        .anchor(0.5f, .5f);
             }
-        }
-
-        // Hide/show selected markers
-        for (int i = 0; i < adList.size(); i++) {
-            Aerodrome ad = adList.get(i);
-            Marker m = adMarkers.get(i);
-
-            // Double check the zoom level
-            if (getZoomLevel() > AERODROME_MAX_ZOOM || getZoomLevel() < AERODROME_MIN_ZOOM) {
-
-                // If outside limits, hide all markers of this category
-                m.setVisible(false);
-
-            } else {
 
+            @Override
+            protected boolean isShown(Aerodrome item) {
                 // Set visibility according to preferences
-                switch (ad.getType()) {
+                switch (item.getType()) {
                     case Aerodrome.PUBLIC:
-                        if (mHide_public_ad) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_public_ad;
                     case Aerodrome.PRIVATE:
-                        if (mHide_private_ad) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
-
+                        return !mHide_private_ad;
                     case Aerodrome.RECREATIONAL:
-                        if (mHide_recreational_ad) {
-                            m.setVisible(false);
-                        } else {
-                            m.setVisible(true);
-                        }
-                        break;
+                        return !mHide_recreational_ad;
+                    default:
+                        // Other types never had an icon
+                        return false;
                 }
             }
-        }
 
+            @Override
+            protected MarkerOptions createClusterOptions(int count, int maxValue) {
+                return new MarkerOptions()
+                        .title(count + " aerodromes")
+                        .snippet("Zoom in for details")
+                        .icon(clusterIcon(IconGenerator.STYLE_BLUE, String.valueOf(count)))
+                        .anchor(mClusterIconGenerator.getAnchorU(), mClusterIconGenerator.getAnchorV());
+            }
+        };
+    }
+
+
+    /*
+     * Show the Aerodrome markers in the current viewport.
+     *
+     * For zoom levels above 14 it seems there is n need for this functionality as the native
+     * airport markers start to appear in Google Maps.
+     *
+     * Zooming out over level 7 makes the maps ugly because of the extra large icons, so they
+     * are hidden at these levels as well - unless clustering is on, in which case nearby
+     * aerodromes are merged into one marker below CLUSTER_MAX_ZOOM instead.
+     */
+    public void plotAerodromes(MarkerLayer<Aerodrome> adLayer, GoogleMap gMap) {
+        LatLngBounds viewport = gMap.getProjection().getVisibleRegion().latLngBounds;
+        if (isUse_clustering() && getZoomLevel() < CLUSTER_MAX_ZOOM) {
+            adLayer.updateClustered(gMap, viewport, getZoomLevel(), getSettingsVersion());
+        } else {
+            boolean zoomOk = getZoomLevel() <= AERODROME_MAX_ZOOM && (isUse_clustering() || getZoomLevel() >= AERODROME_MIN_ZOOM);
+            adLayer.update(gMap, viewport, zoomOk, getSettingsVersion());
+        }
+        Log.d(TAG, "plotAerodromes: markers on map: " + adLayer.getLiveCount());
     }
 
 
     // Reporting Points Related
 
     /**
-     * Plot Reporting Point icons on the map with customized markers.
-     * <p>
-     * All markers are initially created and filed away in the mRPMarkers list. Everything is
-     * Offset in both directions, so they will center on the position of the RP.
-     * <p>
-     * param rpMarkers  A list of Reporting Point Markers
-     * param rpList     A list of Reporting Point Objects
-     * param gMap       A handle to the map object
+     * Marker layer for the Reporting Points, offset in both directions so they will center on
+     * the position of the RP.
+     *
+     * @param rpList    A list of Reporting Point Objects
+     * @return the layer
      */
-    public void plotReportingPoints(List<Marker> rpMarkers, List<ReportingPoint> rpList, GoogleMap gMap) {
-
-        Log.d(TAG, "plotReportingPoints: Entering, rpList.size(): " + rpList.size());
-
-        // Create the markers if not alrady there
-        int iconReportingPoint = R.drawable.ic_reporting_point;
-        if (rpMarkers.size() == 0) {
-            // Create all RP markers and keep record in an ArrayList
-            for (int i = 0; i < rpList.size(); i++) {
-                Marker m = gMap.addMarker(new MarkerOptions()
-                        .title(rpList.get(i).getName())
-                        .snippet(rpList.get(i).getAerodrome() + " Reporting Point")
-                        .position(rpList.get(i).getPosition()).icon(BitmapDescriptorFactory.fromResource(iconReportingPoint)));
-
-                m.setAnchor(0.5f, .6f);
-                rpMarkers.add(m);
+    public MarkerLayer<ReportingPoint> createReportingPointLayer(List<ReportingPoint> rpList) {
+        return new MarkerLayer<ReportingPoint>(rpList) {
+            @Override
+            protected LatLng getPosition(ReportingPoint item) {
+                return item.getPosition();
             }
-        }
 
-        if (isHide_reporting_points() || getZoomLevel() > AERODROME_MAX_ZOOM || getZoomLevel() < AERODROME_MIN_ZOOM) {
-            for (Marker m : rpMarkers) {
-                m.setVisible(false);
+            @Override
+            protected MarkerOptions createMarkerOptions(ReportingPoint item) {
+                return new MarkerOptions()
+                        .title(item.getName())
+                        .snippet(item.getAerodrome() + " Reporting Point")
+                        .position(item.getPosition())
+                        .icon(getIconCache().fromResource(R.drawable.ic_reporting_point))
+                        .anchor(0.5f, .6f);
             }
-        } else {
 
-            // Update size of each ADMarker relative to zoom level
-            for (Marker m : rpMarkers) {
-                m.setVisible(true);
+            @Override
+            protected boolean isShown(ReportingPoint item) {
+                return true;
             }
-        }
+        };
+    }
+
+
+    /**
+     * Show the Reporting Point markers in the current viewport.
+     *
+     * @param rpLayer   Layer made with createReportingPointLayer()
+     * @param gMap      A handle to the map object
+     */
+    public void plotReportingPoints(MarkerLayer<ReportingPoint> rpLayer, GoogleMap gMap) {
+        boolean show = !isHide_reporting_points() && getZoomLevel() <= AERODROME_MAX_ZOOM && getZoomLevel() >= AERODROME_MIN_ZOOM;
+        rpLayer.update(gMap, gMap.getProjection().getVisibleRegion().latLngBounds, show, getSettingsVersion());
+        Log.d(TAG, "plotReportingPoints: markers on map: " + rpLayer.getLiveCount());
     }
 
 
     /**
-     * Plot Reporting Point icons on the map with customized markers.
-     * <p>
-     * All markers are initially created and filed away in the mRPMarkers list. Everything is
-     * Offset in both directions, so they will center on the position of the RP.
-     * <p>
-     * param rpMarkers  A list of Reporting Point Markers
-     * param rpList     A list of Reporting Point Objects
-     * param gMap       A handle to the map object
+     * Marker layer for the Obstacles, centered on the position of the obstacle.
+     *
+     * @param oList     A list of Obstacle Objects
+     * @return the layer
      */
-    public void plotObstacles(List<Marker> oMarkers, List<Obstacle> oList, GoogleMap gMap) {
-
-        Log.d(TAG, "plotObstacles: Entering, oList.size(): " + oList.size());
-
-        // Create the markers if not already there
-        int iconObstacle = R.drawable.ic_obstacle;
-        if (oMarkers.size() == 0) {
-            // Create all Obstacle markers and keep record in an ArrayList
-            for (int i = 0; i < oList.size(); i++) {
-                Marker m = gMap.addMarker(new MarkerOptions()
-                        .title(oList.get(i).getName())
-                        .snippet(String.format(Locale.ENGLISH, "%d ft/ %d ft", oList.get(i).getElevation(), oList.get(i).getHeight()))
-                        .position(oList.get(i).getPosition())
-                        .icon(BitmapDescriptorFactory.fromResource(iconObstacle)));
-
-                m.setAnchor(0.5f, .5f);
-                oMarkers.add(m);
+    public MarkerLayer<Obstacle> createObstacleLayer(List<Obstacle> oList) {
+        return new MarkerLayer<Obstacle>(oList) {
+            @Override
+            protected LatLng getPosition(Obstacle item) {
+                return item.getPosition();
             }
-        }
 
-        if (isHide_obstacles() || getZoomLevel() > OBSTACLE_MAX_ZOOM || getZoomLevel() < OBSTACLE_MIN_ZOOM) {
-            for (Marker m : oMarkers) {
-                m.setVisible(false);
+            @Override
+            protected MarkerOptions createMarkerOptions(Obstacle item) {
+                return new MarkerOptions()
+                        .title(item.getName())
+                        .snippet(String.format(Locale.ENGLISH, "%d ft/ %d ft", item.getElevation(), item.getHeight()))
+                        .position(item.getPosition())
+                        .icon(getIconCache().fromResource(R.drawable.ic_obstacle))
+                        .anchor(0.5f, .5f);
             }
-        } else {
-            for (Marker m : oMarkers) {
-                m.setVisible(true);
+
+            @Override
+            protected boolean isShown(Obstacle item) {
+                return true;
             }
+
+            @Override
+            protected int getClusterValue(Obstacle item) {
+                return item.getHeight();
+            }
+
+            @Override
+            protected MarkerOptions createClusterOptions(int count, int maxValue) {
+                String highest = String.format(Locale.ENGLISH, "%d ft", maxValue);
+                return new MarkerOptions()
+                        .title(count + " obstacles")
+                        .snippet("Highest " + highest)
+                        .icon(clusterIcon(IconGenerator.STYLE_RED, count + "\n" + highest))
+                        .anchor(mClusterIconGenerator.getAnchorU(), mClusterIconGenerator.getAnchorV());
+            }
+        };
+    }
+
+
+    /**
+     * Show the Obstacle markers in the current viewport. With clustering on, obstacles are merged
+     * into markers showing their number and the highest of them below CLUSTER_MAX_ZOOM, rather
+     * than hidden below OBSTACLE_MIN_ZOOM.
+     *
+     * @param oLayer    Layer made with createObstacleLayer()
+     * @param gMap      A handle to the map object
+     */
+    public void plotObstacles(MarkerLayer<Obstacle> oLayer, GoogleMap gMap) {
+        LatLngBounds viewport = gMap.getProjection().getVisibleRegion().latLngBounds;
+        if (!isHide_obstacles() && isUse_clustering() && getZoomLevel() < CLUSTER_MAX_ZOOM) {
+            oLayer.updateClustered(gMap, viewport, getZoomLevel(), getSettingsVersion());
+        } else {
+            boolean show = !isHide_obstacles() && getZoomLevel() <= OBSTACLE_MAX_ZOOM && (isUse_clustering() || getZoomLevel() >= OBSTACLE_MIN_ZOOM);
+            oLayer.update(gMap, viewport, show, getSettingsVersion());
         }
+        Log.d(TAG, "plotObstacles: markers on map: " + oLayer.getLiveCount());
     }
 
 
-    public void plotAreas(List<Polygon> polygonList, List<AreaItem> areaItemList, GoogleMap gMap) {
+    /*
+     * Cluster icons are made with the IconGenerator from maps utils. The same counts come up
+     * again and again while zooming, so they are kept in the IconCache.
+     */
+    private BitmapDescriptor clusterIcon(int style, String text) {
+        if (mClusterIconGenerator == null) {
+            mClusterIconGenerator = new IconGenerator(this);
+        }
 
-        String color;
+        String key = "cluster:" + style + ":" + text;
+        IconCache iconCache = getIconCache();
+        BitmapDescriptor icon = iconCache.getDescriptor(key);
+        if (icon == null) {
+            mClusterIconGenerator.setStyle(style);
+            icon = BitmapDescriptorFactory.fromBitmap(mClusterIconGenerator.makeIcon(text));
+            iconCache.putDescriptor(key, icon);
+        }
+        return icon;
+    }
 
-        if (polygonList.size() == 0) {
-            // Create all area Polygons and keep record in an ArrayList
 
-            for (AreaItem areaItem : areaItemList) {
-                List<LatLng> coords = areaItem.getCoordList();
-                String name = areaItem.getAreaName();
+    /*
+     * Polygons are only created once an area is to be shown, so areas that stay hidden never need
+     * their geometry generated. Until then the polygonList holds null at the index of the area.
+     *
+     * The polygons use the level of detail for the zoom, see AreaItem.levelForZoom(), and get
+     * new points when the zoom crosses into another level.
+     *
+     * Deciding what changes, and simplifying the areas for a new level of detail, is done in an
+     * AreaTask; only the polygon changes themselves are made on the UI thread. A newer call drops
+     * the pending result, it covers all areas anyway. New polygons are added through the
+     * FrameScheduler, nearest the camera first.
+     *
+     * With isUse_area_tiles() the areas are drawn by an AirspaceTileProvider into a single tile
+     * overlay instead, which is replaced whenever the settings change.
+     */
+    public void plotAreas(List<Polygon> polygonList, List<AreaItem> areaItemList, GoogleMap gMap) {
 
-                if (areaItem.getAreaType() == AreaItem.CTR) {
-                    color = CONTROL_AREA_COLOR;
-                } else {
-                    color = TERMINAL_AREA_COLOR;
-                }
+        if (polygonList.size() == 0) {
+            for (int i = 0; i < areaItemList.size(); i++) {
+                polygonList.add(null);
+            }
+        }
 
-                float zLevel = areaItem.getAreaToAlt();
+        // Areas only change with the settings or when the zoom crosses into another level of detail
+        int level = AreaItem.levelForZoom(getZoomLevel());
+        if (mAreaShown == null || mAreaShown.length != areaItemList.size()) {
+            mAreaShown = new boolean[areaItemList.size()];
+            mAreaPolygonLevel = new int[areaItemList.size()];
+            mAreaQueued = new boolean[areaItemList.size()];
+        } else if (mAreaSettingsVersion == getSettingsVersion() && mAreaLevel == level) {
+            return;
+        }
 
-                Polygon polygon = gMap.addPolygon(new PolygonOptions()
-                        .addAll(coords)
-                        //  .strokeColor(Color.LTGRAY)
-                        .strokeColor(Color.BLACK)
-                        .strokeWidth(3.f)
-                        .fillColor(Color.parseColor(color)));
+        // The settings are read here, the task only sees the snapshot
+        if (mAreaSettingsVersion != getSettingsVersion()) {
+            mAreaWanted = new boolean[areaItemList.size()];
+            for (int i = 0; i < areaItemList.size(); i++) {
+                mAreaWanted[i] = !isAreaHidden(areaItemList.get(i));
+            }
+            mAreaTilesStale = true;
+        }
+        mAreaSettingsVersion = getSettingsVersion();
+        mAreaLevel = level;
+
+        if (mAreaTask != null) mAreaTask.cancel(false);
+        mAreaTask = new AreaTask(polygonList, areaItemList, mAreaWanted, isUse_area_tiles(), level, gMap);
+        mAreaTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    private class AreaTask extends AsyncTask<Void, Void, Void> {
+        private final List<Polygon> mPolygonList;
+        private final List<AreaItem> mAreaItemList;
+        private final boolean[] mWanted;
+        private final boolean mTiles;
+        private final int mLevel;
+        private final GoogleMap mMap;
+
+        AreaTask(List<Polygon> polygonList, List<AreaItem> areaItemList, boolean[] wanted, boolean tiles, int level, GoogleMap gMap) {
+            mPolygonList = polygonList;
+            mAreaItemList = areaItemList;
+            mWanted = wanted;
+            mTiles = tiles;
+            mLevel = level;
+            mMap = gMap;
+        }
 
-                polygon.setZIndex(zLevel);
-                polygonList.add(polygon);
+        // Simplify the shown areas for the level, so the UI thread only has to hand over the points
+        @Override
+        protected Void doInBackground(Void... params) {
+            if (mTiles) return null;
+            for (int i = 0; i < mAreaItemList.size() && !isCancelled(); i++) {
+                if (mWanted[i]) mAreaItemList.get(i).getLevelOfDetail(mLevel);
             }
+            return null;
         }
 
+        @Override
+        protected void onPostExecute(Void result) {
+            if (mAreaTask != this) return;
+            mAreaTask = null;
+            showAreas(mPolygonList, mAreaItemList, mWanted, mTiles, mLevel, mMap);
+        }
+    }
+
 
-        // show/hide each area depending on type and settings
+    private void showAreas(List<Polygon> polygonList, List<AreaItem> areaItemList, boolean[] wanted, boolean tiles, int level, GoogleMap gMap) {
+
+        // show/hide each area depending on type and settings, touching only those that change.
+        // In tile mode the polygons are all hidden and the areas drawn into the tiles instead.
+        int changed = 0;
         for (int i = 0; i < areaItemList.size(); i++) {
-            switch (areaItemList.get(i).getAreaType()) {
-                case AreaItem.CTR:
-                    updateVisibility(polygonList.get(i), isHide_CTR(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+            AreaItem areaItem = areaItemList.get(i);
+            boolean show = wanted[i] && !tiles;
+            Polygon polygon = polygonList.get(i);
+
+            if (polygon == null) {
+                if (show && !mAreaQueued[i]) {
+                    mAreaQueued[i] = true;
+                    LatLngBounds bounds = areaItem.getBounds();
+                    double priority = bounds == null ? Double.MAX_VALUE : FrameScheduler.distance(
+                            gMap.getCameraPosition().target, bounds.getCenter().latitude, bounds.getCenter().longitude);
+                    mFrameScheduler.post(new AddAreaJob(polygonList, areaItemList, i, gMap), priority);
+                    changed++;
+                }
+            } else {
+                // Hidden polygons keep their old points until they are shown again
+                if (show && mAreaPolygonLevel[i] != level) {
+                    polygon.setPoints(areaItem.getLevelOfDetail(level));
+                    mAreaPolygonLevel[i] = level;
+                    changed++;
+                }
+                if (show != mAreaShown[i]) {
+                    updateVisibility(polygon, !show);
+                    changed++;
+                }
+            }
+            mAreaShown[i] = show;
+        }
+        Log.d(TAG, "showAreas: areas changed: " + changed + ", level of detail " + level);
 
-                case AreaItem.TMA:
-                    updateVisibility(polygonList.get(i), isHide_TMA(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+        // Tiles are drawn at full detail, they only need replacing when the settings change
+        if (!mAreaTilesStale) return;
+        mAreaTilesStale = false;
 
-                case AreaItem.TIZ:
-                    updateVisibility(polygonList.get(i), isHide_TIZ(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+        if (mAreaTileOverlay != null) {
+            mAreaTileOverlay.remove();
+            mAreaTileOverlay = null;
+            mAreaTileProvider = null;
+        }
+        if (tiles) {
+            mAreaTileProvider = new AirspaceTileProvider(areaItemList, wanted, getCacheDir());
+            mAreaTileOverlay = gMap.addTileOverlay(new TileOverlayOptions()
+                    .tileProvider(mAreaTileProvider)
+                    .fadeIn(false));
+        }
 
-                case AreaItem.TIA:
-                    updateVisibility(polygonList.get(i), isHide_TIA(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+    }
 
-                case AreaItem.LTA:
-                    updateVisibility(polygonList.get(i), isHide_LTA(), areaItemList.get(i).getAreaFromAlt());
-                    break;
 
-                case AreaItem.PROHIBITED:
-                    updateVisibility(polygonList.get(i), isHide_P(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+    /*
+     * Adds the polygon of one area, if it is still to be shown when the job runs. The level of
+     * detail is the one of the latest plotAreas().
+     */
+    private class AddAreaJob implements FrameScheduler.Job {
+        private final List<Polygon> mPolygonList;
+        private final List<AreaItem> mAreaItemList;
+        private final int mIndex;
+        private final GoogleMap mMap;
+
+        AddAreaJob(List<Polygon> polygonList, List<AreaItem> areaItemList, int index, GoogleMap gMap) {
+            mPolygonList = polygonList;
+            mAreaItemList = areaItemList;
+            mIndex = index;
+            mMap = gMap;
+        }
 
-                case AreaItem.RESTRICTED:
-                    updateVisibility(polygonList.get(i), isHide_R(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+        @Override
+        public void run() {
+            mAreaQueued[mIndex] = false;
+            if (!mAreaShown[mIndex] || mPolygonList.get(mIndex) != null) return;
 
-                case AreaItem.DANGER:
-                    updateVisibility(polygonList.get(i), isHide_D(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+            AreaItem areaItem = mAreaItemList.get(mIndex);
+            Polygon polygon = addAreaPolygon(areaItem, mAreaLevel, mMap);
+            mPolygonList.set(mIndex, polygon);
+            mAreaByPolygonId.put(polygon.getId(), areaItem);
+            mAreaPolygonLevel[mIndex] = mAreaLevel;
+        }
 
-                case AreaItem.SENSITIVE:
-                    updateVisibility(polygonList.get(i), isHide_ENV(), areaItemList.get(i).getAreaFromAlt());
-                    break;
+        @Override
+        public void cancel() {
+            mAreaQueued[mIndex] = false;
 
-                default:
-                    updateVisibility(polygonList.get(i), true, 20000);
-            }
+            // Forces the next plotAreas() through, without rebuilding the tile overlay
+            mAreaLevel = -1;
         }
+    }
+
+
+    // The area drawn by a polygon from plotAreas(), or null
+    public AreaItem getAreaForPolygon(Polygon polygon) {
+        return mAreaByPolygonId.get(polygon.getId());
+    }
+
 
+    // The topmost area drawn at a position when areas are drawn as tiles, or null
+    public AreaItem getAreaAt(LatLng position) {
+        return mAreaTileProvider == null ? null : mAreaTileProvider.hitTest(position);
+    }
+
+
+    private Polygon addAreaPolygon(AreaItem areaItem, int level, GoogleMap gMap) {
+        String color;
+        if (areaItem.getAreaType() == AreaItem.CTR) {
+            color = CONTROL_AREA_COLOR;
+        } else {
+            color = TERMINAL_AREA_COLOR;
+        }
+
+        float zLevel = areaItem.getAreaToAlt();
+
+        return gMap.addPolygon(new PolygonOptions()
+                .addAll(areaItem.getLevelOfDetail(level))
+                //  .strokeColor(Color.LTGRAY)
+                .strokeColor(Color.BLACK)
+                .strokeWidth(3.f)
+                .fillColor(Color.parseColor(color))
+                .zIndex(zLevel)
+                .clickable(true));
+    }
+
+
+    /*
+     * True if the area must be hidden with the current type and altitude settings
+     */
+    public boolean isAreaHidden(AreaItem areaItem) {
+        boolean hideType;
+        switch (areaItem.getAreaType()) {
+            case AreaItem.CTR:
+                hideType = isHide_CTR();
+                break;
+
+            case AreaItem.TMA:
+                hideType = isHide_TMA();
+                break;
+
+            case AreaItem.TIZ:
+                hideType = isHide_TIZ();
+                break;
+
+            case AreaItem.TIA:
+                hideType = isHide_TIA();
+                break;
+
+            case AreaItem.LTA:
+                hideType = isHide_LTA();
+                break;
+
+            case AreaItem.PROHIBITED:
+                hideType = isHide_P();
+                break;
+
+            case AreaItem.RESTRICTED:
+                hideType = isHide_R();
+                break;
+
+            case AreaItem.DANGER:
+                hideType = isHide_D();
+                break;
+
+            case AreaItem.SENSITIVE:
+                hideType = isHide_ENV();
+                break;
+
+            default:
+                return true;
+        }
+        return hideType || areaItem.getAreaFromAlt() > mMaxAirspaceAlt;
+    }
+
+
+    /*
+     * Replace the isogonic lines on the map with a new set. The lines are computed off the UI thread,
+     * this only creates the Polylines.
+     */
+    public void plotIsogonicLines(List<Polyline> polylineList, List<IsogonicLines.Line> lines, GoogleMap gMap) {
+        // IsogonicLines caches its results, the same list back means the same lines are on the map
+        if (lines == mIsogonicShown) return;
+        mIsogonicShown = lines;
+
+        for (Polyline p : polylineList) {
+            p.remove();
+        }
+        polylineList.clear();
+
+        if (isHide_isogonic()) return;
+
+        for (IsogonicLines.Line line : lines) {
+            List<LatLng> points = new ArrayList<>(line.size());
+            for (int i = 0; i < line.size(); i++) {
+                points.add(new LatLng(line.getLat(i), line.getLon(i)));
+            }
+
+            boolean major = Math.round(line.getDeclination()) % ISOGONIC_MAJOR_STEP == 0;
+            polylineList.add(gMap.addPolyline(new PolylineOptions()
+                    .addAll(points)
+                    .color(Color.parseColor(ISOGONIC_LINE_COLOR))
+                    .width(major ? 4.f : 2.f)
+                    .zIndex(-1)));
+        }
     }
 
 
-    private void updateVisibility(Polygon polygon, boolean mustHide, int fromAlt) {
-        if (mustHide || (fromAlt > mMaxAirspaceAlt)) {
+    private void updateVisibility(Polygon polygon, boolean mustHide) {
+        if (mustHide) {
             polygon.setVisible(false);
             polygon.setClickable(false);
         } else {
@@ -0,0 +1,485 @@
+package com.example.tbrams.markerdemo.components;
+
+
+import android.os.AsyncTask;
+
+import com.example.GridClusters;
+import com.example.GridIndex;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One category of reference data markers - navaids, aerodromes, reporting points or obstacles.
+ * <p>
+ * Only items inside the (padded) viewport have a Marker on the map. The items are kept in a
+ * GridIndex, so finding the ones in view does not depend on the size of the data set. When the
+ * camera moves, markers leaving the view are hidden and put in a pool, and markers for items
+ * coming into view are taken from the pool before any new ones are added to the map.
+ * <p>
+ * The index query runs in an AsyncTask and only the resulting marker changes are made on the UI
+ * thread. The task sees a snapshot of which items pass the settings, taken on the UI thread
+ * once per settings version, so the settings themselves are never read in the background.
+ * <p>
+ * At low zoom levels a layer can be clustered instead, see updateClustered(). The aggregation
+ * runs the same way and the cluster markers come from the same pool as the item markers.
+ * <p>
+ * With a FrameScheduler, see setScheduler(), new item markers are not added to the map right
+ * away but queued, nearest the viewport center first, and added a few per frame. Items that have
+ * left the view again by the time their turn comes are skipped.
+ * <p>
+ * Must be used from the UI thread.
+ *
+ * @param <T> Item type
+ */
+public abstract class MarkerLayer<T> {
+    private static final double INDEX_CELL_SIZE = 0.25;     // Degrees
+    private static final double VIEWPORT_PADDING = 0.25;    // Fraction of the viewport on each side
+    private static final int MAX_POOL_SIZE = 100;
+    private static final double CLUSTER_CELL_PX = 80;       // Cluster cell size on screen
+
+    private final List<T> mItems;
+    private final GridIndex mIndex;
+
+    private final Marker[] mLive;           // Marker for each item, null if not on the map
+    private int[] mLiveIdx;                 // Items with a marker
+    private int[] mNextLiveIdx;
+    private int mLiveCount;
+    private final int[] mQueryIdx;          // UI thread scratch
+    private final int[] mSeen;
+    private int mGeneration;
+    private final boolean[] mQueued;        // A job to add the marker is waiting in the scheduler
+    private FrameScheduler mScheduler;
+    private LatLng mFocus;                  // Viewport center, markers nearest it are added first
+
+    private final ArrayDeque<Marker> mPool = new ArrayDeque<>();
+    private final Map<String, Integer> mMarkerItems = new HashMap<>();
+
+    // Cluster markers by cell, count, max value and position, so unchanged clusters keep their marker
+    private Map<String, Marker> mClusterMarkers = new HashMap<>();
+    private final Set<String> mClusterIds = new HashSet<>();
+    private AsyncTask<Void, Void, ?> mTask;
+
+    // isShown() and getClusterValue() of every item, for the settings version in mSnapshotSettings
+    private final boolean[] mShown;
+    private final int[] mValues;
+    private int mSnapshotSettings = -1;
+
+    // What the markers on the map were last made for, an update asking for the same is skipped
+    private LatLngBounds mLastViewport;
+    private boolean mLastVisible;
+    private boolean mLastClustered;
+    private float mLastZoom;
+    private int mLastSettings = -1;
+
+
+    public MarkerLayer(List<T> items) {
+        mItems = items;
+
+        int n = items.size();
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            LatLng pos = getPosition(items.get(i));
+            lat[i] = pos.latitude;
+            lon[i] = pos.longitude;
+        }
+        mIndex = new GridIndex(lat, lon, INDEX_CELL_SIZE);
+
+        mLive = new Marker[n];
+        mLiveIdx = new int[n];
+        mNextLiveIdx = new int[n];
+        mQueryIdx = new int[n];
+        mSeen = new int[n];
+        mQueued = new boolean[n];
+        mShown = new boolean[n];
+        mValues = new int[n];
+    }
+
+
+    // Add new markers in frame-budgeted chunks from now on, null adds them right away
+    public void setScheduler(FrameScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+
+    protected abstract LatLng getPosition(T item);
+
+    protected abstract MarkerOptions createMarkerOptions(T item);
+
+    // False if the item is filtered out by the current settings
+    protected abstract boolean isShown(T item);
+
+    // Value shown as the maximum on cluster icons, for example obstacle height
+    protected int getClusterValue(T item) {
+        return GridClusters.NO_VALUE;
+    }
+
+    // Title, snippet and icon of a cluster marker, the position is set by the layer
+    protected MarkerOptions createClusterOptions(int count, int maxValue) {
+        return new MarkerOptions().title(count + " items");
+    }
+
+
+    /**
+     * Make the markers on the map match the viewport.
+     * <p>
+     * Only markers entering or leaving the view are touched. If the category stays hidden, or
+     * neither the viewport nor the settings changed since the last call, nothing is done at all.
+     * The items in view are found in the background; a newer update() or updateClustered() call
+     * drops a pending result.
+     *
+     * @param gMap          The map
+     * @param viewport      Visible region of the map
+     * @param layerVisible  False if the whole category is hidden, for example at this zoom level
+     * @param settings      Settings version, see MarkerDemoUtils.getSettingsVersion()
+     */
+    public void update(GoogleMap gMap, LatLngBounds viewport, boolean layerVisible, int settings) {
+        if (!mLastClustered && layerVisible == mLastVisible && settings == mLastSettings
+                && (!layerVisible || (viewport != null && viewport.equals(mLastViewport)))) {
+            return;
+        }
+        remember(viewport, layerVisible, false, 0, settings);
+        cancelPending();
+
+        if (!layerVisible || viewport == null) {
+            showItems(gMap, mQueryIdx, 0);
+            showClusters(gMap, null);
+            return;
+        }
+
+        snapshot(settings);
+        ViewportTask task = new ViewportTask(gMap, paddedBox(viewport));
+        mTask = task;
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    /**
+     * Like update(), but items closer together than about CLUSTER_CELL_PX on screen are shown as
+     * one cluster marker. The clusters are computed in the background and the map is updated
+     * when they are ready; a newer update() or updateClustered() call drops the pending result.
+     *
+     * @param gMap          The map
+     * @param viewport      Visible region of the map
+     * @param zoom          Camera zoom, decides the cluster cell size
+     * @param settings      Settings version, see MarkerDemoUtils.getSettingsVersion()
+     */
+    public void updateClustered(GoogleMap gMap, LatLngBounds viewport, float zoom, int settings) {
+        if (viewport == null) return;
+        if (mLastClustered && zoom == mLastZoom && settings == mLastSettings && viewport.equals(mLastViewport)) {
+            return;
+        }
+        remember(viewport, true, true, zoom, settings);
+        cancelPending();
+
+        snapshot(settings);
+        double cellSize = 360.0 * CLUSTER_CELL_PX / (256.0 * Math.pow(2, zoom));
+        ClusterTask task = new ClusterTask(gMap, paddedBox(viewport), cellSize);
+        mTask = task;
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    /*
+     * Settings are read here on the UI thread, the tasks only see the arrays. Any task still
+     * running when the settings change has been cancelled and its result is dropped, so the
+     * arrays can be refilled in place.
+     */
+    private void snapshot(int settings) {
+        if (settings == mSnapshotSettings) return;
+        mSnapshotSettings = settings;
+
+        for (int i = 0; i < mItems.size(); i++) {
+            T item = mItems.get(i);
+            mShown[i] = isShown(item);
+            mValues[i] = getClusterValue(item);
+        }
+    }
+
+
+    private void remember(LatLngBounds viewport, boolean visible, boolean clustered, float zoom, int settings) {
+        mLastViewport = viewport;
+        mLastVisible = visible;
+        mLastClustered = clustered;
+        mLastZoom = zoom;
+        mLastSettings = settings;
+        if (viewport != null) mFocus = viewport.getCenter();
+    }
+
+
+    private void cancelPending() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+    }
+
+
+    // South, west, north and east edge of the viewport with padding, east of west across the date line
+    private static double[] paddedBox(LatLngBounds viewport) {
+        double latPad = (viewport.northeast.latitude - viewport.southwest.latitude) * VIEWPORT_PADDING;
+        double east = viewport.northeast.longitude;
+        if (east < viewport.southwest.longitude) east += 360;
+        double lonPad = (east - viewport.southwest.longitude) * VIEWPORT_PADDING;
+
+        return new double[]{viewport.southwest.latitude - latPad, viewport.southwest.longitude - lonPad,
+                viewport.northeast.latitude + latPad, east + lonPad};
+    }
+
+
+    // Items in the box that pass the settings
+    private class ViewportTask extends AsyncTask<Void, Void, int[]> {
+        private final GoogleMap mMap;
+        private final double[] mBox;
+        private int mCount;
+
+        ViewportTask(GoogleMap gMap, double[] box) {
+            mMap = gMap;
+            mBox = box;
+        }
+
+        @Override
+        protected int[] doInBackground(Void... params) {
+            int[] found = new int[mIndex.size()];
+            int n = mIndex.query(mBox[0], mBox[1], mBox[2], mBox[3], found);
+            for (int k = 0; k < n; k++) {
+                if (mShown[found[k]]) found[mCount++] = found[k];
+            }
+            return found;
+        }
+
+        @Override
+        protected void onPostExecute(int[] wanted) {
+            if (mTask != this) return;
+            mTask = null;
+
+            showItems(mMap, wanted, mCount);
+            showClusters(mMap, null);
+        }
+    }
+
+
+    private class ClusterTask extends AsyncTask<Void, Void, GridClusters> {
+        private final GoogleMap mMap;
+        private final double[] mBox;
+        private final double mCellSize;
+
+        ClusterTask(GoogleMap gMap, double[] box, double cellSize) {
+            mMap = gMap;
+            mBox = box;
+            mCellSize = cellSize;
+        }
+
+        @Override
+        protected GridClusters doInBackground(Void... params) {
+            return GridClusters.aggregate(mIndex, mShown, mValues, mBox[0], mBox[1], mBox[2], mBox[3], mCellSize);
+        }
+
+        @Override
+        protected void onPostExecute(GridClusters clusters) {
+            if (mTask != this) return;
+            mTask = null;
+
+            // Single items keep their normal marker, everything else becomes a cluster
+            int singles = 0;
+            for (int c = 0; c < clusters.size(); c++) {
+                if (clusters.getCount(c) == 1) mQueryIdx[singles++] = clusters.getItem(c);
+            }
+            showItems(mMap, mQueryIdx, singles);
+            showClusters(mMap, clusters);
+        }
+    }
+
+
+    /*
+     * Make the item markers on the map match the list of wanted items. mLiveIdx lists the wanted
+     * items, with a scheduler some of them may still be waiting for their marker.
+     */
+    private void showItems(GoogleMap gMap, int[] wanted, int count) {
+        mGeneration++;
+
+        for (int k = 0; k < count; k++) {
+            int i = wanted[k];
+            mSeen[i] = mGeneration;
+            if (mLive[i] == null) {
+                if (mScheduler == null) {
+                    addItemMarker(gMap, i);
+                } else if (!mQueued[i]) {
+                    mQueued[i] = true;
+                    mScheduler.post(new AddMarkerJob(gMap, i), priority(i));
+                }
+            }
+            mNextLiveIdx[k] = i;
+        }
+
+        // Everything that was on the map but is not wanted any more goes back to the pool
+        for (int k = 0; k < mLiveCount; k++) {
+            int i = mLiveIdx[k];
+            if (mSeen[i] != mGeneration && mLive[i] != null) {
+                mMarkerItems.remove(mLive[i].getId());
+                release(mLive[i]);
+                mLive[i] = null;
+            }
+        }
+
+        int[] tmp = mLiveIdx;
+        mLiveIdx = mNextLiveIdx;
+        mNextLiveIdx = tmp;
+        mLiveCount = count;
+    }
+
+
+    private void addItemMarker(GoogleMap gMap, int i) {
+        mLive[i] = acquire(gMap, createMarkerOptions(mItems.get(i)));
+        mMarkerItems.put(mLive[i].getId(), i);
+    }
+
+
+    private double priority(int i) {
+        return mFocus == null ? 0 : FrameScheduler.distance(mFocus, mIndex.getLat(i), mIndex.getLon(i));
+    }
+
+
+    private class AddMarkerJob implements FrameScheduler.Job {
+        private final GoogleMap mMap;
+        private final int mItem;
+
+        AddMarkerJob(GoogleMap gMap, int item) {
+            mMap = gMap;
+            mItem = item;
+        }
+
+        @Override
+        public void run() {
+            mQueued[mItem] = false;
+            if (mSeen[mItem] == mGeneration && mLive[mItem] == null) {
+                addItemMarker(mMap, mItem);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mQueued[mItem] = false;
+
+            // The markers on the map are incomplete, so the next update must not be skipped
+            mLastSettings = -1;
+        }
+    }
+
+
+    // Make the cluster markers match the clusters with more than one item, null removes them all
+    private void showClusters(GoogleMap gMap, GridClusters clusters) {
+        if (clusters == null && mClusterMarkers.isEmpty()) return;
+
+        Map<String, Marker> next = new HashMap<>();
+        if (clusters != null) {
+            for (int c = 0; c < clusters.size(); c++) {
+                int count = clusters.getCount(c);
+                if (count < 2) continue;
+
+                String key = clusters.getCell(c) + ":" + count + ":" + clusters.getMaxValue(c)
+                        + ":" + clusters.getLat(c) + ":" + clusters.getLon(c);
+                Marker m = mClusterMarkers.remove(key);
+                if (m == null) {
+                    LatLng position = new LatLng(clusters.getLat(c), clusters.getLon(c));
+                    m = acquire(gMap, createClusterOptions(count, clusters.getMaxValue(c)).position(position));
+                    mClusterIds.add(m.getId());
+                }
+                next.put(key, m);
+            }
+        }
+
+        for (Marker m : mClusterMarkers.values()) {
+            mClusterIds.remove(m.getId());
+            release(m);
+        }
+        mClusterMarkers = next;
+    }
+
+
+    private Marker acquire(GoogleMap gMap, MarkerOptions options) {
+        Marker m = mPool.poll();
+        if (m == null) {
+            return gMap.addMarker(options);
+        }
+
+        m.setPosition(options.getPosition());
+        m.setTitle(options.getTitle());
+        m.setSnippet(options.getSnippet());
+        m.setIcon(options.getIcon());
+        m.setAnchor(options.getAnchorU(), options.getAnchorV());
+        m.setVisible(true);
+        return m;
+    }
+
+
+    private void release(Marker m) {
+        m.hideInfoWindow();
+        if (mPool.size() < MAX_POOL_SIZE) {
+            m.setVisible(false);
+            mPool.push(m);
+        } else {
+            m.remove();
+        }
+    }
+
+
+    // True if the marker belongs to this layer, item or cluster
+    public boolean contains(Marker marker) {
+        return mMarkerItems.containsKey(marker.getId()) || mClusterIds.contains(marker.getId());
+    }
+
+
+    public boolean isCluster(Marker marker) {
+        return mClusterIds.contains(marker.getId());
+    }
+
+
+    // The item shown by the marker, or null if the marker is not from this layer
+    public T getItem(Marker marker) {
+        Integer i = mMarkerItems.get(marker.getId());
+        return i == null ? null : mItems.get(i);
+    }
+
+
+    // Items in view, including any still waiting for their marker
+    public int getLiveCount() {
+        return mLiveCount;
+    }
+
+
+    // Remove all markers from the map, for example when the map goes away
+    public void clear() {
+        cancelPending();
+        mLastSettings = -1;
+        for (Marker m : mClusterMarkers.values()) {
+            m.remove();
+        }
+        mClusterMarkers.clear();
+        mClusterIds.clear();
+        for (int k = 0; k < mLiveCount; k++) {
+            int i = mLiveIdx[k];
+            if (mLive[i] != null) {
+                mLive[i].remove();
+                mLive[i] = null;
+            }
+        }
+        mLiveCount = 0;
+        mGeneration++;      // Jobs still queued find their item unwanted
+        for (Marker m : mPool) {
+            m.remove();
+        }
+        mPool.clear();
+        mMarkerItems.clear();
+    }
+}
@@ -2,8 +2,8 @@ package com.example.tbrams.markerdemo.components;
 
 import android.util.Log;
 
+import com.example.Geodesy;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.maps.android.SphericalUtil;
 
 import java.util.ArrayList;
 import java.util.regex.Matcher;
@@ -14,15 +14,42 @@ public class OpenAirInterpreter {
     public static final String TAG = "OpenAirInterpreter";
     private static final int STEP_SIZE = 1;
 
+    // Maximum distance in metres between an arc and the chords drawn for it. Coarse is good enough
+    // for drawing on the map, fine is meant for checking if a position is inside an airspace.
+    public static final double TOLERANCE_COARSE = 25.0;
+    public static final double TOLERANCE_FINE = 2.0;
+
+    // Limits for the adaptive step, so tiny circles still look round and huge ones stay bounded
+    private static final double MIN_STEP = 0.25;
+    private static final double MAX_STEP = 30.0;
+
     private ArrayList<LatLng> mCoordList;
     private LatLng mCenter;
     private int mStep_direction;
+    private final double mMaxChordError;
+    private final double[] mOffset = new double[2];
 
 
+    /**
+     * Interpreter drawing arcs and circles with a fixed step of one degree.
+     */
     public OpenAirInterpreter() {
+        this(0);
+    }
+
+
+    /**
+     * Interpreter choosing the step for arcs and circles from the radius, so no chord is further
+     * than maxChordError metres from the true arc.
+     *
+     * @param maxChordError Tolerance in metres, for example TOLERANCE_COARSE. Zero or less means a
+     *                      fixed one degree step.
+     */
+    public OpenAirInterpreter(double maxChordError) {
         mStep_direction = 1;
         mCenter = null;
         mCoordList = new ArrayList<>();
+        mMaxChordError = maxChordError;
     }
 
     /**
@@ -108,13 +135,7 @@ public class OpenAirInterpreter {
                     // Draw Circle command - expect an decimal argument and ignore unless we have
                     // a center point on file at this point.
                     radius = (int) (Double.parseDouble(rest) * 1852);
-                    pos = null;
-                    if (mCenter != null) {
-                        for (int deg = 0; deg < 360; deg++) {
-                            pos = SphericalUtil.computeOffset(mCenter, radius, deg);
-                            addPosToCoordList(pos);
-                        }
-                    }
+                    drawCircle(radius);
                     break;
 
 
@@ -164,11 +185,18 @@ public class OpenAirInterpreter {
                         pos1 = parseCoordinateString(m.group(1));
                         pos2 = parseCoordinateString(m.group(2));
 
-                        if (pos1 != null && pos2 != null) {
-                            fromDeg = ((int) SphericalUtil.computeHeading(mCenter, pos1) + 360) % 360;
-                            toDeg = ((int) SphericalUtil.computeHeading(mCenter, pos2) + 360) % 360;
-                            radius = (int) SphericalUtil.computeDistanceBetween(mCenter, pos1);
-                            drawArcFromTo(radius, fromDeg, toDeg);
+                        if (pos1 != null && pos2 != null && mCenter != null) {
+                            if (mMaxChordError > 0) {
+                                // Keep the exact headings, whole degrees are up to a kilometre off on large arcs
+                                drawArcFromTo(distanceFromCenter(pos1),
+                                        (headingFromCenter(pos1) + 360) % 360,
+                                        (headingFromCenter(pos2) + 360) % 360);
+                            } else {
+                                fromDeg = ((int) headingFromCenter(pos1) + 360) % 360;
+                                toDeg = ((int) headingFromCenter(pos2) + 360) % 360;
+                                radius = (int) distanceFromCenter(pos1);
+                                drawArcFromTo(radius, fromDeg, toDeg);
+                            }
                         }
                     } else {
                         Log.e(TAG, "interpretCommand: Problem parsing draw between arguments");
@@ -226,35 +254,89 @@ public class OpenAirInterpreter {
      * Utility function producing Arc coordinates with a given radius between to headings.
      * <p>
      * Requires a center point to be in place - will ignore command if not defined.
+     * <p>
+     * With a chord error tolerance the arc is split into equal steps small enough to stay within
+     * the tolerance, and the end point is included. Otherwise the classic one degree step is used.
      *
-     * @param radius
-     * @param fromDeg
-     * @param toDeg
+     * @param radius    Radius in metres
+     * @param fromDeg   Heading from the center to the start of the arc
+     * @param toDeg     Heading from the center to the end of the arc
      */
-    private void drawArcFromTo(int radius, int fromDeg, int toDeg) {
-        if (mCenter != null) {
-            double x, y;
-            LatLng newPos;
-            int degrees = fromDeg;
+    private void drawArcFromTo(double radius, double fromDeg, double toDeg) {
+        if (mCenter == null) return;
+
+        if (mMaxChordError <= 0) {
+            int degrees = (int) fromDeg;
             int step = mStep_direction * STEP_SIZE;
             do {
-                newPos = SphericalUtil.computeOffset(mCenter, radius, degrees);
-                addPosToCoordList(newPos);
+                addOffsetToCoordList(radius, degrees);
                 degrees += step;
-                if (Math.abs(((degrees + 360) % 360) - toDeg) < STEP_SIZE)
+                if (Math.abs(((degrees + 360) % 360) - (int) toDeg) < STEP_SIZE)
                     break;
             } while (true);
+            return;
+        }
+
+        double sweep = ((mStep_direction * (toDeg - fromDeg)) % 360 + 360) % 360;
+        if (sweep == 0) sweep = 360;
+
+        int segments = (int) Math.ceil(sweep / adaptiveStep(radius));
+        double step = mStep_direction * sweep / segments;
+        for (int i = 0; i < segments; i++) {
+            addOffsetToCoordList(radius, fromDeg + i * step);
+        }
+        if (sweep < 360) {
+            addOffsetToCoordList(radius, toDeg);
+        }
+    }
+
+
+    private void drawCircle(double radius) {
+        if (mCenter == null) return;
 
+        int segments = (mMaxChordError <= 0) ? 360 / STEP_SIZE : (int) Math.ceil(360 / adaptiveStep(radius));
+        double step = 360.0 / segments;
+        for (int i = 0; i < segments; i++) {
+            addOffsetToCoordList(radius, i * step);
         }
     }
 
 
+    /*
+     * Largest step in degrees where the chord stays within mMaxChordError of the arc. The gap
+     * between a chord spanning the angle a and the arc is radius * (1 - cos(a/2)).
+     */
+    private double adaptiveStep(double radius) {
+        if (mMaxChordError >= radius) return MAX_STEP;
+
+        double step = Math.toDegrees(2 * Math.acos(1 - mMaxChordError / radius));
+        return Math.max(MIN_STEP, Math.min(MAX_STEP, step));
+    }
+
+
 
     private void addPosToCoordList(LatLng newPos) {
         mCoordList.add(newPos);
     }
 
 
+    // Add the position at a distance and heading from the center
+    private void addOffsetToCoordList(double radius, double heading) {
+        Geodesy.offset(mCenter.latitude, mCenter.longitude, radius, heading, mOffset, 0);
+        mCoordList.add(new LatLng(mOffset[0], mOffset[1]));
+    }
+
+
+    private double distanceFromCenter(LatLng pos) {
+        return Geodesy.distance(mCenter.latitude, mCenter.longitude, pos.latitude, pos.longitude);
+    }
+
+
+    private double headingFromCenter(LatLng pos) {
+        return Geodesy.heading(mCenter.latitude, mCenter.longitude, pos.latitude, pos.longitude);
+    }
+
+
 
     /**
      * Utility function converting navigation headings to normal math angle notation.
@@ -1,23 +1,25 @@
 package com.example.tbrams.markerdemo.components;
 
 
-import android.content.Context;
 import android.util.Log;
 
 import com.example.tbrams.markerdemo.dbModel.AreaItem;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.maps.android.SphericalUtil;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.example.tbrams.markerdemo.components.Util.parseAltitude;
 
 public class OpenAirParser {
     private static final String TAG = "TBR:OpenAirParser";
-    private String mDefList;
+
+    // One builder reused for all areas, so large polygons do not cost a new String per line
+    private final StringBuilder mDefList;
     private String mAirspaceClass;
     private String mAirspaceName;
     private int mAirspaceFrom;
@@ -25,19 +27,32 @@ public class OpenAirParser {
     private int mAirSpaceType;
 
 
+    /**
+     * Receives each AreaItem as soon as its block of OpenAir commands has been parsed.
+     */
+    public interface OnAreaParsedListener {
+        void onAreaParsed(AreaItem areaItem);
+    }
+
+
     public OpenAirParser() {
 
-        mDefList ="";
+        mDefList = new StringBuilder();
+        reset();
+
+    }
+
+
+    private void reset() {
+        mDefList.setLength(0);
         mAirspaceClass = "";
         mAirspaceName = "";
         mAirspaceFrom = -8888;
         mAirspaceTo = -8888;
         mAirSpaceType = 0;
-
-        mDefList="";
-
     }
 
+
     /**
      * Go through the lines of OpenAir commands and populate a list of AreaItems.
      * <p>
@@ -49,30 +64,129 @@ public class OpenAirParser {
      */
     public List<AreaItem> parseInitialCommands(List<String> openAirCommands) {
 
-        List<AreaItem> areaItemList = new ArrayList<>();
-        for (String cmd : openAirCommands) {
-            cmd = cmd.trim();
-            if (cmd.equals("DONE")) {
-                // If we have accumulated some definition commands by now, create an areaItem - otherwise just skip the comment
-                if (mDefList.length() > 0) {
-                    areaItemList.add(createAreaItem());
-                }
-            } else {
-                // We are still not done, keep parsing until we have all the initial info we need for the AreaItem
-                parseInitialCommand(cmd);
+        final List<AreaItem> areaItemList = new ArrayList<>();
+        parse(openAirCommands, new OnAreaParsedListener() {
+            @Override
+            public void onAreaParsed(AreaItem areaItem) {
+                areaItemList.add(areaItem);
             }
+        });
+
+        return areaItemList;
+    }
+
+
+    /**
+     * Parse OpenAir commands one at a time, handing every finished area to the listener right
+     * away, like parse(Reader, OnAreaParsedListener). Used for commands that do not come from a
+     * file, for example the rows of a spreadsheet.
+     *
+     * @param openAirCommands   Commands, a line each. Areas are separated by "DONE" or "AC".
+     * @param listener          Receives the areas in order
+     * @return number of areas parsed
+     */
+    public int parse(Iterable<String> openAirCommands, OnAreaParsedListener listener) {
+        AreaCounter counter = new AreaCounter(listener);
+        for (String cmd : openAirCommands) {
+            parseLine(cmd, counter);
         }
 
         // We might not have a final "DONE" statement, so we need this one
-        AreaItem lastItem = createAreaItem();
-        if (lastItem != null) {
-            areaItemList.add(lastItem);
+        finishArea(counter);
+
+        return counter.count;
+    }
+
+
+    /**
+     * Parse a complete OpenAir file, one line at a time.
+     * <p>
+     * Only the definition of the area currently being read is kept in memory, every finished area
+     * is handed to the listener right away. That keeps memory flat for files of any size, as long
+     * as the listener does not hang on to the items itself.
+     * <p>
+     * An area ends at "DONE", at the "AC" command starting the next area, or at end of file.
+     *
+     * @param reader    OpenAir source, will be read to the end but not closed
+     * @param listener  Receives the areas in file order
+     * @return number of areas parsed
+     * @throws IOException on read errors
+     */
+    public int parse(Reader reader, OnAreaParsedListener listener) throws IOException {
+        AreaCounter counter = new AreaCounter(listener);
+
+        BufferedReader in = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) {
+            parseLine(line, counter);
         }
+        finishArea(counter);
 
-        return areaItemList;
+        return counter.count;
+    }
+
+
+    /**
+     * Same as parse(Reader, OnAreaParsedListener) for a byte stream.
+     *
+     * @param in            OpenAir source, will be read to the end but not closed
+     * @param charsetName   Encoding of the file, most OpenAir files are "ISO-8859-1"
+     */
+    public int parse(InputStream in, String charsetName, OnAreaParsedListener listener) throws IOException {
+        return parse(new InputStreamReader(in, charsetName), listener);
+    }
+
+
+    private static class AreaCounter implements OnAreaParsedListener {
+        private final OnAreaParsedListener mTarget;
+        int count;
+
+        AreaCounter(OnAreaParsedListener target) {
+            mTarget = target;
+        }
+
+        @Override
+        public void onAreaParsed(AreaItem areaItem) {
+            count++;
+            mTarget.onAreaParsed(areaItem);
+        }
+    }
+
+
+    private void parseLine(String cmd, OnAreaParsedListener listener) {
+        cmd = cmd.trim();
+        if (cmd.length() == 0) return;
+
+        if (cmd.equals("DONE")) {
+            // If we have accumulated some definition commands by now, create an areaItem - otherwise just skip the comment
+            finishArea(listener);
+        } else {
+            // An AC command always opens a new area in plain OpenAir files without DONE separators
+            if (mDefList.length() > 0 && startsWithCommand(cmd, "AC")) {
+                finishArea(listener);
+            }
+
+            // We are still not done, keep parsing until we have all the initial info we need for the AreaItem
+            parseInitialCommand(cmd);
+        }
     }
 
 
+    private static boolean startsWithCommand(String cmd, String command) {
+        return cmd.length() > command.length() && cmd.regionMatches(true, 0, command, 0, command.length())
+                && Character.isWhitespace(cmd.charAt(command.length()));
+    }
+
+
+    private void finishArea(OnAreaParsedListener listener) {
+        // Without definition commands this is just a comment or separator, keep what we have so far
+        if (mDefList.length() == 0) return;
+
+        AreaItem areaItem = createAreaItem();
+        if (areaItem != null) {
+            listener.onAreaParsed(areaItem);
+        }
+    }
 
 
     /**
@@ -83,33 +197,50 @@ public class OpenAirParser {
     private AreaItem createAreaItem() {
 
         AreaItem areaItem=null;
-        if (mAirspaceName!="" && mAirSpaceType!=0 && mAirspaceFrom!=-8888 && mAirspaceTo!=-8888 && mAirspaceClass!="" && mDefList.length()>0) {
+        if (mAirSpaceType == 0) {
+            mAirSpaceType = typeFromClass(mAirspaceClass);
+        }
 
-            areaItem = new AreaItem(null, mAirspaceName, mAirSpaceType, null, mAirspaceClass, mAirspaceFrom, mAirspaceTo, mDefList);
+        if (mAirspaceName.length()>0 && mAirSpaceType!=0 && mAirspaceFrom!=-8888 && mAirspaceTo!=-8888 && mAirspaceClass.length()>0 && mDefList.length()>0) {
+
+            areaItem = new AreaItem(null, mAirspaceName, mAirSpaceType, null, mAirspaceClass, mAirspaceFrom, mAirspaceTo, mDefList.toString());
 
-            // Reset internal storage
-            mDefList = "";
-            mAirspaceClass = "";
-            mAirspaceName = "";
-            mAirspaceFrom = -8888;
-            mAirspaceTo = -8888;
-            mAirSpaceType = 0;
         } else {
             Log.e(TAG, "createAreaItem: Need complete arguments for areaItem creation");
-            if (mAirspaceName=="") Log.e(TAG, "Airspace Name not found");
+            if (mAirspaceName.length()==0) Log.e(TAG, "Airspace Name not found");
             if (mAirSpaceType==0) Log.e(TAG, "Airspace Type not found");
             if (mAirspaceFrom==-8888) Log.e(TAG, "Airspace From Altitude not found");
             if (mAirspaceTo==-8888) Log.e(TAG, "Airspace To Altitude not found");
-            if (mAirspaceClass=="") Log.e(TAG, "Airspace Class not found");
-            if (mDefList=="") Log.e(TAG, "Airspace Topology Definition not found");
+            if (mAirspaceClass.length()==0) Log.e(TAG, "Airspace Class not found");
+            if (mDefList.length()==0) Log.e(TAG, "Airspace Topology Definition not found");
         }
 
+        // Reset internal storage
+        reset();
+
         return areaItem;
     }
 
 
-
-
+    /*
+     * Plain OpenAir files have no AT extension, so fall back on the class letters they use
+     */
+    private static int typeFromClass(String airspaceClass) {
+        switch (airspaceClass) {
+            case "CTR":
+                return AreaItem.CTR;
+            case "R":
+                return AreaItem.RESTRICTED;
+            case "P":
+                return AreaItem.PROHIBITED;
+            case "Q":
+                return AreaItem.DANGER;
+            case "GP":
+                return AreaItem.GLIDER;
+            default:
+                return 0;
+        }
+    }
 
 
     /**
@@ -122,7 +253,8 @@ public class OpenAirParser {
      */
 
     private void appendDefinition(String oac) {
-        mDefList=(mDefList.length()==0?oac:mDefList+"\n"+oac);
+        if (mDefList.length() > 0) mDefList.append('\n');
+        mDefList.append(oac);
     }
 
 
@@ -133,92 +265,103 @@ public class OpenAirParser {
      * working with complex polygons. We simply postpone the coordinate calculation until
      * import time when the definitions will be interpreted.
      *
+     * The command is split from the rest of the line by hand rather than with a regular
+     * expression, since this runs once for every line of the file.
+     *
      * @param cmd A line from an OpenAir formatted file, for example "DP 39:29.9 N 119:46.1W"
      */
     public void parseInitialCommand(String cmd) {
 
-        // First pattern matches two groups - the main command and the rest of the line
-        String pattern = "(AN|AC|AL|AH|AT|DC|DA|DP|DB|V|\\*) ([\\w\\d\\s\\:\\.\\=\\+\\-\\,]*)";
-        Pattern r = Pattern.compile(pattern);
-        Matcher m = r.matcher(cmd);
-
-        if (m.find()) {
-            String command = m.group(1).toUpperCase();
-            String rest = m.group(2).trim().toUpperCase();
-
-            LatLng pos = null;
-            int radius;
-            int fromDeg;
-            int toDeg;
-
-            switch (command) {
-                case "*":
-                    // Comment - do nothing
-                    break;
-
-                case "AT":
-                    // OpenAir Language extension: Airspace Type
-                    if (rest.equals("CTR")) {
-                        mAirSpaceType = AreaItem.CTR;
-                    } else if (rest.equals("TMA")) {
-                        mAirSpaceType = AreaItem.TMA;
-                    } else if (rest.equals("LTA")) {
-                        mAirSpaceType = AreaItem.LTA;
-                    } else if (rest.equals("TIZ")) {
-                        mAirSpaceType = AreaItem.TIZ;
-                    } else if (rest.equals("TIA")) {
-                        mAirSpaceType = AreaItem.TIA;
-                    } else if (rest.equals("D")) {
-                        mAirSpaceType=AreaItem.DANGER;
-                    } else if (rest.equals("R")) {
-                        mAirSpaceType=AreaItem.RESTRICTED;
-                    } else if (rest.equals("P")) {
-                        mAirSpaceType=AreaItem.PROHIBITED;
-                    } else if (rest.equals("GLIDER")) {
-                        mAirSpaceType=AreaItem.GLIDER;
-                    } else if (rest.equals("PARACHUTE")) {
-                        mAirSpaceType=AreaItem.PARACHUTE;
-                    } else if (rest.equals("ENV")) {
-                        mAirSpaceType=AreaItem.SENSITIVE;
-                    } else {
-                        Log.e(TAG, "parseInitialCommand: unknown Airspace type - "+ rest);
-                    }
-
-                    break;
-
-                case "AC":
-                    mAirspaceClass = rest;
-                    break;
-
-
-                case "AN":
-                    mAirspaceName = rest;
-                    break;
-
-                case "AL":
-                    mAirspaceFrom = parseAltitude(rest);
-                    break;
-
-                case "AH":
-                    mAirspaceTo = parseAltitude(rest);
-                    break;
-
-                case "DC":   // These commands are all postponed
-                case "V":
-                case "DA":
-                case "DP":
-                case "DB":
-                    appendDefinition(cmd);
-                    break;
-
-                default:
-                    Log.e(TAG, "parseInitialCommand: Cannot parse command: " + cmd);
-                    break;
-            }
+        cmd = cmd.trim();
+        int end = 0;
+        while (end < cmd.length() && !Character.isWhitespace(cmd.charAt(end))) {
+            end++;
+        }
 
+        if (end == 0) {
+            Log.e(TAG, "parseInitialCommand: Unrecognized input: " + cmd);
+            return;
+        }
 
-        } else {
+        String command = cmd.substring(0, end).toUpperCase();
+        String rest = cmd.substring(end).trim().toUpperCase();
+
+        // Comment lines do not need a space after the star
+        if (command.charAt(0) == '*') return;
+
+        if (rest.length() == 0) {
             Log.e(TAG, "parseInitialCommand: Unrecognized input: " + cmd);
+            return;
+        }
+
+        switch (command) {
+            case "AT":
+                // OpenAir Language extension: Airspace Type
+                if (rest.equals("CTR")) {
+                    mAirSpaceType = AreaItem.CTR;
+                } else if (rest.equals("TMA")) {
+                    mAirSpaceType = AreaItem.TMA;
+                } else if (rest.equals("LTA")) {
+                    mAirSpaceType = AreaItem.LTA;
+                } else if (rest.equals("TIZ")) {
+                    mAirSpaceType = AreaItem.TIZ;
+                } else if (rest.equals("TIA")) {
+                    mAirSpaceType = AreaItem.TIA;
+                } else if (rest.equals("D")) {
+                    mAirSpaceType=AreaItem.DANGER;
+                } else if (rest.equals("R")) {
+                    mAirSpaceType=AreaItem.RESTRICTED;
+                } else if (rest.equals("P")) {
+                    mAirSpaceType=AreaItem.PROHIBITED;
+                } else if (rest.equals("GLIDER")) {
+                    mAirSpaceType=AreaItem.GLIDER;
+                } else if (rest.equals("PARACHUTE")) {
+                    mAirSpaceType=AreaItem.PARACHUTE;
+                } else if (rest.equals("ENV")) {
+                    mAirSpaceType=AreaItem.SENSITIVE;
+                } else if (Character.isDigit(rest.charAt(0))) {
+                    // Plain OpenAir uses AT for label positions - not used here
+                } else {
+                    Log.e(TAG, "parseInitialCommand: unknown Airspace type - "+ rest);
+                }
+
+                break;
+
+            case "AC":
+                mAirspaceClass = rest;
+                break;
+
+
+            case "AN":
+                mAirspaceName = rest;
+                break;
+
+            case "AL":
+                mAirspaceFrom = parseAltitude(rest);
+                break;
+
+            case "AH":
+                mAirspaceTo = parseAltitude(rest);
+                break;
+
+            case "DC":   // These commands are all postponed
+            case "V":
+            case "DA":
+            case "DP":
+            case "DB":
+                appendDefinition(cmd);
+                break;
+
+            case "SP":   // Pen and brush styles from other tools - not used here
+            case "SB":
+            case "AY":
+            case "AF":
+            case "AG":
+                break;
+
+            default:
+                Log.e(TAG, "parseInitialCommand: Cannot parse command: " + cmd);
+                break;
         }
     }
 
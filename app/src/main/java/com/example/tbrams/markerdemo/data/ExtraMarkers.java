@@ -19,6 +19,7 @@ public class ExtraMarkers {
     private static List<ReportingPoint> sReportingPointList;
     private static List<Obstacle> sObstaclesList;
     private static List<AreaItem> sAreaItemList;
+    private static List<AreaItem> sStaleAreaList;      // Areas without usable stored geometry
 
 
     public ExtraMarkers(Context context) {
@@ -27,6 +28,7 @@ public class ExtraMarkers {
         sReportingPointList = new ArrayList<>();
         sObstaclesList = new ArrayList<>();
         sAreaItemList = new ArrayList<>();
+        sStaleAreaList = new ArrayList<>();
     }
 
     public static ExtraMarkers get(Context context){
@@ -46,6 +48,13 @@ public class ExtraMarkers {
         sAreaItemList = areaItemList;
     }
 
+    public static List<AreaItem> getStaleAreaList() {
+        return sStaleAreaList;
+    }
+    public static void setStaleAreaList(List<AreaItem> staleAreaList) {
+        sStaleAreaList = staleAreaList;
+    }
+
 
 
     /**
@@ -3,13 +3,21 @@ package com.example.tbrams.markerdemo.data;
 import android.content.Context;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MarkerLab {
     private static MarkerLab sMarkerLab;
     private List<MarkerObject> mMarkerlist;
     private String             mTripName;
 
+    // Map marker id to position in the list, kept up to date by the methods changing the list
+    private final Map<String, Integer> mIndexById = new HashMap<>();
+
+    // Navigation values of the route, told about every change made here
+    private final RouteNav mRoute = new RouteNav();
+
 
     private MarkerLab(Context context) {
         mMarkerlist = new ArrayList<>();
@@ -28,6 +36,68 @@ public class MarkerLab {
     }
     public String getTripName() { return mTripName; }
     public void setTripName(String name) { this.mTripName = name; }
+    public RouteNav getRoute() { return mRoute; }
+
+
+    public void addMarker(MarkerObject mo) {
+        mMarkerlist.add(mo);
+        mIndexById.put(mo.getMarker().getId(), mMarkerlist.size() - 1);
+        mRoute.inserted(mMarkerlist.size() - 1);
+    }
+
+    public void addMarker(int index, MarkerObject mo) {
+        mMarkerlist.add(index, mo);
+        reindexFrom(index);
+        mRoute.inserted(index);
+    }
+
+    public MarkerObject removeMarker(int index) {
+        MarkerObject mo = mMarkerlist.remove(index);
+        mIndexById.remove(mo.getMarker().getId());
+        reindexFrom(index);
+        mRoute.removed(index);
+        return mo;
+    }
+
+    // The marker at the index has been dragged to a new position
+    public void markerMoved(int index) {
+        mRoute.moved(index);
+    }
+
+    public void clearMarkers() {
+        mMarkerlist.clear();
+        mIndexById.clear();
+        mRoute.cleared();
+    }
+
+
+    /*
+     * Position of the marker with the map marker id given, or -1 if not in the list.
+     *
+     * The list is also handed out by getMarkers(), so if it has been changed behind our back
+     * the index is simply built again when a lookup finds it out of step.
+     */
+    public int getIndexById(String markerId) {
+        Integer index = mIndexById.get(markerId);
+        if (index == null) {
+            // Most misses are clicks on other markers, only rebuild if the sizes tell us to
+            if (mIndexById.size() == mMarkerlist.size()) return -1;
+        } else if (index < mMarkerlist.size() && mMarkerlist.get(index).getMarker().getId().equals(markerId)) {
+            return index;
+        }
+
+        reindexFrom(0);
+        index = mIndexById.get(markerId);
+        return index == null ? -1 : index;
+    }
+
+
+    private void reindexFrom(int from) {
+        if (from == 0) mIndexById.clear();
+        for (int i = from; i < mMarkerlist.size(); i++) {
+            mIndexById.put(mMarkerlist.get(i).getMarker().getId(), i);
+        }
+    }
 
 
 }
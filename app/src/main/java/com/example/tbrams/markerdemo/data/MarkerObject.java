@@ -4,6 +4,9 @@ package com.example.tbrams.markerdemo.data;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.example.DeclinationGrid;
+import com.example.MagneticModel;
+import com.example.NavLog;
 import com.google.android.gms.maps.model.Marker;
 
 import java.util.ArrayList;
@@ -41,6 +44,35 @@ public class MarkerObject implements Parcelable {
 
     private ArrayList<Pejling> mPejlinger;
 
+    // One model shared by all way points, the coefficient tables are only built once. It starts
+    // out with the built in WMM2015 tables and may be replaced by a newer model loaded from file.
+    private static volatile MagneticModel sMagModel = new MagneticModel();
+
+    // Precomputed declination values for the reference data region, if available
+    private static volatile DeclinationGrid sDeclinationGrid;
+
+    public static MagneticModel getMagneticModel() { return sMagModel; }
+    public static void setMagneticModel(MagneticModel model) { sMagModel = model; }
+    public static void setDeclinationGrid(DeclinationGrid grid) { sDeclinationGrid = grid; }
+
+
+    /*
+     * Look up the declination in the grid if we have one covering the position, otherwise
+     * ask the magnetic model directly. Outside the validity window of the model we keep zero
+     * like we always did.
+     */
+    private static double findDeclination(double lat, double lon) {
+        DeclinationGrid grid = sDeclinationGrid;
+        double var = Double.NaN;
+        if (grid != null) {
+            var = grid.declination(lat, lon);
+        }
+        if (Double.isNaN(var)) {
+            var = sMagModel.declination(lat, lon, 0, MagneticModel.getDecimalYear());
+        }
+        return Double.isNaN(var) ? 0 : var;
+    }
+
     protected MarkerObject(Parcel in) {
         myText = in.readString();
         myNote = in.readString();
@@ -182,43 +214,22 @@ public class MarkerObject implements Parcelable {
 
 
 
-    // Calculate navigational factors based on global nav values
-    public void calcIAS(double tas, double alt)
-    {
-        mALT=alt;
-        mIAS = tas/(1+alt/1000.*0.02);
-    }
-
-    public void calcGS(double tas, double windDirection, double windStrength) {
-        double a = windStrength*Math.sin(Math.toRadians(windDirection-mTT))/tas;
-        double b=  windStrength*Math.cos(Math.toRadians(windDirection-mTT));
-
-        mGS = Math.sqrt(1-Math.pow(a,2))*(tas-b);
-    }
-
-    public void calcWCA(double tas, double windDirection, double windStrength) {
+    /*
+     * Take over the values of the leg arriving here from the navigation log, together with the
+     * global values it was computed for. The calculations themselves are done by NavLog.
+     */
+    public void setNavValues(NavLog log, int leg, double tas, double alt, double windDir, double windStr) {
         mTAS = tas;
-        mWindDir =windDirection;
-        mWindStr =windStrength;
-
-        mWCA = Math.toDegrees(Math.atan(windStrength*Math.sin(Math.toRadians(windDirection-mTT))/tas));
-    }
-
-    public void calcTH() {
-        mTH = (mTT+mWCA+360.)%360;
-    }
-    public void calcMH() {
-        mMH = mTH-mVAR;
-    }
-    public void addStartTIME() {
-        mTIME=mTIME+2.;
-    }
-
-    public void calcTIME() {
-        mTIME = (mDist/mGS)*60.;
-    }
-    public void calcETO() {
-        mETO = 0;
+        mALT = alt;
+        mWindDir = windDir;
+        mWindStr = windStr;
+
+        mGS = log.getGS(leg);
+        mWCA = log.getWCA(leg);
+        mIAS = log.getIAS(leg);
+        mTH = log.getTH(leg);
+        mMH = log.getMH(leg);
+        mTIME = log.getTime(leg);
     }
 
     public void setALT(double ALT) { mALT = ALT; }
@@ -241,9 +252,7 @@ public class MarkerObject implements Parcelable {
         mTH=0;
 
         // Find Magnetic declination
-        MagneticModel magModel = new MagneticModel();
-        magModel.setLocation(marker.getPosition().latitude, marker.getPosition().longitude);
-        mVAR= magModel.getDeclination();
+        mVAR = findDeclination(marker.getPosition().latitude, marker.getPosition().longitude);
         mMH=0;
         mTIME=0;
         mETO=0;
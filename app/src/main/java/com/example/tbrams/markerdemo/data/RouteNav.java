@@ -0,0 +1,226 @@
+package com.example.tbrams.markerdemo.data;
+
+
+import com.example.Geodesy;
+import com.example.NavLog;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Keeps the navigation values of the route - distance, true track, GS, WCA, IAS, headings and
+ * times for each leg - up to date, recalculating only what an edit actually affects.
+ * <p>
+ * Leg i is the leg arriving at way point i. The calculations are done by a NavLog, which holds
+ * the legs in step with the list, and the results are copied into the MarkerObject of each leg
+ * that changed. MarkerLab reports way points added, removed or moved, which marks the legs next
+ * to them dirty, and setGlobals() records which of the global values changed. update() then
+ * recalculates:
+ * <ul>
+ * <li>distance and track, for dirty legs only, or all legs in one Geodesy.legs() pass</li>
+ * <li>GS, WCA, IAS, headings and time, for dirty legs, or all legs if a global value changed</li>
+ * </ul>
+ * ETO and the accumulated distance are running sums over the legs. They are only redone from
+ * the first leg whose time or distance changed, and with additions only.
+ * <p>
+ * If the list has been changed without MarkerLab knowing, update() sees the size differ and
+ * recalculates everything.
+ */
+public class RouteNav {
+    private final TreeSet<Integer> mDirty = new TreeSet<>();    // Way points with a dirty leg
+    private boolean mAllDirty = true;
+    private int mSize;
+
+    private final NavLog mLog = new NavLog();
+
+    // Scratch for recalculating the geometry of all legs
+    private double[] mLat = new double[0];
+    private double[] mLon = new double[0];
+    private double[] mDist = new double[0];
+    private double[] mTT = new double[0];
+
+    private boolean mHasGlobals;
+    private boolean mGlobalsChanged;
+    private double mTas;
+    private double mAlt;
+    private double mWindDir;
+    private double mWindStr;
+
+
+    // A way point was inserted at the index
+    public void inserted(int index) {
+        shift(index, 1);
+        mDirty.add(index);
+        mDirty.add(index + 1);
+        if (index <= 1) mDirty.add(2);      // The old first leg loses its start time
+        if (index <= mLog.size()) mLog.insert(index);
+        mSize++;
+    }
+
+
+    // The way point at the index was removed
+    public void removed(int index) {
+        mDirty.remove(index);
+        shift(index + 1, -1);
+        mDirty.add(index);
+        if (index <= 1) mDirty.add(1);      // A new first leg, with start time
+        if (index < mLog.size()) mLog.remove(index);
+        mSize--;
+    }
+
+
+    // The way point at the index was moved
+    public void moved(int index) {
+        mDirty.add(index);
+        mDirty.add(index + 1);
+    }
+
+
+    // The route was emptied, a new trip starts without global values
+    public void cleared() {
+        mDirty.clear();
+        mAllDirty = true;
+        mSize = 0;
+        mHasGlobals = false;
+        mGlobalsChanged = false;
+        mLog.setSize(0);
+    }
+
+
+    // Move dirty marks at or above the index by delta
+    private void shift(int from, int delta) {
+        if (mDirty.isEmpty() || mDirty.last() < from) return;
+
+        List<Integer> moved = new ArrayList<>(mDirty.tailSet(from));
+        mDirty.removeAll(moved);
+        for (int i : moved) {
+            mDirty.add(i + delta);
+        }
+    }
+
+
+    /**
+     * Set the global navigation values. If any of them changed the next update() recalculates
+     * all legs, in a single pass.
+     *
+     * @param tas       True airspeed in knots
+     * @param alt       Altitude in feet
+     * @param windDir   Wind direction, degrees
+     * @param windStr   Wind strength, knots
+     */
+    public void setGlobals(double tas, double alt, double windDir, double windStr) {
+        if (!mHasGlobals || tas != mTas || alt != mAlt || windDir != mWindDir || windStr != mWindStr) {
+            mGlobalsChanged = true;
+        }
+        mHasGlobals = true;
+        mTas = tas;
+        mAlt = alt;
+        mWindDir = windDir;
+        mWindStr = windStr;
+    }
+
+
+    /**
+     * Bring the navigation values of the route up to date.
+     *
+     * @param markerList    The route, the list kept by MarkerLab
+     */
+    public void update(List<MarkerObject> markerList) {
+        int n = markerList.size();
+        if (n != mSize || n != mLog.size()) {
+            mAllDirty = true;
+            mLog.setSize(n);
+        }
+        mSize = n;
+
+        int first = n;      // First leg whose time or distance changed
+        if (mAllDirty) {
+            setGeometry(markerList);
+            first = 1;
+        } else {
+            for (int i : mDirty) {
+                if (i < 1 || i >= n) continue;
+                setGeometry(markerList, i);
+                first = Math.min(first, i);
+            }
+        }
+
+        if (mHasGlobals) {
+            if (mAllDirty || mGlobalsChanged) {
+                mLog.compute(1, n, mTas, mAlt, mWindDir, mWindStr);
+                copyNavValues(markerList, 1, n);
+                first = 1;
+            } else {
+                for (int i : mDirty) {
+                    if (i < 1 || i >= n) continue;
+                    mLog.compute(i, i + 1, mTas, mAlt, mWindDir, mWindStr);
+                    copyNavValues(markerList, i, i + 1);
+                }
+            }
+        }
+
+        // Running sums, from the first leg that changed
+        mLog.accumulate(first);
+        if (mHasGlobals) {
+            for (int i = Math.max(1, first); i < n; i++) {
+                markerList.get(i).setETO(mLog.getEto(i));
+            }
+        }
+
+        mDirty.clear();
+        mAllDirty = false;
+        mGlobalsChanged = false;
+    }
+
+
+    private void setGeometry(List<MarkerObject> markerList, int i) {
+        MarkerObject to = markerList.get(i);
+        LatLng from = markerList.get(i - 1).getMarker().getPosition();
+        LatLng position = to.getMarker().getPosition();
+        to.setDist(Geodesy.distance(from.latitude, from.longitude, position.latitude, position.longitude));
+        to.setTT(Geodesy.heading(from.latitude, from.longitude, position.latitude, position.longitude));
+        mLog.setLeg(i, to.getDist(), to.getTT(), to.getVAR());
+    }
+
+
+    // All legs, reading each position once
+    private void setGeometry(List<MarkerObject> markerList) {
+        int n = markerList.size();
+        if (mLat.length < n) {
+            int capacity = Math.max(n, Math.max(16, 2 * mLat.length));
+            mLat = new double[capacity];
+            mLon = new double[capacity];
+            mDist = new double[capacity];
+            mTT = new double[capacity];
+        }
+
+        for (int i = 0; i < n; i++) {
+            LatLng position = markerList.get(i).getMarker().getPosition();
+            mLat[i] = position.latitude;
+            mLon[i] = position.longitude;
+        }
+        Geodesy.legs(mLat, mLon, 1, n, mDist, mTT);
+
+        for (int i = 1; i < n; i++) {
+            MarkerObject to = markerList.get(i);
+            to.setDist(mDist[i]);
+            to.setTT(mTT[i]);
+            mLog.setLeg(i, to.getDist(), to.getTT(), to.getVAR());
+        }
+    }
+
+
+    private void copyNavValues(List<MarkerObject> markerList, int from, int to) {
+        for (int i = from; i < to; i++) {
+            markerList.get(i).setNavValues(mLog, i, mTas, mAlt, mWindDir, mWindStr);
+        }
+    }
+
+
+    // Nautical miles along the route to the way point
+    public double getAccumulatedDist(int index) {
+        return mLog.getAccumulatedDist(index);
+    }
+}
@@ -1,27 +1,45 @@
 package com.example.tbrams.markerdemo.db;
 
+/*
+ * Tessellated area polygons, one row per area.
+ *
+ * The polygon is stored as a GeometryBlob together with its bounding box in E7 units (degrees
+ * times 10^7). Hash and tolerance record what the polygon was generated from, so it is only
+ * generated again when the definition in the area table or the tessellation tolerance changes.
+ */
 public class CoordTable {
-    public static final String TABLE_NAME = "area_coords";
+    public static final String TABLE_NAME = "area_geometry";
 
-    public static final String COLUMN_ID = "CoordId";
     public static final String COLUMN_AREA_ID = "AreaId";
-    public static final String COLUMN_LAT = "Lat";
-    public static final String COLUMN_LON = "Lon";
-    public static final String COLUMN_SEQ = "Seq";
+    public static final String COLUMN_DEF_HASH = "DefHash";
+    public static final String COLUMN_TOLERANCE = "Tolerance";
+    public static final String COLUMN_MIN_LAT = "MinLat";
+    public static final String COLUMN_MIN_LON = "MinLon";
+    public static final String COLUMN_MAX_LAT = "MaxLat";
+    public static final String COLUMN_MAX_LON = "MaxLon";
+    public static final String COLUMN_GEOMETRY = "Geometry";
 
 
-    public static final String[] ALL_COLUMNS = {COLUMN_ID, COLUMN_AREA_ID, COLUMN_LAT, COLUMN_LON, COLUMN_SEQ};
+    public static final String[] ALL_COLUMNS = {COLUMN_AREA_ID, COLUMN_DEF_HASH, COLUMN_TOLERANCE,
+            COLUMN_MIN_LAT, COLUMN_MIN_LON, COLUMN_MAX_LAT, COLUMN_MAX_LON, COLUMN_GEOMETRY};
 
     public static final String SQL_CREATE =
             "CREATE TABLE  IF NOT EXISTS " + TABLE_NAME + "(" +
-                    COLUMN_ID + " TEXT PRIMARY KEY," +
-                    COLUMN_AREA_ID + " TEXT," +
-                    COLUMN_LAT + " REAL," +
-                    COLUMN_LON + " REAL," +
-                    COLUMN_SEQ + " INT" +
+                    COLUMN_AREA_ID + " TEXT PRIMARY KEY," +
+                    COLUMN_DEF_HASH + " INT," +
+                    COLUMN_TOLERANCE + " REAL," +
+                    COLUMN_MIN_LAT + " INT," +
+                    COLUMN_MIN_LON + " INT," +
+                    COLUMN_MAX_LAT + " INT," +
+                    COLUMN_MAX_LON + " INT," +
+                    COLUMN_GEOMETRY + " BLOB" +
                     ");";
 
     public static final String SQL_DELETE =
             "DROP TABLE IF EXISTS " + TABLE_NAME;
 
+    // The old one row per coordinate table was never written to
+    public static final String SQL_DELETE_LEGACY =
+            "DROP TABLE IF EXISTS area_coords";
+
 }
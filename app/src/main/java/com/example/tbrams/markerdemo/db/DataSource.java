@@ -92,6 +92,7 @@ public class DataSource {
 
     public void resetAreaTables() {
         mDb.execSQL(AreaTable.SQL_DELETE);
+        mDb.execSQL(CoordTable.SQL_DELETE_LEGACY);
         mDb.execSQL(CoordTable.SQL_DELETE);
         mDb.execSQL(AreaTable.SQL_CREATE);
         mDb.execSQL(CoordTable.SQL_CREATE);
@@ -108,6 +109,7 @@ public class DataSource {
         mDb.execSQL(RPTable.SQL_CREATE);
         mDb.execSQL(ObstacleTable.SQL_CREATE);
         mDb.execSQL(AreaTable.SQL_CREATE);
+        mDb.execSQL(CoordTable.SQL_DELETE_LEGACY);
         mDb.execSQL(CoordTable.SQL_CREATE);
     }
 
@@ -44,17 +44,32 @@ public class DataSourceArea extends DataSource {
 
     public static AreaItem createArea(AreaItem areaItem) {
 
-        ContentValues values = areaItem.toContentValues();
         SQLiteDatabase dB;
         dB = openAndGetDb();
-
-        dB.insert(AreaTable.TABLE_NAME, null, values);
+        insertArea(dB, areaItem);
         close();
 
         return areaItem;
     }
 
 
+    /**
+     * Insert an area and its polygon into an open database, for example inside a transaction
+     * covering a whole import.
+     *
+     * @param dB        Open database
+     * @param areaItem  Area to insert
+     */
+    public static void insertArea(SQLiteDatabase dB, AreaItem areaItem) {
+        ContentValues values = areaItem.toContentValues();
+        // Tessellate once at import and keep the result, so loading never has to do it
+        ContentValues geometry = areaItem.toGeometryValues();
+
+        dB.insert(AreaTable.TABLE_NAME, null, values);
+        dB.insertWithOnConflict(CoordTable.TABLE_NAME, null, geometry, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+
 
 
     /**
@@ -68,6 +83,8 @@ public class DataSourceArea extends DataSource {
         SQLiteDatabase dB = openAndGetDb();
         dB.delete(AreaTable.TABLE_NAME, AreaTable.COLUMN_ID + " = ?",
                 new String[]{areaItem.getAreaId()});
+        dB.delete(CoordTable.TABLE_NAME, CoordTable.COLUMN_AREA_ID + " = ?",
+                new String[]{areaItem.getAreaId()});
         close();
     }
 
@@ -122,18 +139,62 @@ public class DataSourceArea extends DataSource {
      * @Return A list of AreaItem objects
      */
     public static List<AreaItem> getAllAreas(Integer areaType) {
+        return getAllAreas(areaType, null);
+    }
+
+
+    /**
+     * Same as getAllAreas(Integer), also reporting the areas without usable stored geometry.
+     * <p>
+     * Nothing is generated here. Stale areas interpret their definition when they are first
+     * drawn, like areas that were never stored, and should then be handed to storeGeometry()
+     * from a background thread so the next start can load them.
+     *
+     * @param areaType  Filter on area type, or null for all areas
+     * @param staleList If not null, receives the areas whose stored geometry is missing, damaged
+     *                  or made from another definition or tolerance
+     * @Return A list of AreaItem objects
+     */
+    public static List<AreaItem> getAllAreas(Integer areaType, List<AreaItem> staleList) {
         List<AreaItem> areaList = new ArrayList<>();
+        int staleCount = 0;
         Cursor cursor;
 
+        // Areas with their stored geometry, if there is any
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (String column : AreaTable.ALL_COLUMNS) {
+            sql.append("a.").append(column).append(", ");
+        }
+        sql.append("g.").append(CoordTable.COLUMN_DEF_HASH).append(", ")
+                .append("g.").append(CoordTable.COLUMN_TOLERANCE).append(", ")
+                .append("g.").append(CoordTable.COLUMN_MIN_LAT).append(", ")
+                .append("g.").append(CoordTable.COLUMN_MIN_LON).append(", ")
+                .append("g.").append(CoordTable.COLUMN_MAX_LAT).append(", ")
+                .append("g.").append(CoordTable.COLUMN_MAX_LON).append(", ")
+                .append("g.").append(CoordTable.COLUMN_GEOMETRY)
+                .append(" FROM ").append(AreaTable.TABLE_NAME).append(" a LEFT JOIN ").append(CoordTable.TABLE_NAME)
+                .append(" g ON a.").append(AreaTable.COLUMN_ID).append(" = g.").append(CoordTable.COLUMN_AREA_ID);
+
         SQLiteDatabase dB = openAndGetDb();
         if (areaType == null) {
-            cursor = dB.query(AreaTable.TABLE_NAME, AreaTable.ALL_COLUMNS, null, null, null, null, AreaTable.COLUMN_NAME);
+            sql.append(" ORDER BY a.").append(AreaTable.COLUMN_NAME);
+            cursor = dB.rawQuery(sql.toString(), null);
         } else {
             String[] areaTypes = {areaType.toString()};
-            cursor = dB.query(AreaTable.TABLE_NAME, AreaTable.ALL_COLUMNS, AreaTable.COLUMN_TYPE + "=?", areaTypes, null, null, AreaTable.COLUMN_NAME);
+            sql.append(" WHERE a.").append(AreaTable.COLUMN_TYPE).append("=?")
+                    .append(" ORDER BY a.").append(AreaTable.COLUMN_NAME);
+            cursor = dB.rawQuery(sql.toString(), areaTypes);
         }
 
         if (cursor.getCount() > 0) {
+            int hashIndex = cursor.getColumnIndex(CoordTable.COLUMN_DEF_HASH);
+            int toleranceIndex = cursor.getColumnIndex(CoordTable.COLUMN_TOLERANCE);
+            int minLatIndex = cursor.getColumnIndex(CoordTable.COLUMN_MIN_LAT);
+            int minLonIndex = cursor.getColumnIndex(CoordTable.COLUMN_MIN_LON);
+            int maxLatIndex = cursor.getColumnIndex(CoordTable.COLUMN_MAX_LAT);
+            int maxLonIndex = cursor.getColumnIndex(CoordTable.COLUMN_MAX_LON);
+            int geometryIndex = cursor.getColumnIndex(CoordTable.COLUMN_GEOMETRY);
+
             while (cursor.moveToNext()) {
 
                 String aId = cursor.getString(cursor.getColumnIndex(AreaTable.COLUMN_ID));
@@ -146,13 +207,69 @@ public class DataSourceArea extends DataSource {
                 String aDefinition = cursor.getString(cursor.getColumnIndex(AreaTable.COLUMN_OAC));
 
                 AreaItem areaItem = new AreaItem(aId, aName, aType, aIdent, aClass, aFrom, aTo, aDefinition);
+
+                boolean stored = !cursor.isNull(geometryIndex)
+                        && cursor.getInt(hashIndex) == areaItem.getDefinitionHash()
+                        && cursor.getDouble(toleranceIndex) == AreaItem.GEOMETRY_TOLERANCE;
+                if (stored) {
+                    try {
+                        byte[] blob = cursor.getBlob(geometryIndex);
+                        int count = GeometryBlob.count(blob);
+                        int[] latE7 = new int[count];
+                        int[] lonE7 = new int[count];
+                        GeometryBlob.decode(blob, latE7, lonE7);
+                        areaItem.setGeometry(latE7, lonE7, new int[]{cursor.getInt(minLatIndex),
+                                cursor.getInt(minLonIndex), cursor.getInt(maxLatIndex), cursor.getInt(maxLonIndex)});
+                    } catch (IllegalArgumentException e) {
+                        Log.e(TAG, "getAllAreas: Damaged geometry for " + aName);
+                        stored = false;
+                    }
+                }
+                if (!stored) {
+                    staleCount++;
+                    if (staleList != null) staleList.add(areaItem);
+                }
                 areaList.add(areaItem);
             }
         }
         cursor.close();
         close();
 
+        if (staleCount > 0) {
+            Log.d(TAG, "getAllAreas: No usable geometry stored for " + staleCount + " areas");
+        }
         return areaList;
     }
 
+
+    /**
+     * Store the polygons of a number of areas, in a single transaction.
+     * <p>
+     * Areas that have not generated their polygon yet will do so here, so normally only pass
+     * areas that have already been drawn or prepared. Meant for a background thread.
+     *
+     * @param areaItemList Areas to store the geometry of
+     */
+    public static void storeGeometry(List<AreaItem> areaItemList) {
+        if (areaItemList.size() == 0) return;
+
+        // Encode first, so the database is not locked while any polygon is generated
+        List<ContentValues> rows = new ArrayList<>(areaItemList.size());
+        for (AreaItem areaItem : areaItemList) {
+            rows.add(areaItem.toGeometryValues());
+        }
+
+        SQLiteDatabase dB = openAndGetDb();
+        dB.beginTransaction();
+        try {
+            for (ContentValues geometry : rows) {
+                dB.insertWithOnConflict(CoordTable.TABLE_NAME, null, geometry, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            dB.setTransactionSuccessful();
+        } finally {
+            dB.endTransaction();
+        }
+        close();
+    }
+
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import android.Manifest;
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Environment;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
@@ -11,6 +12,7 @@ import android.support.v4.content.ContextCompat;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.example.tbrams.markerdemo.components.OpenAirParser;
 import com.example.tbrams.markerdemo.data.Aerodrome;
 import com.example.tbrams.markerdemo.data.ExtraMarkers;
 import com.example.tbrams.markerdemo.data.NavAid;
@@ -22,6 +24,7 @@ import com.example.tbrams.markerdemo.dbModel.SampleDataProvider;
 import com.example.tbrams.markerdemo.dbModel.TripItem;
 import com.example.tbrams.markerdemo.dbModel.WpItem;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -275,9 +278,10 @@ public class DbAdmin extends DataSource {
             DataSourceArea.createArea(areaItem);
         }
 
+        List<AreaItem> staleList = new ArrayList<>();
         if (!purgeDatabase) {
             // Since this was an append operation, make sure we get all database elements into Extramarkers
-            areaItemList = DataSourceArea.getAllAreas(null);
+            areaItemList = DataSourceArea.getAllAreas(null, staleList);
         }
 
         super.close();
@@ -287,6 +291,56 @@ public class DbAdmin extends DataSource {
         }
 
         sExtraMarkers.setAreaItemList(areaItemList);
+        sExtraMarkers.setStaleAreaList(staleList);
+    }
+
+
+    /**
+     * Parse OpenAir commands straight into the Areas and Coords tables. Each area is written,
+     * with its polygon, as soon as its block of commands has been parsed, so only one area at a
+     * time is held while importing. The whole import is a single transaction.
+     * <p>
+     * Afterwards the singleton Storage is loaded from the database, using the stored polygons.
+     *
+     * @param openAirCommands   OpenAir commands, one per line
+     * @param purgeDatabase     Flag - if set, clear the area tables before inserting
+     *                          otherwise just append to existing data
+     * @return number of areas imported
+     */
+    public int importAreas(Iterable<String> openAirCommands, boolean purgeDatabase) {
+        final SQLiteDatabase dB = openAndGetDb();
+        int count;
+
+        dB.beginTransaction();
+        try {
+            if (purgeDatabase) {
+                // Delete and recreate both tables
+                super.resetAreaTables();
+            }
+
+            count = new OpenAirParser().parse(openAirCommands, new OpenAirParser.OnAreaParsedListener() {
+                @Override
+                public void onAreaParsed(AreaItem areaItem) {
+                    DataSourceArea.insertArea(dB, areaItem);
+                }
+            });
+            dB.setTransactionSuccessful();
+        } finally {
+            dB.endTransaction();
+        }
+        super.close();
+
+        List<AreaItem> staleList = new ArrayList<>();
+        List<AreaItem> areaItemList = DataSourceArea.getAllAreas(null, staleList);
+
+        if (sExtraMarkers == null) {
+            sExtraMarkers = ExtraMarkers.get(mContext);
+        }
+
+        sExtraMarkers.setAreaItemList(areaItemList);
+        sExtraMarkers.setStaleAreaList(staleList);
+
+        return count;
     }
 
 
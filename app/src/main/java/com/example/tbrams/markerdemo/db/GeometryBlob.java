@@ -0,0 +1,137 @@
+package com.example.tbrams.markerdemo.db;
+
+/*
+ * Compact binary form of a polygon.
+ *
+ * Coordinates are rounded to E7 integers (degrees times 10^7, about 1 cm) and each point is stored
+ * as the difference to the one before it. Neighbouring points of a tessellated arc are close, so
+ * the differences are small and are written as zigzag varints, usually two or three bytes each.
+ *
+ *      varint  number of points
+ *      varint  zigzag latitude delta, then zigzag longitude delta, for each point
+ *
+ * The first point is stored as a delta from 0,0.
+ */
+public final class GeometryBlob {
+
+    private GeometryBlob() {
+    }
+
+
+    public static int toE7(double degrees) {
+        return (int) Math.round(degrees * 1e7);
+    }
+
+
+    public static double fromE7(int e7) {
+        return e7 / 1e7;
+    }
+
+
+    /**
+     * Encode a polygon.
+     *
+     * @param latE7 Latitudes in E7 units
+     * @param lonE7 Longitudes in E7 units
+     * @param count Number of points to use from the arrays
+     * @return the blob
+     */
+    public static byte[] encode(int[] latE7, int[] lonE7, int count) {
+        // Worst case is five bytes for the count and two full varints per point
+        byte[] buffer = new byte[5 + count * 20];
+        int pos = writeVarint(buffer, 0, count);
+
+        long lastLat = 0;
+        long lastLon = 0;
+        for (int i = 0; i < count; i++) {
+            pos = writeVarint(buffer, pos, zigzag(latE7[i] - lastLat));
+            pos = writeVarint(buffer, pos, zigzag(lonE7[i] - lastLon));
+            lastLat = latE7[i];
+            lastLon = lonE7[i];
+        }
+
+        byte[] blob = new byte[pos];
+        System.arraycopy(buffer, 0, blob, 0, pos);
+        return blob;
+    }
+
+
+    /**
+     * Number of points in a blob, so the caller can size its arrays before decode()
+     *
+     * @throws IllegalArgumentException if the count is damaged
+     */
+    public static int count(byte[] blob) {
+        return readCount(blob, new int[]{0});
+    }
+
+
+    /**
+     * Decode a blob into the given arrays, which must hold at least count(blob) points.
+     *
+     * @return number of points decoded
+     * @throws IllegalArgumentException if the blob is truncated or the count is damaged
+     */
+    public static int decode(byte[] blob, int[] latE7, int[] lonE7) {
+        int[] pos = {0};
+        int count = readCount(blob, pos);
+
+        long lat = 0;
+        long lon = 0;
+        for (int i = 0; i < count; i++) {
+            lat += unzigzag(readVarint(blob, pos));
+            lon += unzigzag(readVarint(blob, pos));
+            latE7[i] = (int) lat;
+            lonE7[i] = (int) lon;
+        }
+        return count;
+    }
+
+
+    /*
+     * The point count, checked against the blob length. Each point takes at least two bytes, so a
+     * damaged count cannot make the caller allocate arrays larger than the blob could fill.
+     */
+    private static int readCount(byte[] blob, int[] pos) {
+        long count = readVarint(blob, pos);
+        if (count < 0 || count > (blob.length - 1) / 2) {
+            throw new IllegalArgumentException("Bad point count in geometry blob: " + count);
+        }
+        return (int) count;
+    }
+
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    private static int writeVarint(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+
+    private static long readVarint(byte[] blob, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= blob.length) {
+                throw new IllegalArgumentException("Truncated geometry blob");
+            }
+            byte b = blob[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+}
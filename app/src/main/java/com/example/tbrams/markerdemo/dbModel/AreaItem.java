@@ -2,13 +2,21 @@ package com.example.tbrams.markerdemo.dbModel;
 
 import android.content.ContentValues;
 
+import com.example.Simplifier;
 import com.example.tbrams.markerdemo.components.OpenAirInterpreter;
 import com.example.tbrams.markerdemo.db.AreaTable;
+import com.example.tbrams.markerdemo.db.CoordTable;
+import com.example.tbrams.markerdemo.db.GeometryBlob;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class AreaItem {
     public static final int CTR = 1;
@@ -25,6 +33,15 @@ public class AreaItem {
     public static final int GLIDER = 20;
     public static final int PARACHUTE=21;
 
+    // Tolerance used for the polygon, stored with the geometry so a change triggers a new tessellation
+    public static final double GEOMETRY_TOLERANCE = OpenAirInterpreter.TOLERANCE_COARSE;
+
+    // Levels of detail for the map, level k is used from LOD_MIN_ZOOM[k] and simplified with
+    // LOD_TOLERANCE[k] metres. The last level is the polygon itself.
+    private static final float[] LOD_MIN_ZOOM = {0, 7, 9, 11};
+    private static final double[] LOD_TOLERANCE = {400, 100, 35, 0};
+    public static final int LOD_COUNT = LOD_MIN_ZOOM.length;
+
     private String mAreaId;
     private String mAreaName;
     private int mAreaType;
@@ -34,8 +51,15 @@ public class AreaItem {
     private int mAreaToAlt;
     private String mOAC;
 
-    // Not used in database
-    private ArrayList<LatLng> mCoordList;
+    // Not used in database. Generated from the definition the first time somebody asks for it,
+    // so areas that are never shown never cost any tessellation.
+    private volatile ArrayList<LatLng> mCoordList;
+    private volatile List<ArrayList<LatLng>> mLevels;
+
+    // Polygon and bounding box in E7 units as loaded from the geometry table, if any
+    private int[] mLatE7;
+    private int[] mLonE7;
+    private int[] mBoundsE7;
 
 
     public AreaItem() {
@@ -66,9 +90,7 @@ public class AreaItem {
         this.mAreaFromAlt = areaFromAlt;
         this.mAreaToAlt = areaToAlt;
         this.mOAC = definition;
-
-        OpenAirInterpreter interpreter = new OpenAirInterpreter();
-        this.mCoordList = interpreter.generatePolygon(definition);
+        this.mCoordList = null;
 
     }
 
@@ -132,16 +154,237 @@ public class AreaItem {
         return mOAC;
     }
 
-    public void setDefinition(String OAC) {
+    public synchronized void setDefinition(String OAC) {
         mOAC = OAC;
+        mCoordList = null;
+        mLevels = null;
+        mLatE7 = null;
+        mLonE7 = null;
+        mBoundsE7 = null;
     }
 
     public String getOAC() { return mOAC; }
-    public void setOAC(String OAC) {mOAC = OAC;}
-
-    // This one can be called as soon as the item has been created
+    public void setOAC(String OAC) {setDefinition(OAC);}
+
+    /**
+     * The polygon for this area, generated from the definition on the first call and kept after
+     * that. The polygon is used for drawing on the map, so the coarse tolerance will do.
+     * <p>
+     * Safe to call from a background thread, for example to prepare areas before they are shown.
+     *
+     * @return List of LatLng coordinates
+     */
     public ArrayList<LatLng> getCoordList() {
-        return mCoordList;
+        ArrayList<LatLng> coordList = mCoordList;
+        if (coordList == null) {
+            synchronized (this) {
+                coordList = mCoordList;
+                if (coordList == null) {
+                    if (mLatE7 != null) {
+                        coordList = new ArrayList<>(mLatE7.length);
+                        for (int i = 0; i < mLatE7.length; i++) {
+                            coordList.add(new LatLng(GeometryBlob.fromE7(mLatE7[i]), GeometryBlob.fromE7(mLonE7[i])));
+                        }
+                    } else {
+                        OpenAirInterpreter interpreter = new OpenAirInterpreter(GEOMETRY_TOLERANCE);
+                        coordList = interpreter.generatePolygon(mOAC);
+                    }
+                    mCoordList = coordList;
+                }
+            }
+        }
+        return coordList;
+    }
+
+    // True if getCoordList() will return without any tessellation
+    public boolean hasCoordList() {
+        return mCoordList != null;
+    }
+
+    /**
+     * Interpret the definition again with another tolerance, for example OpenAirInterpreter.TOLERANCE_FINE
+     * when checking if a position is inside the area. The result is not kept.
+     *
+     * @param maxChordError Maximum distance in metres between arcs and the polygon edges
+     * @return List of LatLng coordinates
+     */
+    public ArrayList<LatLng> getCoordList(double maxChordError) {
+        return new OpenAirInterpreter(maxChordError).generatePolygon(mOAC);
+    }
+
+    /**
+     * Use a polygon stored earlier instead of interpreting the definition again.
+     *
+     * @param latE7     Latitudes in E7 units
+     * @param lonE7     Longitudes in E7 units
+     * @param boundsE7  South, west, north and east edge in E7 units
+     */
+    public synchronized void setGeometry(int[] latE7, int[] lonE7, int[] boundsE7) {
+        mLatE7 = latE7;
+        mLonE7 = lonE7;
+        mBoundsE7 = boundsE7;
+        mCoordList = null;
+        mLevels = null;
+    }
+
+
+    // True if getLevelOfDetail() will return without any work
+    public boolean hasLevelsOfDetail() {
+        return mLevels != null;
+    }
+
+
+    // Level of detail to use at a camera zoom
+    public static int levelForZoom(float zoom) {
+        int level = 0;
+        while (level < LOD_COUNT - 1 && zoom >= LOD_MIN_ZOOM[level + 1]) level++;
+        return level;
+    }
+
+
+    /**
+     * The polygon simplified for a level of detail, see levelForZoom(). All levels are made from
+     * the polygon in one go the first time one is asked for.
+     * <p>
+     * Safe to call from a background thread.
+     *
+     * @param level 0 .. LOD_COUNT-1, the last one being getCoordList() itself
+     * @return List of LatLng coordinates, shared - do not modify
+     */
+    public ArrayList<LatLng> getLevelOfDetail(int level) {
+        List<ArrayList<LatLng>> levels = mLevels;
+        if (levels == null) {
+            synchronized (this) {
+                levels = mLevels;
+                if (levels == null) {
+                    levels = makeLevels(getCoordList());
+                    mLevels = levels;
+                }
+            }
+        }
+        return levels.get(level);
+    }
+
+
+    private static List<ArrayList<LatLng>> makeLevels(ArrayList<LatLng> coords) {
+        int n = coords.size();
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = coords.get(i).latitude;
+            lon[i] = coords.get(i).longitude;
+        }
+        double[] importance = Simplifier.importance(lat, lon);
+
+        List<ArrayList<LatLng>> levels = new ArrayList<>(LOD_COUNT);
+        for (int level = 0; level < LOD_COUNT; level++) {
+            if (LOD_TOLERANCE[level] <= 0) {
+                levels.add(coords);
+                continue;
+            }
+            int[] kept = Simplifier.select(importance, LOD_TOLERANCE[level]);
+            ArrayList<LatLng> simplified = new ArrayList<>(kept.length);
+            for (int i : kept) {
+                simplified.add(coords.get(i));
+            }
+            levels.add(simplified);
+        }
+        return levels;
+    }
+
+
+    /**
+     * Make the polygons and levels of detail for a set of areas, spread over a number of threads.
+     *
+     * @param areas     Areas to prepare
+     * @param threads   Number of worker threads, 1 runs on the calling thread
+     */
+    public static void prepareLevelsOfDetail(List<AreaItem> areas, int threads) {
+        if (threads <= 1) {
+            for (AreaItem areaItem : areas) {
+                areaItem.getLevelOfDetail(0);
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> jobs = new ArrayList<>(areas.size());
+            for (final AreaItem areaItem : areas) {
+                jobs.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        areaItem.getLevelOfDetail(0);
+                    }
+                }));
+            }
+            for (Future<?> job : jobs) {
+                job.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Preparing areas interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Preparing areas failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /*
+     * Bounding box of the polygon, or null if the geometry has not been loaded or generated yet
+     */
+    public synchronized LatLngBounds getBounds() {
+        if (mBoundsE7 == null) return null;
+        return new LatLngBounds(
+                new LatLng(GeometryBlob.fromE7(mBoundsE7[0]), GeometryBlob.fromE7(mBoundsE7[1])),
+                new LatLng(GeometryBlob.fromE7(mBoundsE7[2]), GeometryBlob.fromE7(mBoundsE7[3])));
+    }
+
+
+    // Identifies the definition the stored geometry was generated from
+    public int getDefinitionHash() {
+        return mOAC == null ? 0 : mOAC.hashCode();
+    }
+
+
+    /**
+     * Row for the geometry table, generating the polygon first if needed.
+     */
+    public ContentValues toGeometryValues() {
+        List<LatLng> coords = getCoordList();
+        int count = coords.size();
+        int[] latE7 = new int[count];
+        int[] lonE7 = new int[count];
+        int[] boundsE7 = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int i = 0; i < count; i++) {
+            latE7[i] = GeometryBlob.toE7(coords.get(i).latitude);
+            lonE7[i] = GeometryBlob.toE7(coords.get(i).longitude);
+            boundsE7[0] = Math.min(boundsE7[0], latE7[i]);
+            boundsE7[1] = Math.min(boundsE7[1], lonE7[i]);
+            boundsE7[2] = Math.max(boundsE7[2], latE7[i]);
+            boundsE7[3] = Math.max(boundsE7[3], lonE7[i]);
+        }
+        if (count == 0) {
+            boundsE7 = new int[4];
+        }
+
+        synchronized (this) {
+            if (mBoundsE7 == null) mBoundsE7 = boundsE7;
+        }
+
+        ContentValues values = new ContentValues(8);
+        values.put(CoordTable.COLUMN_AREA_ID, mAreaId);
+        values.put(CoordTable.COLUMN_DEF_HASH, getDefinitionHash());
+        values.put(CoordTable.COLUMN_TOLERANCE, GEOMETRY_TOLERANCE);
+        values.put(CoordTable.COLUMN_MIN_LAT, boundsE7[0]);
+        values.put(CoordTable.COLUMN_MIN_LON, boundsE7[1]);
+        values.put(CoordTable.COLUMN_MAX_LAT, boundsE7[2]);
+        values.put(CoordTable.COLUMN_MAX_LON, boundsE7[3]);
+        values.put(CoordTable.COLUMN_GEOMETRY, GeometryBlob.encode(latE7, lonE7, count));
+
+        return values;
     }
 
     public ContentValues toContentValues() {
@@ -0,0 +1,123 @@
+package com.example.tbrams.markerdemo.components;
+
+
+import com.example.tbrams.markerdemo.dbModel.AreaItem;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * The streaming OpenAir parser on a plain OpenAir file: areas separated by AC only, comments,
+ * blank lines and style commands from other tools.
+ */
+public class OpenAirParserTest {
+
+    private static final String SAMPLE =
+            "* Sample airspace file\n" +
+            "*\n" +
+            "AC R\n" +
+            "AN EK R12 Test\n" +
+            "AL GND\n" +
+            "AH 3500 ft\n" +
+            "SP 0,1,0,0,255\n" +
+            "SB -1,-1,-1\n" +
+            "DP 55:30:00 N 010:00:00 E\n" +
+            "DP 55:40:00 N 010:10:00 E\n" +
+            "DP 55:30:00 N 010:20:00 E\n" +
+            "\n" +
+            "AC CTR\n" +
+            "AN Billund CTR\n" +
+            "AL SFC\n" +
+            "AH FL 45\n" +
+            "V X=55:44:26 N 009:09:07 E\n" +
+            "DC 8\n";
+
+
+    private static class Collector implements OpenAirParser.OnAreaParsedListener {
+        final List<AreaItem> areas = new ArrayList<>();
+
+        @Override
+        public void onAreaParsed(AreaItem areaItem) {
+            areas.add(areaItem);
+        }
+    }
+
+
+    @Test
+    public void parsesPlainOpenAirFromReader() throws IOException {
+        Collector collector = new Collector();
+        int count = new OpenAirParser().parse(new StringReader(SAMPLE), collector);
+
+        assertEquals(2, count);
+        assertEquals(2, collector.areas.size());
+        assertSample(collector.areas);
+    }
+
+
+    @Test
+    public void parsesInputStreamInEncoding() throws IOException {
+        String file = "AC P\nAN Skrydstrup Øst\nAL 0\nAH 1500\nDC 2\n";
+        Collector collector = new Collector();
+        int count = new OpenAirParser().parse(new ByteArrayInputStream(file.getBytes("ISO-8859-1")),
+                "ISO-8859-1", collector);
+
+        assertEquals(1, count);
+        AreaItem area = collector.areas.get(0);
+        assertEquals("SKRYDSTRUP ØST", area.getAreaName());
+        assertEquals(AreaItem.PROHIBITED, area.getAreaType());
+        assertEquals(1500, area.getAreaToAlt());
+    }
+
+
+    @Test
+    public void commandsGiveSameAreasAsReader() {
+        // Spreadsheet rows, with DONE between the areas instead of blank lines
+        List<String> commands = new ArrayList<>(Arrays.asList(SAMPLE.split("\n")));
+        commands.set(commands.indexOf(""), "DONE");
+
+        Collector collector = new Collector();
+        int count = new OpenAirParser().parse(commands, collector);
+
+        assertEquals(2, count);
+        assertSample(collector.areas);
+    }
+
+
+    @Test
+    public void incompleteAreaIsSkipped() throws IOException {
+        // No ceiling on the first area
+        String file = "AC R\nAN Broken\nAL GND\nDP 55:30:00 N 010:00:00 E\n" + SAMPLE;
+        Collector collector = new Collector();
+        int count = new OpenAirParser().parse(new StringReader(file), collector);
+
+        assertEquals(2, count);
+        assertSample(collector.areas);
+    }
+
+
+    private static void assertSample(List<AreaItem> areas) {
+        AreaItem restricted = areas.get(0);
+        assertEquals("EK R12 TEST", restricted.getAreaName());
+        assertEquals(AreaItem.RESTRICTED, restricted.getAreaType());
+        assertEquals("R", restricted.getAreaClass());
+        assertEquals(0, restricted.getAreaFromAlt());
+        assertEquals(3500, restricted.getAreaToAlt());
+        assertEquals("DP 55:30:00 N 010:00:00 E\nDP 55:40:00 N 010:10:00 E\nDP 55:30:00 N 010:20:00 E",
+                restricted.getDefinition());
+
+        AreaItem control = areas.get(1);
+        assertEquals("BILLUND CTR", control.getAreaName());
+        assertEquals(AreaItem.CTR, control.getAreaType());
+        assertEquals(0, control.getAreaFromAlt());
+        assertEquals(4500, control.getAreaToAlt());
+        assertEquals("V X=55:44:26 N 009:09:07 E\nDC 8", control.getDefinition());
+    }
+}
@@ -0,0 +1,176 @@
+package com.example;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Spherical distance and heading between the legs of a 300 point route, the same work the app
+ * does for every route update, plus offset and interpolation. Positions are wrapped in new Point
+ * objects per call, like the app does with LatLng.
+ *
+ * The *Geodesy benchmarks do the same on plain doubles with Geodesy. setUp() first checks that
+ * both agree to 1e-9 on every point, metres for distances and degrees for the rest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeodesyBenchmark {
+
+    private static final int POINTS = 300;
+    private static final double TOLERANCE = 1e-9;
+    private static final double RADIUS = 25000;     // Metres, a typical airspace arc
+
+    private double[] lat;
+    private double[] lon;
+    private double[] dist;
+    private double[] tt;
+    private double[] out;
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        lat = new double[POINTS];
+        lon = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            lat[i] = 54.5 + random.nextDouble() * 3.5;
+            lon[i] = 8.0 + random.nextDouble() * 7.0;
+        }
+        dist = new double[POINTS];
+        tt = new double[POINTS];
+        out = new double[2 * POINTS];
+
+        verify();
+    }
+
+
+    private void verify() {
+        Geodesy.legs(lat, lon, 1, POINTS, dist, tt);
+        for (int i = 1; i < POINTS; i++) {
+            SphericalReference.Point from = new SphericalReference.Point(lat[i-1], lon[i-1]);
+            SphericalReference.Point to = new SphericalReference.Point(lat[i], lon[i]);
+
+            double distance = SphericalReference.computeDistanceBetween(from, to);
+            check("distance", i, distance, Geodesy.distance(lat[i-1], lon[i-1], lat[i], lon[i]));
+            check("legs distance", i, distance, dist[i]);
+
+            double heading = SphericalReference.computeHeading(from, to);
+            check("heading", i, heading, Geodesy.heading(lat[i-1], lon[i-1], lat[i], lon[i]));
+            check("legs heading", i, heading, tt[i]);
+
+            SphericalReference.Point offset = SphericalReference.computeOffset(from, RADIUS, i);
+            Geodesy.offset(lat[i-1], lon[i-1], RADIUS, i, out, 0);
+            check("offset latitude", i, offset.latitude, out[0]);
+            check("offset longitude", i, offset.longitude, out[1]);
+
+            SphericalReference.Point mid = SphericalReference.interpolate(from, to, 0.5);
+            Geodesy.interpolate(lat[i-1], lon[i-1], lat[i], lon[i], 0.5, out, 0);
+            check("interpolate latitude", i, mid.latitude, out[0]);
+            check("interpolate longitude", i, mid.longitude, out[1]);
+        }
+    }
+
+
+    private static void check(String what, int i, double expected, double actual) {
+        if (Math.abs(expected - actual) > TOLERANCE) {
+            throw new IllegalStateException(what + " differs at " + i + ": " + expected + " vs " + actual);
+        }
+    }
+
+
+    @Benchmark
+    public void distance(Blackhole bh) {
+        for (int i = 1; i < POINTS; i++) {
+            bh.consume(SphericalReference.computeDistanceBetween(
+                    new SphericalReference.Point(lat[i-1], lon[i-1]),
+                    new SphericalReference.Point(lat[i], lon[i])));
+        }
+    }
+
+
+    @Benchmark
+    public void heading(Blackhole bh) {
+        for (int i = 1; i < POINTS; i++) {
+            bh.consume(SphericalReference.computeHeading(
+                    new SphericalReference.Point(lat[i-1], lon[i-1]),
+                    new SphericalReference.Point(lat[i], lon[i])));
+        }
+    }
+
+
+    @Benchmark
+    public void offset(Blackhole bh) {
+        SphericalReference.Point center = new SphericalReference.Point(lat[0], lon[0]);
+        for (int i = 0; i < POINTS; i++) {
+            bh.consume(SphericalReference.computeOffset(center, RADIUS, i * 1.2));
+        }
+    }
+
+
+    @Benchmark
+    public void interpolate(Blackhole bh) {
+        for (int i = 1; i < POINTS; i++) {
+            bh.consume(SphericalReference.interpolate(
+                    new SphericalReference.Point(lat[i-1], lon[i-1]),
+                    new SphericalReference.Point(lat[i], lon[i]), 0.5));
+        }
+    }
+
+
+    @Benchmark
+    public void distanceGeodesy(Blackhole bh) {
+        for (int i = 1; i < POINTS; i++) {
+            bh.consume(Geodesy.distance(lat[i-1], lon[i-1], lat[i], lon[i]));
+        }
+    }
+
+
+    @Benchmark
+    public void headingGeodesy(Blackhole bh) {
+        for (int i = 1; i < POINTS; i++) {
+            bh.consume(Geodesy.heading(lat[i-1], lon[i-1], lat[i], lon[i]));
+        }
+    }
+
+
+    // Distance and heading of all legs together, compare with distance + heading
+    @Benchmark
+    public double[] legsGeodesy() {
+        Geodesy.legs(lat, lon, 1, POINTS, dist, tt);
+        return tt;
+    }
+
+
+    @Benchmark
+    public double[] offsetGeodesy() {
+        for (int i = 0; i < POINTS; i++) {
+            Geodesy.offset(lat[0], lon[0], RADIUS, i * 1.2, out, 2 * i);
+        }
+        return out;
+    }
+
+
+    @Benchmark
+    public double[] interpolateGeodesy() {
+        for (int i = 1; i < POINTS; i++) {
+            Geodesy.interpolate(lat[i-1], lon[i-1], lat[i], lon[i], 0.5, out, 2 * i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Per point setLocation()/getDeclination() round trip against the batch declination() call for
+ * a route sized set of points around Denmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MagneticBatchBenchmark {
+
+    private static final double YEAR = 2017.5;
+
+    @Param({"50", "300", "5000"})
+    int points;
+
+    private double[] lat;
+    private double[] lon;
+    private double[] out;
+    private MagneticModel model;
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        lat = new double[points];
+        lon = new double[points];
+        out = new double[points];
+        for (int i = 0; i < points; i++) {
+            lat[i] = 54.5 + random.nextDouble() * 3.5;
+            lon[i] = 8.0 + random.nextDouble() * 7.0;
+        }
+
+        Calendar date = Calendar.getInstance();
+        date.set(2017, Calendar.JULY, 1);
+        model = new MagneticModel();
+        model.setDecimalYear(date);
+    }
+
+
+    @Benchmark
+    public void perPointSetLocation(Blackhole bh) {
+        for (int i = 0; i < points; i++) {
+            model.setLocation(lat[i], lon[i]);
+            bh.consume(model.getDeclination());
+        }
+    }
+
+
+    @Benchmark
+    public void perPointStateless(Blackhole bh) {
+        for (int i = 0; i < points; i++) {
+            bh.consume(model.declination(lat[i], lon[i], 0, YEAR));
+        }
+    }
+
+
+    @Benchmark
+    public double[] batch() {
+        model.declination(lat, lon, 0, YEAR, out);
+        return out;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of getting a MagneticModel ready and of a single field calculation.
+ *
+ * buildTables parses and normalises the coefficients from scratch, which is what every
+ * MagneticModel constructor used to do. construct is what it costs now that the tables are shared.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MagneticModelBenchmark {
+
+    private MagneticModel model;
+    private int step;
+
+
+    @Setup
+    public void setUp() {
+        Calendar date = Calendar.getInstance();
+        date.set(2017, Calendar.JULY, 1);
+        model = new MagneticModel();
+        model.setDecimalYear(date);
+    }
+
+
+    @Benchmark
+    public WmmCoefficients buildTables() {
+        return WmmCoefficients.buildWmm2015();
+    }
+
+
+    @Benchmark
+    public MagneticModel construct() {
+        return new MagneticModel();
+    }
+
+
+    @Benchmark
+    public double calculate() {
+        // Move a little every call, so nothing can be cached between invocations
+        step = (step + 1) & 1023;
+        model.setLocation(55.0 + step * 0.001, 10.0 + step * 0.001);
+        return model.getDeclination();
+    }
+}
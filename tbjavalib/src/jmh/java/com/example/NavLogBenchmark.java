@@ -0,0 +1,124 @@
+package com.example;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Recalculating the navigation log of a route after a change of wind: the per leg object
+ * calculations MarkerObject used to do, against a single NavLog compute() and accumulate() pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavLogBenchmark {
+
+    private static final double TAS = 95;
+    private static final double ALT = 2500;
+    private static final double WIND_STR = 15;
+
+    @Param({"50", "300", "5000"})
+    int points;
+
+    private Leg[] legs;
+    private NavLog log;
+    private double windDir;
+
+
+    // One way point with the old MarkerObject calculations
+    private static final class Leg {
+        double dist, tt, var;
+        double tas, windDir, windStr;
+        double gs, wca, ias, th, mh, time, eto;
+
+        void calcIAS(double tas, double alt) {
+            ias = tas / (1 + alt / 1000. * 0.02);
+        }
+
+        void calcGS(double tas, double windDirection, double windStrength) {
+            double a = windStrength * Math.sin(Math.toRadians(windDirection - tt)) / tas;
+            double b = windStrength * Math.cos(Math.toRadians(windDirection - tt));
+            gs = Math.sqrt(1 - Math.pow(a, 2)) * (tas - b);
+        }
+
+        void calcWCA(double tas, double windDirection, double windStrength) {
+            this.tas = tas;
+            this.windDir = windDirection;
+            this.windStr = windStrength;
+            wca = Math.toDegrees(Math.atan(windStrength * Math.sin(Math.toRadians(windDirection - tt)) / tas));
+        }
+
+        void calcTH() {
+            th = (tt + wca + 360.) % 360;
+        }
+
+        void calcMH() {
+            mh = th - var;
+        }
+
+        void calcTIME() {
+            time = (dist / gs) * 60.;
+        }
+    }
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        legs = new Leg[points];
+        log = new NavLog();
+        log.setSize(points);
+        for (int i = 0; i < points; i++) {
+            legs[i] = new Leg();
+            if (i == 0) continue;
+            legs[i].dist = 0.5 + random.nextDouble() * 30;
+            legs[i].tt = random.nextDouble() * 360;
+            legs[i].var = 2 + random.nextDouble();
+            log.setLeg(i, legs[i].dist, legs[i].tt, legs[i].var);
+        }
+    }
+
+
+    @Benchmark
+    public double perLeg() {
+        windDir = (windDir + 1) % 360;
+        double eto = 0;
+        for (int i = 1; i < points; i++) {
+            Leg leg = legs[i];
+            leg.calcGS(TAS, windDir, WIND_STR);
+            leg.calcWCA(TAS, windDir, WIND_STR);
+            leg.calcIAS(TAS, ALT);
+            leg.calcTH();
+            leg.calcMH();
+            leg.calcTIME();
+            if (i == 1) leg.time += NavLog.START_TIME;
+            eto += leg.time;
+            leg.eto = eto;
+        }
+        return eto;
+    }
+
+
+    @Benchmark
+    public double navLog() {
+        windDir = (windDir + 1) % 360;
+        log.compute(1, points, TAS, ALT, windDir, WIND_STR);
+        log.accumulate(1);
+        return log.getEto(points - 1);
+    }
+}
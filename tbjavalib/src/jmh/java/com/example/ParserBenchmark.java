@@ -0,0 +1,45 @@
+package com.example;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Altitude and coordinate string parsing, using the formats found in the VFG and OpenAir files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"FL55", "GND", "2300  ft"})
+    String altitude;
+
+    @Param({"570613N 0095944E", "55 35 08.04N 012 07 53.14E", "57:05:34 N 009:50:56 E"})
+    String coordinate;
+
+
+    @Benchmark
+    public int parseAltitude() {
+        return MyClass.parseFrom(altitude);
+    }
+
+
+    @Benchmark
+    public double[] parseCoordinate() {
+        return Coordinates.convertVFG(coordinate);
+    }
+}
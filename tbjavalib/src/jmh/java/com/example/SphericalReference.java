@@ -0,0 +1,140 @@
+package com.example;
+
+
+import static java.lang.Math.asin;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+
+/*
+ * Plain JVM copy of the SphericalUtil calculations from android-maps-utils, which the app uses
+ * for distances and headings. The Android library and its LatLng cannot run outside a device, so
+ * the benchmarks measure this copy instead. It allocates a Point per position, just like LatLng.
+ */
+final class SphericalReference {
+
+    static final double EARTH_RADIUS = 6371009;
+
+
+    private SphericalReference() {
+    }
+
+
+    /*
+     * Immutable position with the same normalisation as LatLng
+     */
+    static final class Point {
+        final double latitude;
+        final double longitude;
+
+        Point(double latitude, double longitude) {
+            if (-180.0 <= longitude && longitude < 180.0) {
+                this.longitude = longitude;
+            } else {
+                this.longitude = ((longitude - 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+            }
+            this.latitude = Math.max(-90.0, Math.min(90.0, latitude));
+        }
+    }
+
+
+    static double computeDistanceBetween(Point from, Point to) {
+        return computeAngleBetween(from, to) * EARTH_RADIUS;
+    }
+
+
+    static double computeHeading(Point from, Point to) {
+        double fromLat = toRadians(from.latitude);
+        double fromLng = toRadians(from.longitude);
+        double toLat = toRadians(to.latitude);
+        double toLng = toRadians(to.longitude);
+        double dLng = toLng - fromLng;
+        double heading = atan2(
+                sin(dLng) * cos(toLat),
+                cos(fromLat) * sin(toLat) - sin(fromLat) * cos(toLat) * cos(dLng));
+        return wrap(toDegrees(heading), -180, 180);
+    }
+
+
+    static Point computeOffset(Point from, double distance, double heading) {
+        distance /= EARTH_RADIUS;
+        heading = toRadians(heading);
+        double fromLat = toRadians(from.latitude);
+        double fromLng = toRadians(from.longitude);
+        double cosDistance = cos(distance);
+        double sinDistance = sin(distance);
+        double sinFromLat = sin(fromLat);
+        double cosFromLat = cos(fromLat);
+        double sinLat = cosDistance * sinFromLat + sinDistance * cosFromLat * cos(heading);
+        double dLng = atan2(
+                sinDistance * cosFromLat * sin(heading),
+                cosDistance - sinFromLat * sinLat);
+        return new Point(toDegrees(asin(sinLat)), toDegrees(fromLng + dLng));
+    }
+
+
+    static Point interpolate(Point from, Point to, double fraction) {
+        double fromLat = toRadians(from.latitude);
+        double fromLng = toRadians(from.longitude);
+        double toLat = toRadians(to.latitude);
+        double toLng = toRadians(to.longitude);
+        double cosFromLat = cos(fromLat);
+        double cosToLat = cos(toLat);
+
+        // Computes Spherical interpolation coefficients.
+        double angle = computeAngleBetween(from, to);
+        double sinAngle = sin(angle);
+        if (sinAngle < 1E-6) {
+            return new Point(
+                    from.latitude + fraction * (to.latitude - from.latitude),
+                    from.longitude + fraction * (to.longitude - from.longitude));
+        }
+        double a = sin((1 - fraction) * angle) / sinAngle;
+        double b = sin(fraction * angle) / sinAngle;
+
+        // Converts from polar to vector and interpolate.
+        double x = a * cosFromLat * cos(fromLng) + b * cosToLat * cos(toLng);
+        double y = a * cosFromLat * sin(fromLng) + b * cosToLat * sin(toLng);
+        double z = a * sin(fromLat) + b * sin(toLat);
+
+        // Converts interpolated vector back to polar.
+        double lat = atan2(z, sqrt(x * x + y * y));
+        double lng = atan2(y, x);
+        return new Point(toDegrees(lat), toDegrees(lng));
+    }
+
+
+    private static double computeAngleBetween(Point from, Point to) {
+        return distanceRadians(toRadians(from.latitude), toRadians(from.longitude),
+                toRadians(to.latitude), toRadians(to.longitude));
+    }
+
+
+    private static double distanceRadians(double lat1, double lng1, double lat2, double lng2) {
+        return arcHav(havDistance(lat1, lat2, lng1 - lng2));
+    }
+
+
+    private static double havDistance(double lat1, double lat2, double dLng) {
+        return hav(lat1 - lat2) + hav(dLng) * cos(lat1) * cos(lat2);
+    }
+
+
+    private static double hav(double x) {
+        double sinHalf = sin(x * 0.5);
+        return sinHalf * sinHalf;
+    }
+
+
+    private static double arcHav(double x) {
+        return 2 * asin(sqrt(x));
+    }
+
+
+    private static double wrap(double n, double min, double max) {
+        return (n >= min && n < max) ? n : (((n - max) % (max - min) + max - min) % (max - min) + min);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example;
+
+
+/*
+ * Spatial index over a fixed set of lat/lon rectangles, the bounding boxes of polygons for example.
+ *
+ * Same layout as GridIndex: every box is listed in each cell of a regular grid that it overlaps,
+ * and the cell lists are stored back to back in a single int array. A box covering several
+ * cells of a query is reported from one of them only - the cell holding the south west corner of
+ * the overlap between box and query - so queries need no scratch state and are thread-safe.
+ *
+ * Boxes are referred to by their position in the arrays the index was built from. The index does
+ * not wrap around the date line.
+ */
+public final class BoxIndex {
+
+    private final double[] mMinLat;
+    private final double[] mMinLon;
+    private final double[] mMaxLat;
+    private final double[] mMaxLon;
+    private final double mOriginLat;
+    private final double mOriginLon;
+    private final double mCellSize;
+    private final int mRows;
+    private final int mCols;
+    private final int[] mCellStart;
+    private final int[] mCellItems;
+
+
+    /**
+     * Build the index.
+     *
+     * @param minLat    South edges, the array is kept, not copied
+     * @param minLon    West edges, kept
+     * @param maxLat    North edges, kept
+     * @param maxLon    East edges, kept
+     * @param cellSize  Cell size in degrees, about the size of a typical box works well
+     */
+    public BoxIndex(double[] minLat, double[] minLon, double[] maxLat, double[] maxLon, double cellSize) {
+        int n = minLat.length;
+        if (minLon.length != n || maxLat.length != n || maxLon.length != n) {
+            throw new IllegalArgumentException("Box edge arrays differ in length");
+        }
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+
+        mMinLat = minLat;
+        mMinLon = minLon;
+        mMaxLat = maxLat;
+        mMaxLon = maxLon;
+        mCellSize = cellSize;
+
+        double south = 90, west = 180, north = -90, east = -180;
+        for (int i = 0; i < n; i++) {
+            south = Math.min(south, minLat[i]);
+            west = Math.min(west, minLon[i]);
+            north = Math.max(north, maxLat[i]);
+            east = Math.max(east, maxLon[i]);
+        }
+        if (n == 0) {
+            south = north = west = east = 0;
+        }
+
+        mOriginLat = south;
+        mOriginLon = west;
+        mRows = (int) ((north - south) / cellSize) + 1;
+        mCols = (int) ((east - west) / cellSize) + 1;
+
+        // Count the boxes in each cell, turn the counts into start positions, then fill in
+        mCellStart = new int[mRows * mCols + 1];
+        for (int i = 0; i < n; i++) {
+            for (int r = row(minLat[i]); r <= row(maxLat[i]); r++) {
+                for (int c = col(minLon[i]); c <= col(maxLon[i]); c++) {
+                    mCellStart[r * mCols + c + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < mRows * mCols; cell++) {
+            mCellStart[cell + 1] += mCellStart[cell];
+        }
+
+        mCellItems = new int[mCellStart[mRows * mCols]];
+        int[] fill = new int[mRows * mCols];
+        for (int i = 0; i < n; i++) {
+            for (int r = row(minLat[i]); r <= row(maxLat[i]); r++) {
+                for (int c = col(minLon[i]); c <= col(maxLon[i]); c++) {
+                    int cell = r * mCols + c;
+                    mCellItems[mCellStart[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(mRows - 1, (int) Math.floor((lat - mOriginLat) / mCellSize)));
+    }
+
+
+    private int col(double lon) {
+        return Math.max(0, Math.min(mCols - 1, (int) Math.floor((lon - mOriginLon) / mCellSize)));
+    }
+
+
+    /**
+     * Find the boxes overlapping a rectangle, each reported once.
+     *
+     * @param minLat    South edge
+     * @param minLon    West edge
+     * @param maxLat    North edge
+     * @param maxLon    East edge
+     * @param out       Receives the box indexes, size() entries is always enough
+     * @return number of indexes written to out
+     */
+    public int query(double minLat, double minLon, double maxLat, double maxLon, int[] out) {
+        if (mMinLat.length == 0 || maxLat < minLat || maxLon < minLon) return 0;
+
+        int count = 0;
+        int r0 = row(minLat), r1 = row(maxLat);
+        int c0 = col(minLon), c1 = col(maxLon);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * mCols + c;
+                for (int k = mCellStart[cell]; k < mCellStart[cell + 1]; k++) {
+                    int i = mCellItems[k];
+                    if (mMaxLat[i] < minLat || mMinLat[i] > maxLat || mMaxLon[i] < minLon || mMinLon[i] > maxLon) {
+                        continue;
+                    }
+
+                    // Report from the cell holding the south west corner of the overlap only
+                    if (row(Math.max(mMinLat[i], minLat)) == r && col(Math.max(mMinLon[i], minLon)) == c) {
+                        out[count++] = i;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+
+    // Boxes containing a point
+    public int query(double lat, double lon, int[] out) {
+        return query(lat, lon, lat, lon, out);
+    }
+
+
+    public int size() {
+        return mMinLat.length;
+    }
+}
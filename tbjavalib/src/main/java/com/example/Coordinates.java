@@ -0,0 +1,81 @@
+package com.example;
+
+/*
+ * Coordinate string parsing for the reference data formats. Kept free of Android types so the
+ * app and the benchmarks run the same code, the app wraps the result in a LatLng.
+ */
+public final class Coordinates {
+
+    private Coordinates() {
+    }
+
+
+    /** Convert location format used in VFG Denmark to latitude and longitude.
+     *  Support formats like these:
+     *  "570613N 0095944E",
+     *  "55 01 59N 009 14 55E",
+     *  "55 45 22.55N 009 15 22.64E" and
+     *  "57 05 34 04N 009 50 56 99E"
+     *
+     *  and the soaringweb.org format "57:05:34 N 009:50:56 E"
+     *
+     * @param input String  In a format from the list above
+     * @return double[]     [0] is the latitude, [1] is the longitude
+     */
+    public static double[] convertVFG(String input) {
+        double nHrs, eHrs;
+        double nMin, eMin;
+        double nSec, eSec;
+
+        String[] parts = input.split(" ");
+
+        if (parts.length==8) {
+            // For example "57 05 34 04N 009 50 56 99E"
+            nHrs=Double.parseDouble(parts[0]);
+            nMin=Double.parseDouble(parts[1]);
+            nSec=Double.parseDouble(parts[2]+"."+removeLastChar(parts[3]));
+            eHrs=Double.parseDouble(parts[4]);
+            eMin=Double.parseDouble(parts[5]);
+            eSec=Double.parseDouble(parts[6]+"."+removeLastChar(parts[7]));
+        }
+        else if (parts.length==2) {
+            // For example "570613N 0095944E"
+            nHrs = Double.parseDouble(parts[0].substring(0,2));
+            nMin = Double.parseDouble(parts[0].substring(2,4));
+            nSec = Double.parseDouble(parts[0].substring(4,6));
+
+            eHrs = Double.parseDouble(parts[1].substring(0,3));
+            eMin = Double.parseDouble(parts[1].substring(3,5));
+            eSec = Double.parseDouble(parts[1].substring(5,7));
+
+        } else if (parts.length == 4) {
+            // soaringweb.org format "57:05:34 N 009:50:56 E"
+            String[] nParts = parts[0].split(":");
+            nHrs = Double.parseDouble(nParts[0]);
+            nMin = Double.parseDouble(nParts[1]);
+            nSec = Double.parseDouble(nParts[2]);
+
+            String[] eParts = parts[2].split(":");
+            eHrs = Double.parseDouble(eParts[0]);
+            eMin = Double.parseDouble(eParts[1]);
+            eSec = Double.parseDouble(eParts[2]);
+
+        }  else {
+            // Length 6, for example "55 58 06.00N 009 59 40.00E" or "55 58 06N 009 59 40E"
+            nHrs=Double.parseDouble(parts[0]);
+            nMin=Double.parseDouble(parts[1]);
+            nSec=Double.parseDouble(removeLastChar(parts[2]));
+
+            eHrs=Double.parseDouble(parts[3]);
+            eMin=Double.parseDouble(parts[4]);
+            eSec=Double.parseDouble(removeLastChar(parts[5]));
+        }
+
+        return new double[]{nHrs+nMin/60+nSec/3600, eHrs+eMin/60+eSec/3600};
+    }
+
+
+    private static String removeLastChar(String str) {
+        return str.substring(0,str.length()-1);
+    }
+}
@@ -0,0 +1,365 @@
+package com.example;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Precomputed declination values on a regular lat/lon grid.
+ *
+ * Declination changes slowly over a region, so instead of running the full degree 12 spherical
+ * harmonic synthesis for every way point, the model is evaluated once per grid node and lookups
+ * are done with bilinear interpolation between the four surrounding nodes.
+ *
+ * A grid can be saved to a small binary file and later memory mapped, so the model does not need
+ * to run at all on subsequent starts. The file layout is little-endian:
+ *
+ *      int     MAGIC
+ *      int     FILE_VERSION
+ *      double  model epoch
+ *      double  decimal year
+ *      double  south edge (deg)
+ *      double  west edge (deg)
+ *      double  cell size (deg)
+ *      int     rows
+ *      int     cols
+ *      float   rows*cols declination values, row by row from south to north
+ *
+ * Instances are immutable and lookups are thread-safe.
+ */
+public final class DeclinationGrid {
+
+    private static final int MAGIC = 0x444d4752;     // "DMGR"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 5 * 8 + 4 + 4;
+
+    private final double mEpoch;
+    private final double mYear;
+    private final double mMinLat;
+    private final double mMinLon;
+    private final double mCellSize;
+    private final int mRows;
+    private final int mCols;
+    private final FloatBuffer mValues;
+
+
+    private DeclinationGrid(double epoch, double year, double minLat, double minLon, double cellSize,
+                            int rows, int cols, FloatBuffer values) {
+        mEpoch = epoch;
+        mYear = year;
+        mMinLat = minLat;
+        mMinLon = minLon;
+        mCellSize = cellSize;
+        mRows = rows;
+        mCols = cols;
+        mValues = values;
+    }
+
+
+    /**
+     * Evaluate the magnetic model on every node of a grid covering the bounding box.
+     *
+     * Rows are handed out to a small thread pool - the shared MagneticModel is stateless for
+     * declination() lookups, so all threads can use the same instance.
+     *
+     * @param model     Magnetic model to sample
+     * @param year      Decimal year, for example 2017.5
+     * @param minLat    South edge of the region
+     * @param minLon    West edge of the region
+     * @param maxLat    North edge of the region
+     * @param maxLon    East edge of the region
+     * @param cellSize  Grid spacing in degrees, for example 0.25
+     * @param threads   Number of worker threads, 1 builds on the calling thread
+     * @return a new grid
+     */
+    public static DeclinationGrid build(final MagneticModel model, final double year,
+                                        final double minLat, final double minLon, double maxLat, double maxLon,
+                                        final double cellSize, int threads) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        if (maxLat <= minLat || maxLon <= minLon) {
+            throw new IllegalArgumentException("Empty region");
+        }
+        if (!model.getCoefficients().isValidFor(year)) {
+            throw new IllegalArgumentException("Year out of range for the magnetic model: " + year);
+        }
+
+        final int rows = (int) Math.ceil((maxLat - minLat) / cellSize) + 1;
+        final int cols = (int) Math.ceil((maxLon - minLon) / cellSize) + 1;
+        final float[] values = new float[rows * cols];
+
+        if (threads <= 1) {
+            for (int r = 0; r < rows; r++) {
+                fillRow(model, year, minLat, minLon, cellSize, cols, r, values);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> jobs = new ArrayList<>(rows);
+                for (int r = 0; r < rows; r++) {
+                    final int row = r;
+                    jobs.add(pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            fillRow(model, year, minLat, minLon, cellSize, cols, row, values);
+                        }
+                    }));
+                }
+                for (Future<?> job : jobs) {
+                    job.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Declination grid build interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Declination grid build failed", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        return new DeclinationGrid(model.getCoefficients().getEpoch(), year, minLat, minLon, cellSize,
+                rows, cols, FloatBuffer.wrap(values));
+    }
+
+
+    private static void fillRow(MagneticModel model, double year, double minLat, double minLon,
+                                double cellSize, int cols, int row, float[] values) {
+        double[] lats = new double[cols];
+        double[] lons = new double[cols];
+        double[] result = new double[cols];
+        for (int c = 0; c < cols; c++) {
+            lats[c] = minLat + row * cellSize;
+            lons[c] = minLon + c * cellSize;
+        }
+
+        model.declination(lats, lons, 0, year, result);
+
+        for (int c = 0; c < cols; c++) {
+            values[row * cols + c] = (float) result[c];
+        }
+    }
+
+
+    /**
+     * Memory map a grid saved earlier with save().
+     *
+     * @param file  Grid file
+     * @return the grid, backed directly by the mapped file
+     * @throws IOException if the file cannot be read or is not a declination grid
+     */
+    public static DeclinationGrid load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FILE_VERSION) {
+                throw new IOException("Not a declination grid file: " + file);
+            }
+
+            double epoch = buffer.getDouble();
+            double year = buffer.getDouble();
+            double minLat = buffer.getDouble();
+            double minLon = buffer.getDouble();
+            double cellSize = buffer.getDouble();
+            int rows = buffer.getInt();
+            int cols = buffer.getInt();
+
+            if (rows < 2 || cols < 2 || buffer.remaining() != rows * cols * 4) {
+                throw new IOException("Truncated declination grid file: " + file);
+            }
+
+            // The mapping stays valid after the channel is closed
+            return new DeclinationGrid(epoch, year, minLat, minLon, cellSize, rows, cols, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+        } finally {
+            raf.close();
+        }
+    }
+
+
+    /**
+     * Write the grid to a file. The data is written to a temporary file first and then renamed,
+     * so a reader never sees a half written grid.
+     *
+     * @param file  Destination
+     * @throws IOException on write errors
+     */
+    public void save(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mRows * mCols * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FILE_VERSION);
+        buffer.putDouble(mEpoch);
+        buffer.putDouble(mYear);
+        buffer.putDouble(mMinLat);
+        buffer.putDouble(mMinLon);
+        buffer.putDouble(mCellSize);
+        buffer.putInt(mRows);
+        buffer.putInt(mCols);
+        for (int i = 0; i < mRows * mCols; i++) {
+            buffer.putFloat(mValues.get(i));
+        }
+        buffer.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            // renameTo will not replace an existing file on all platforms
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Could not write declination grid: " + file);
+            }
+        }
+    }
+
+
+    /**
+     * Load the cached grid for this model epoch and year from the directory, or build and save a
+     * new one if there is no usable file.
+     *
+     * The year is rounded down to a tenth, which is well below what the model can resolve, so a
+     * grid file is reused for a little over a month before a fresh one is built.
+     *
+     * @return a grid covering at least the requested region
+     */
+    public static DeclinationGrid loadOrBuild(File dir, MagneticModel model, double year,
+                                              double minLat, double minLon, double maxLat, double maxLon,
+                                              double cellSize, int threads) throws IOException {
+        double gridYear = Math.floor(year * 10) / 10;
+        File file = new File(dir, fileName(model.getCoefficients().getEpoch(), gridYear));
+
+        if (file.exists()) {
+            try {
+                DeclinationGrid grid = load(file);
+                if (grid.mCellSize == cellSize && grid.contains(minLat, minLon) && grid.contains(maxLat, maxLon)) {
+                    return grid;
+                }
+            } catch (IOException e) {
+                // Corrupt or old file - just build a new one below
+            }
+        }
+
+        DeclinationGrid grid = build(model, gridYear, minLat, minLon, maxLat, maxLon, cellSize, threads);
+        grid.save(file);
+        return grid;
+    }
+
+
+    /*
+     * Grid files are keyed by model epoch and year, for example "declination_2015.0_2017.3.grid"
+     */
+    public static String fileName(double epoch, double year) {
+        return String.format(Locale.US, "declination_%.1f_%.1f.grid", epoch, year);
+    }
+
+
+    /*
+     * True if the position is inside the area covered by the grid
+     */
+    public boolean contains(double lat, double lon) {
+        return lat >= mMinLat && lat <= mMinLat + (mRows - 1) * mCellSize &&
+                lon >= mMinLon && lon <= mMinLon + (mCols - 1) * mCellSize;
+    }
+
+
+    /**
+     * Bilinear interpolation between the four grid nodes surrounding the position.
+     *
+     * @param lat   Latitude in decimal degrees
+     * @param lon   Longitude in decimal degrees
+     * @return declination in degrees, positive east, or NaN if the position is outside the grid
+     */
+    public double declination(double lat, double lon) {
+        if (!contains(lat, lon)) return Double.NaN;
+
+        double y = (lat - mMinLat) / mCellSize;
+        double x = (lon - mMinLon) / mCellSize;
+        int r = Math.min((int) y, mRows - 2);
+        int c = Math.min((int) x, mCols - 2);
+        double fy = y - r;
+        double fx = x - c;
+
+        int i = r * mCols + c;
+        double v00 = mValues.get(i);
+        double v01 = mValues.get(i + 1);
+        double v10 = mValues.get(i + mCols);
+        double v11 = mValues.get(i + mCols + 1);
+
+        return (v00 * (1 - fx) + v01 * fx) * (1 - fy) + (v10 * (1 - fx) + v11 * fx) * fy;
+    }
+
+
+    /**
+     * Compare interpolated values against the exact model.
+     *
+     * Every cell is sampled at a number of random positions and the interpolated declination is
+     * compared with model.declination() for the same position and year.
+     *
+     * @param model             The model the grid was built from
+     * @param samplesPerCell    Number of random samples in each cell
+     * @return double[] with the maximum absolute error [0] and the RMS error [1] in degrees
+     */
+    public double[] errorReport(MagneticModel model, int samplesPerCell) {
+        Random random = new Random(42);
+        double max = 0;
+        double sumSq = 0;
+        long count = 0;
+
+        for (int r = 0; r < mRows - 1; r++) {
+            for (int c = 0; c < mCols - 1; c++) {
+                for (int s = 0; s < samplesPerCell; s++) {
+                    double lat = mMinLat + (r + random.nextDouble()) * mCellSize;
+                    double lon = mMinLon + (c + random.nextDouble()) * mCellSize;
+                    double err = Math.abs(declination(lat, lon) - model.declination(lat, lon, 0, mYear));
+                    max = Math.max(max, err);
+                    sumSq += err * err;
+                    count++;
+                }
+            }
+        }
+
+        return new double[]{max, Math.sqrt(sumSq / count)};
+    }
+
+
+    /*
+     * Raw node value, row 0 is the south edge and column 0 the west edge
+     */
+    public float value(int row, int col) {
+        return mValues.get(row * mCols + col);
+    }
+
+
+    public double getEpoch() { return mEpoch; }
+    public double getYear() { return mYear; }
+    public double getMinLat() { return mMinLat; }
+    public double getMinLon() { return mMinLon; }
+    public double getCellSize() { return mCellSize; }
+    public int getRows() { return mRows; }
+    public int getCols() { return mCols; }
+}
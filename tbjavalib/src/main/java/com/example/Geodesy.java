@@ -0,0 +1,220 @@
+package com.example;
+
+
+import static java.lang.Math.asin;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+
+/*
+ * Spherical geodesy on plain doubles: distance, heading, offset, interpolation and cross track
+ * distance, giving the same results as SphericalUtil from android-maps-utils.
+ *
+ * Positions go in as latitude and longitude in degrees and come out in a caller owned array, at
+ * an offset, so nothing is allocated per call. Results are normalised the way LatLng does it,
+ * latitude clamped to -90 .. 90 and longitude wrapped to -180 .. 180.
+ *
+ * Where the same positions are used over and over, toVector() turns them into unit vectors in
+ * earth centred coordinates once, after which angle() between two of them needs no trigonometry
+ * but a single atan2.
+ *
+ * Distances are in metres, headings in degrees clockwise from true north, -180 .. 180.
+ */
+public final class Geodesy {
+
+    public static final double EARTH_RADIUS = 6371009;     // Metres, same as SphericalUtil
+
+
+    private Geodesy() {
+    }
+
+
+    // Great circle distance in metres
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        return angle(lat1, lon1, lat2, lon2) * EARTH_RADIUS;
+    }
+
+
+    // Great circle angle in radians
+    public static double angle(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = toRadians(lat1);
+        double phi2 = toRadians(lat2);
+        double hav = hav(phi1 - phi2) + hav(toRadians(lon1) - toRadians(lon2)) * cos(phi1) * cos(phi2);
+        return 2 * asin(sqrt(hav));
+    }
+
+
+    // Initial heading of the great circle from the first to the second position
+    public static double heading(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = toRadians(lat1);
+        double phi2 = toRadians(lat2);
+        double dLon = toRadians(lon2) - toRadians(lon1);
+        double cosPhi2 = cos(phi2);
+        double heading = atan2(
+                sin(dLon) * cosPhi2,
+                cos(phi1) * sin(phi2) - sin(phi1) * cosPhi2 * cos(dLon));
+        return wrap(toDegrees(heading));
+    }
+
+
+    /**
+     * Distance and heading of every leg of a route in one pass. The sine and cosine of each
+     * latitude are worked out once and shared by the two legs meeting at the position.
+     *
+     * @param lat       Latitudes of the route
+     * @param lon       Longitudes of the route
+     * @param from      First leg, 1 or higher. Leg i runs from position i-1 to position i
+     * @param to        One past the last leg
+     * @param dist      Distance of leg i is written to dist[i]
+     * @param heading   Initial heading of leg i is written to heading[i]
+     */
+    public static void legs(double[] lat, double[] lon, int from, int to, double[] dist, double[] heading) {
+        from = Math.max(1, from);
+        if (from >= to) return;
+
+        double phi1 = toRadians(lat[from - 1]);
+        double sin1 = sin(phi1);
+        double cos1 = cos(phi1);
+        for (int i = from; i < to; i++) {
+            double phi2 = toRadians(lat[i]);
+            double sin2 = sin(phi2);
+            double cos2 = cos(phi2);
+            double dLon = toRadians(lon[i]) - toRadians(lon[i - 1]);
+
+            double hav = hav(phi1 - phi2) + hav(dLon) * cos1 * cos2;
+            dist[i] = 2 * asin(sqrt(hav)) * EARTH_RADIUS;
+            heading[i] = wrap(toDegrees(atan2(sin(dLon) * cos2, cos1 * sin2 - sin1 * cos2 * cos(dLon))));
+
+            phi1 = phi2;
+            sin1 = sin2;
+            cos1 = cos2;
+        }
+    }
+
+
+    /**
+     * The position reached going a distance along a heading.
+     *
+     * @param lat       Start latitude
+     * @param lon       Start longitude
+     * @param distance  Metres
+     * @param heading   Degrees clockwise from true north
+     * @param out       Latitude goes to out[at], longitude to out[at+1]
+     * @param at        Offset in out
+     */
+    public static void offset(double lat, double lon, double distance, double heading, double[] out, int at) {
+        distance /= EARTH_RADIUS;
+        heading = toRadians(heading);
+        double phi = toRadians(lat);
+        double cosDistance = cos(distance);
+        double sinDistance = sin(distance);
+        double sinPhi = sin(phi);
+        double cosPhi = cos(phi);
+        double sinLat = cosDistance * sinPhi + sinDistance * cosPhi * cos(heading);
+        double dLon = atan2(sinDistance * cosPhi * sin(heading), cosDistance - sinPhi * sinLat);
+        put(toDegrees(asin(sinLat)), toDegrees(toRadians(lon) + dLon), out, at);
+    }
+
+
+    /**
+     * The position a fraction of the way along the great circle between two positions.
+     *
+     * @param fraction  0 is the first position, 1 the second
+     * @param out       Latitude goes to out[at], longitude to out[at+1]
+     * @param at        Offset in out
+     */
+    public static void interpolate(double lat1, double lon1, double lat2, double lon2, double fraction,
+                                   double[] out, int at) {
+        double angle = angle(lat1, lon1, lat2, lon2);
+        double sinAngle = sin(angle);
+        if (sinAngle < 1E-6) {
+            put(lat1 + fraction * (lat2 - lat1), lon1 + fraction * (lon2 - lon1), out, at);
+            return;
+        }
+        double a = sin((1 - fraction) * angle) / sinAngle;
+        double b = sin(fraction * angle) / sinAngle;
+
+        double phi1 = toRadians(lat1);
+        double lambda1 = toRadians(lon1);
+        double phi2 = toRadians(lat2);
+        double lambda2 = toRadians(lon2);
+        double cosPhi1 = cos(phi1);
+        double cosPhi2 = cos(phi2);
+
+        double x = a * cosPhi1 * cos(lambda1) + b * cosPhi2 * cos(lambda2);
+        double y = a * cosPhi1 * sin(lambda1) + b * cosPhi2 * sin(lambda2);
+        double z = a * sin(phi1) + b * sin(phi2);
+        put(toDegrees(atan2(z, sqrt(x * x + y * y))), toDegrees(atan2(y, x)), out, at);
+    }
+
+
+    /**
+     * Distance from a position to the great circle through two others.
+     *
+     * @param lat   Latitude of the position
+     * @param lon   Longitude of the position
+     * @return metres, positive to the right of the path from the first to the second position
+     */
+    public static double crossTrack(double lat, double lon, double lat1, double lon1, double lat2, double lon2) {
+        double delta = angle(lat1, lon1, lat, lon);
+        double theta = toRadians(heading(lat1, lon1, lat, lon) - heading(lat1, lon1, lat2, lon2));
+        return asin(sin(delta) * sin(theta)) * EARTH_RADIUS;
+    }
+
+
+    /**
+     * Unit vector of a position in earth centred coordinates.
+     *
+     * @param out   x goes to out[at], y to out[at+1] and z to out[at+2]
+     * @param at    Offset in out
+     */
+    public static void toVector(double lat, double lon, double[] out, int at) {
+        double phi = toRadians(lat);
+        double lambda = toRadians(lon);
+        double cosPhi = cos(phi);
+        out[at] = cosPhi * cos(lambda);
+        out[at + 1] = cosPhi * sin(lambda);
+        out[at + 2] = sin(phi);
+    }
+
+
+    /**
+     * Great circle angle in radians between two unit vectors from toVector(). The atan2 form
+     * stays accurate for both very short and nearly antipodal distances.
+     *
+     * @param v     Vectors
+     * @param a     Offset of the first vector in v
+     * @param b     Offset of the second vector in v
+     */
+    public static double angle(double[] v, int a, int b) {
+        double x1 = v[a], y1 = v[a + 1], z1 = v[a + 2];
+        double x2 = v[b], y2 = v[b + 1], z2 = v[b + 2];
+        double cx = y1 * z2 - z1 * y2;
+        double cy = z1 * x2 - x1 * z2;
+        double cz = x1 * y2 - y1 * x2;
+        return atan2(sqrt(cx * cx + cy * cy + cz * cz), x1 * x2 + y1 * y2 + z1 * z2);
+    }
+
+
+    private static void put(double lat, double lon, double[] out, int at) {
+        if (lon < -180.0 || lon >= 180.0) {
+            lon = ((lon - 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+        }
+        out[at] = Math.max(-90.0, Math.min(90.0, lat));
+        out[at + 1] = lon;
+    }
+
+
+    private static double hav(double x) {
+        double sinHalf = sin(x * 0.5);
+        return sinHalf * sinHalf;
+    }
+
+
+    private static double wrap(double degrees) {
+        return (degrees >= -180 && degrees < 180) ? degrees : ((degrees - 180) % 360 + 360) % 360 - 180;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example;
+
+
+/*
+ * Grid based clustering of the points in a GridIndex.
+ *
+ * The points inside a rectangle are aggregated into square cells of a fixed size in degrees. The
+ * cells are anchored at 0,0 rather than at the rectangle, so a point stays in the same cell when
+ * the rectangle moves and the clusters do not jump around while the map is panned.
+ *
+ * For every non empty cell the result holds the number of points, their mean position, the
+ * largest of a per point value (for example obstacle height) and the first point in the cell,
+ * which is the point itself for cells holding a single point.
+ *
+ * Pure computation without shared state, meant to run on a background thread.
+ */
+public final class GridClusters {
+
+    // Value of getMaxValue() for clusters where no point had a value
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    private final int mSize;
+    private final long[] mCell;
+    private final int[] mCount;
+    private final int[] mMaxValue;
+    private final int[] mItem;
+    private final double[] mLat;
+    private final double[] mLon;
+
+
+    private GridClusters(int size, long[] cell, int[] count, int[] maxValue, int[] item, double[] lat, double[] lon) {
+        mSize = size;
+        mCell = cell;
+        mCount = count;
+        mMaxValue = maxValue;
+        mItem = item;
+        mLat = lat;
+        mLon = lon;
+    }
+
+
+    /**
+     * Aggregate the points of an index inside a rectangle.
+     *
+     * @param index     Points to cluster
+     * @param include   Points to consider, null for all of them
+     * @param value     Per point value to take the maximum of, null if not used
+     * @param minLat    South edge
+     * @param minLon    West edge
+     * @param maxLat    North edge
+     * @param maxLon    East edge
+     * @param cellSize  Cluster cell size in degrees
+     * @return clusters in no particular order
+     */
+    public static GridClusters aggregate(GridIndex index, boolean[] include, int[] value,
+                                         double minLat, double minLon, double maxLat, double maxLon,
+                                         double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+
+        int[] found = new int[index.size()];
+        int n = index.query(minLat, minLon, maxLat, maxLon, found);
+
+        // Open addressing table from cell number to cluster, at most half full
+        int capacity = Integer.highestOneBit(Math.max(n, 1)) * 4;
+        int[] slots = new int[capacity];
+        long[] cells = new long[n];
+        int[] count = new int[n];
+        int[] maxValue = new int[n];
+        int[] item = new int[n];
+        double[] sumLat = new double[n];
+        double[] sumLon = new double[n];
+        int size = 0;
+
+        for (int k = 0; k < n; k++) {
+            int i = found[k];
+            if (include != null && !include[i]) continue;
+
+            double lat = index.getLat(i);
+            double lon = index.getLon(i);
+            long row = (long) Math.floor(lat / cellSize);
+            long col = (long) Math.floor(lon / cellSize);
+            long cell = (row << 32) ^ (col & 0xffffffffL);
+
+            int h = (int) (cell ^ (cell >>> 32)) * 0x9e3779b9;
+            int slot = (h ^ (h >>> 16)) & (capacity - 1);
+            int c;
+            while (true) {
+                c = slots[slot] - 1;
+                if (c < 0) {
+                    c = size++;
+                    slots[slot] = c + 1;
+                    cells[c] = cell;
+                    item[c] = i;
+                    maxValue[c] = NO_VALUE;
+                    break;
+                }
+                if (cells[c] == cell) break;
+                slot = (slot + 1) & (capacity - 1);
+            }
+
+            count[c]++;
+            sumLat[c] += lat;
+            sumLon[c] += lon;
+            if (value != null && value[i] > maxValue[c]) {
+                maxValue[c] = value[i];
+            }
+        }
+
+        for (int c = 0; c < size; c++) {
+            sumLat[c] /= count[c];
+            sumLon[c] /= count[c];
+        }
+
+        return new GridClusters(size, cells, count, maxValue, item, sumLat, sumLon);
+    }
+
+
+    public int size() {
+        return mSize;
+    }
+
+    // Cell number, the same for the same cell across calls with equal cell size
+    public long getCell(int c) { return mCell[c]; }
+    public int getCount(int c) { return mCount[c]; }
+    public int getMaxValue(int c) { return mMaxValue[c]; }
+    // First point found in the cell - the only one when getCount() is 1
+    public int getItem(int c) { return mItem[c]; }
+    public double getLat(int c) { return mLat[c]; }
+    public double getLon(int c) { return mLon[c]; }
+}
@@ -0,0 +1,132 @@
+package com.example;
+
+
+/*
+ * Spatial index over a fixed set of points on a regular lat/lon grid.
+ *
+ * The points are sorted into buckets once, and the buckets are stored back to back in a single int
+ * array - cellStart[c] .. cellStart[c+1] are the positions in cellItems holding the points in
+ * cell c. A rectangle query only visits the buckets overlapping the rectangle, so the cost
+ * depends on what is inside it and not on the total number of points.
+ *
+ * Points are referred to by their position in the arrays the index was built from. The index
+ * does not wrap around the date line, which is fine for the regional data sets it is used with.
+ *
+ * Instances are immutable and queries are thread-safe.
+ */
+public final class GridIndex {
+
+    private final double[] mLat;
+    private final double[] mLon;
+    private final double mMinLat;
+    private final double mMinLon;
+    private final double mCellSize;
+    private final int mRows;
+    private final int mCols;
+    private final int[] mCellStart;
+    private final int[] mCellItems;
+
+
+    /**
+     * Build the index.
+     *
+     * @param lat       Latitudes, the array is kept, not copied
+     * @param lon       Longitudes, the array is kept, not copied
+     * @param cellSize  Bucket size in degrees, roughly the size of a typical query works well
+     */
+    public GridIndex(double[] lat, double[] lon, double cellSize) {
+        if (lat.length != lon.length) {
+            throw new IllegalArgumentException("Latitude and longitude arrays differ in length");
+        }
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+
+        mLat = lat;
+        mLon = lon;
+        mCellSize = cellSize;
+
+        double minLat = 90, minLon = 180, maxLat = -90, maxLon = -180;
+        for (int i = 0; i < lat.length; i++) {
+            minLat = Math.min(minLat, lat[i]);
+            maxLat = Math.max(maxLat, lat[i]);
+            minLon = Math.min(minLon, lon[i]);
+            maxLon = Math.max(maxLon, lon[i]);
+        }
+        if (lat.length == 0) {
+            minLat = maxLat = minLon = maxLon = 0;
+        }
+
+        mMinLat = minLat;
+        mMinLon = minLon;
+        mRows = (int) ((maxLat - minLat) / cellSize) + 1;
+        mCols = (int) ((maxLon - minLon) / cellSize) + 1;
+
+        // Count the points in each cell, then turn the counts into start positions
+        mCellStart = new int[mRows * mCols + 1];
+        int[] cellOf = new int[lat.length];
+        for (int i = 0; i < lat.length; i++) {
+            cellOf[i] = row(lat[i]) * mCols + col(lon[i]);
+            mCellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < mRows * mCols; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+
+        mCellItems = new int[lat.length];
+        int[] fill = new int[mRows * mCols];
+        for (int i = 0; i < lat.length; i++) {
+            int c = cellOf[i];
+            mCellItems[mCellStart[c] + fill[c]++] = i;
+        }
+    }
+
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(mRows - 1, (int) Math.floor((lat - mMinLat) / mCellSize)));
+    }
+
+
+    private int col(double lon) {
+        return Math.max(0, Math.min(mCols - 1, (int) Math.floor((lon - mMinLon) / mCellSize)));
+    }
+
+
+    /**
+     * Find the points inside a rectangle.
+     *
+     * @param minLat    South edge
+     * @param minLon    West edge
+     * @param maxLat    North edge
+     * @param maxLon    East edge
+     * @param out       Receives the point indexes, size() entries is always enough
+     * @return number of indexes written to out
+     */
+    public int query(double minLat, double minLon, double maxLat, double maxLon, int[] out) {
+        if (mCellItems.length == 0 || maxLat < minLat || maxLon < minLon) return 0;
+
+        int count = 0;
+        int r0 = row(minLat), r1 = row(maxLat);
+        int c0 = col(minLon), c1 = col(maxLon);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * mCols + c;
+                for (int k = mCellStart[cell]; k < mCellStart[cell + 1]; k++) {
+                    int i = mCellItems[k];
+                    if (mLat[i] >= minLat && mLat[i] <= maxLat && mLon[i] >= minLon && mLon[i] <= maxLon) {
+                        out[count++] = i;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+
+    public int size() {
+        return mCellItems.length;
+    }
+
+    public double getLat(int i) { return mLat[i]; }
+    public double getLon(int i) { return mLon[i]; }
+}
@@ -0,0 +1,295 @@
+package com.example;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Isogonic lines - lines of equal magnetic declination - for a map region.
+ *
+ * The magnetic model is sampled on a DeclinationGrid, which is built in parallel, and the contour
+ * lines are then traced through the grid cells with marching squares. Each crossing point sits on
+ * a grid edge, so segments from neighbouring cells are joined into polylines by looking up the
+ * shared edge rather than by comparing coordinates.
+ *
+ * Results are cached per region, model epoch and year, so panning back and forth over the same
+ * area does not run the model again.
+ */
+public final class IsogonicLines {
+
+    private static final int CACHE_SIZE = 8;
+
+    private static final Map<String, List<Line>> sCache = new LinkedHashMap<String, List<Line>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Line>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+
+    private IsogonicLines() {
+    }
+
+
+    /*
+     * One contour line. Closed lines repeat the first point at the end.
+     */
+    public static final class Line {
+        private final double mDeclination;
+        private final double[] mLat;
+        private final double[] mLon;
+
+        Line(double declination, double[] lat, double[] lon) {
+            mDeclination = declination;
+            mLat = lat;
+            mLon = lon;
+        }
+
+        public double getDeclination() { return mDeclination; }
+        public int size() { return mLat.length; }
+        public double getLat(int i) { return mLat[i]; }
+        public double getLon(int i) { return mLon[i]; }
+    }
+
+
+    /**
+     * Isogonic lines covering at least the requested region.
+     *
+     * The region is widened to whole grid cells, so small camera moves produce the same cache key.
+     *
+     * @param model     Magnetic model to sample
+     * @param year      Decimal year, rounded down to a tenth like DeclinationGrid.loadOrBuild()
+     * @param minLat    South edge of the region
+     * @param minLon    West edge of the region
+     * @param maxLat    North edge of the region
+     * @param maxLon    East edge of the region
+     * @param cellSize  Grid spacing in degrees
+     * @param step      Declination between lines in degrees, for example 1.0
+     * @param threads   Number of worker threads for the grid build
+     * @return unmodifiable list of lines, empty if the model is not valid for the year
+     */
+    public static List<Line> forRegion(MagneticModel model, double year,
+                                       double minLat, double minLon, double maxLat, double maxLon,
+                                       double cellSize, double step, int threads) {
+        double gridYear = Math.floor(year * 10) / 10;
+        if (!model.getCoefficients().isValidFor(gridYear)) {
+            return Collections.emptyList();
+        }
+
+        double south = Math.max(-89, Math.floor(minLat / cellSize) * cellSize);
+        double north = Math.min(89, Math.ceil(maxLat / cellSize) * cellSize);
+        double west = Math.floor(minLon / cellSize) * cellSize;
+        double east = Math.ceil(maxLon / cellSize) * cellSize;
+        if (north <= south) north = south + cellSize;
+        if (east <= west) east = west + cellSize;
+
+        String key = String.format(Locale.US, "%.1f_%.1f_%.4f_%.4f_%.4f_%.4f_%.4f_%.4f",
+                model.getCoefficients().getEpoch(), gridYear, south, west, north, east, cellSize, step);
+
+        synchronized (sCache) {
+            List<Line> lines = sCache.get(key);
+            if (lines != null) return lines;
+        }
+
+        DeclinationGrid grid = DeclinationGrid.build(model, gridYear, south, west, north, east, cellSize, threads);
+        List<Line> lines = Collections.unmodifiableList(trace(grid, step));
+
+        synchronized (sCache) {
+            sCache.put(key, lines);
+        }
+        return lines;
+    }
+
+
+    /**
+     * Trace contour lines through a declination grid with marching squares.
+     *
+     * @param grid  Grid to contour
+     * @param step  Declination between lines in degrees, lines are drawn at whole multiples of it
+     * @return the lines, ordered by declination
+     */
+    public static List<Line> trace(DeclinationGrid grid, double step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Step must be positive");
+        }
+
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+
+        float[] v = new float[rows * cols];
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                float value = grid.value(r, c);
+                v[r * cols + c] = value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        // Two segments per cell at most, and each edge is shared by at most two segments
+        int maxSegments = 2 * (rows - 1) * (cols - 1);
+        int[] segA = new int[maxSegments];
+        int[] segB = new int[maxSegments];
+        boolean[] used = new boolean[maxSegments];
+        int[] edgeSegs = new int[4 * rows * cols];
+
+        List<Line> lines = new ArrayList<>();
+        for (double level = Math.ceil(min / step) * step; level <= max; level += step) {
+            int count = 0;
+            for (int r = 0; r < rows - 1; r++) {
+                for (int c = 0; c < cols - 1; c++) {
+                    count = addCellSegments(v, cols, r, c, level, segA, segB, count);
+                }
+            }
+            if (count == 0) continue;
+
+            Arrays.fill(edgeSegs, -1);
+            Arrays.fill(used, 0, count, false);
+            for (int s = 0; s < count; s++) {
+                link(edgeSegs, segA[s], s);
+                link(edgeSegs, segB[s], s);
+            }
+
+            // Open lines start at the grid border, where an edge only has one segment
+            for (int s = 0; s < count; s++) {
+                if (used[s]) continue;
+                if (edgeSegs[2 * segA[s] + 1] == -1) {
+                    lines.add(follow(grid, v, level, segA[s], s, segA, segB, used, edgeSegs));
+                } else if (edgeSegs[2 * segB[s] + 1] == -1) {
+                    lines.add(follow(grid, v, level, segB[s], s, segA, segB, used, edgeSegs));
+                }
+            }
+
+            // Whatever is left forms closed loops
+            for (int s = 0; s < count; s++) {
+                if (!used[s]) {
+                    lines.add(follow(grid, v, level, segA[s], s, segA, segB, used, edgeSegs));
+                }
+            }
+        }
+        return lines;
+    }
+
+
+    /*
+     * Edge ids: 2*(r*cols+c) is the edge from node (r,c) to (r,c+1), the id + 1 is the edge from
+     * node (r,c) to (r+1,c).
+     *
+     * Declination wraps from +180 to -180 near the magnetic poles. A cell straddling the wrap has
+     * corners about 360 degrees apart and would cross every level in between, so cells spanning
+     * more than 180 degrees get no segments and lines end at the edge of such a cell.
+     */
+    private static int addCellSegments(float[] v, int cols, int r, int c, double level,
+                                       int[] segA, int[] segB, int count) {
+        int i = r * cols + c;
+        float a = v[i];                 // south west
+        float b = v[i + 1];             // south east
+        float d = v[i + cols + 1];      // north east
+        float e = v[i + cols];          // north west
+
+        if (Math.max(Math.max(a, b), Math.max(d, e)) - Math.min(Math.min(a, b), Math.min(d, e)) > 180) {
+            return count;
+        }
+
+        int index = (a >= level ? 1 : 0) | (b >= level ? 2 : 0) | (d >= level ? 4 : 0) | (e >= level ? 8 : 0);
+        if (index == 0 || index == 15) return count;
+
+        int south = 2 * i;
+        int west = 2 * i + 1;
+        int north = 2 * (i + cols);
+        int east = 2 * (i + 1) + 1;
+        boolean centerHigh = (a + b + d + e) / 4 >= level;
+
+        switch (index) {
+            case 1:  case 14: segA[count] = west;  segB[count++] = south; break;
+            case 2:  case 13: segA[count] = south; segB[count++] = east;  break;
+            case 3:  case 12: segA[count] = west;  segB[count++] = east;  break;
+            case 4:  case 11: segA[count] = east;  segB[count++] = north; break;
+            case 6:  case 9:  segA[count] = south; segB[count++] = north; break;
+            case 7:  case 8:  segA[count] = west;  segB[count++] = north; break;
+            case 5:
+                // Saddle with the south west and north east corners high
+                if (centerHigh) {
+                    segA[count] = south; segB[count++] = east;
+                    segA[count] = north; segB[count++] = west;
+                } else {
+                    segA[count] = west;  segB[count++] = south;
+                    segA[count] = east;  segB[count++] = north;
+                }
+                break;
+            case 10:
+                // Saddle with the south east and north west corners high
+                if (centerHigh) {
+                    segA[count] = west;  segB[count++] = south;
+                    segA[count] = east;  segB[count++] = north;
+                } else {
+                    segA[count] = south; segB[count++] = east;
+                    segA[count] = north; segB[count++] = west;
+                }
+                break;
+        }
+        return count;
+    }
+
+
+    private static void link(int[] edgeSegs, int edge, int seg) {
+        if (edgeSegs[2 * edge] == -1) {
+            edgeSegs[2 * edge] = seg;
+        } else {
+            edgeSegs[2 * edge + 1] = seg;
+        }
+    }
+
+
+    private static Line follow(DeclinationGrid grid, float[] v, double level, int startEdge, int startSeg,
+                               int[] segA, int[] segB, boolean[] used, int[] edgeSegs) {
+        List<Integer> edges = new ArrayList<>();
+        edges.add(startEdge);
+
+        int edge = startEdge;
+        int seg = startSeg;
+        while (seg != -1) {
+            used[seg] = true;
+            edge = segA[seg] == edge ? segB[seg] : segA[seg];
+            edges.add(edge);
+
+            int first = edgeSegs[2 * edge];
+            int second = edgeSegs[2 * edge + 1];
+            if (first != -1 && !used[first]) {
+                seg = first;
+            } else if (second != -1 && !used[second]) {
+                seg = second;
+            } else {
+                seg = -1;
+            }
+        }
+
+        int cols = grid.getCols();
+        double[] lat = new double[edges.size()];
+        double[] lon = new double[edges.size()];
+        for (int p = 0; p < edges.size(); p++) {
+            int id = edges.get(p);
+            int node = id / 2;
+            int r = node / cols;
+            int c = node % cols;
+            int other = (id % 2 == 0) ? node + 1 : node + cols;
+            double t = (level - v[node]) / (v[other] - v[node]);
+
+            if (id % 2 == 0) {
+                lat[p] = grid.getMinLat() + r * grid.getCellSize();
+                lon[p] = grid.getMinLon() + (c + t) * grid.getCellSize();
+            } else {
+                lat[p] = grid.getMinLat() + (r + t) * grid.getCellSize();
+                lon[p] = grid.getMinLon() + c * grid.getCellSize();
+            }
+        }
+        return new Line(level, lat, lon);
+    }
+}
@@ -3,9 +3,6 @@ package com.example;
 
 import java.util.Calendar;
 
-import static java.lang.Float.parseFloat;
-import static java.lang.Integer.parseInt;
-
 public class MagneticModel {
     /*
      * These parameters are required input for the model to work
@@ -20,8 +17,9 @@ public class MagneticModel {
      *                  105 degrees 15 minutes west = 105 + (15/60) = -105.25 degrees
      *
      * Year             Year or decimal fraction of year for which to compute the declination.
-     *                  This must be within the range of the current model, at present the WMM2015
-     *                  is valid for 2015.0 to 2020.0.
+     *                  This must be within the range of the current model, the built in WMM2015
+     *                  is valid for 2015.0 to 2020.0. Newer models can be loaded from WMM.COF files
+     *                  with WmmCoefficients.loadOrConvert().
      */
     private double mAltitude;
     private double mLat;
@@ -81,8 +79,9 @@ public class MagneticModel {
     public void setDecimalYear(Calendar date) {
         double year = date.get(Calendar.YEAR);
 
-        if (year > 2020.0 || year < 2015.0) {
-            throw new IllegalArgumentException("Year out of range ! Valid range 2015.0 to 2020.0");
+        if (year > mCof.getEpoch() + WmmCoefficients.VALIDITY_YEARS || year < mCof.getEpoch()) {
+            throw new IllegalArgumentException("Year out of range ! Valid range " + mCof.getEpoch() +
+                    " to " + (mCof.getEpoch() + WmmCoefficients.VALIDITY_YEARS));
         }
 
         double fraction = ((float) date.get(Calendar.WEEK_OF_YEAR)-1)/52;
@@ -202,236 +201,200 @@ public class MagneticModel {
 
 
     /*
-     * Import the 2015 - 2020 coefficients from WMM.COF as strings
-     *
-     * This is easy to maintain, distribute and parse in the Class.
+     * Shared, immutable coefficient tables. Building these is the expensive part of setting up
+     * the model, so it is done once per coefficient set and never per instance.
      */
-    private String[] coff= {
-                "	1	,	0	,	-29438.5	,	0	,	10.7	,	0	",
-                "	1	,	1	,	-1501.1	,	4796.2	,	17.9	,	-26.8	",
-                "	2	,	0	,	-2445.3	,	0	,	-8.6	,	0	",
-                "	2	,	1	,	3012.5	,	-2845.6	,	-3.3	,	-27.1	",
-                "	2	,	2	,	1676.6	,	-642	,	2.4	,	-13.3	",
-                "	3	,	0	,	1351.1	,	0	,	3.1	,	0	",
-                "	3	,	1	,	-2352.3	,	-115.3	,	-6.2	,	8.4	",
-                "	3	,	2	,	1225.6	,	245	,	-0.4	,	-0.4	",
-                "	3	,	3	,	581.9	,	-538.3	,	-10.4	,	2.3	",
-                "	4	,	0	,	907.2	,	0	,	-0.4	,	0	",
-                "	4	,	1	,	813.7	,	283.4	,	0.8	,	-0.6	",
-                "	4	,	2	,	120.3	,	-188.6	,	-9.2	,	5.3	",
-                "	4	,	3	,	-335	,	180.9	,	4	,	3	",
-                "	4	,	4	,	70.3	,	-329.5	,	-4.2	,	-5.3	",
-                "	5	,	0	,	-232.6	,	0	,	-0.2	,	0	",
-                "	5	,	1	,	360.1	,	47.4	,	0.1	,	0.4	",
-                "	5	,	2	,	192.4	,	196.9	,	-1.4	,	1.6	",
-                "	5	,	3	,	-141	,	-119.4	,	0	,	-1.1	",
-                "	5	,	4	,	-157.4	,	16.1	,	1.3	,	3.3	",
-                "	5	,	5	,	4.3	,	100.1	,	3.8	,	0.1	",
-                "	6	,	0	,	69.5	,	0	,	-0.5	,	0	",
-                "	6	,	1	,	67.4	,	-20.7	,	-0.2	,	0	",
-                "	6	,	2	,	72.8	,	33.2	,	-0.6	,	-2.2	",
-                "	6	,	3	,	-129.8	,	58.8	,	2.4	,	-0.7	",
-                "	6	,	4	,	-29	,	-66.5	,	-1.1	,	0.1	",
-                "	6	,	5	,	13.2	,	7.3	,	0.3	,	1	",
-                "	6	,	6	,	-70.9	,	62.5	,	1.5	,	1.3	",
-                "	7	,	0	,	81.6	,	0	,	0.2	,	0	",
-                "	7	,	1	,	-76.1	,	-54.1	,	-0.2	,	0.7	",
-                "	7	,	2	,	-6.8	,	-19.4	,	-0.4	,	0.5	",
-                "	7	,	3	,	51.9	,	5.6	,	1.3	,	-0.2	",
-                "	7	,	4	,	15	,	24.4	,	0.2	,	-0.1	",
-                "	7	,	5	,	9.3	,	3.3	,	-0.4	,	-0.7	",
-                "	7	,	6	,	-2.8	,	-27.5	,	-0.9	,	0.1	",
-                "	7	,	7	,	6.7	,	-2.3	,	0.3	,	0.1	",
-                "	8	,	0	,	24	,	0	,	0	,	0	",
-                "	8	,	1	,	8.6	,	10.2	,	0.1	,	-0.3	",
-                "	8	,	2	,	-16.9	,	-18.1	,	-0.5	,	0.3	",
-                "	8	,	3	,	-3.2	,	13.2	,	0.5	,	0.3	",
-                "	8	,	4	,	-20.6	,	-14.6	,	-0.2	,	0.6	",
-                "	8	,	5	,	13.3	,	16.2	,	0.4	,	-0.1	",
-                "	8	,	6	,	11.7	,	5.7	,	0.2	,	-0.2	",
-                "	8	,	7	,	-16	,	-9.1	,	-0.4	,	0.3	",
-                "	8	,	8	,	-2	,	2.2	,	0.3	,	0	",
-                "	9	,	0	,	5.4	,	0	,	0	,	0	",
-                "	9	,	1	,	8.8	,	-21.6	,	-0.1	,	-0.2	",
-                "	9	,	2	,	3.1	,	10.8	,	-0.1	,	-0.1	",
-                "	9	,	3	,	-3.1	,	11.7	,	0.4	,	-0.2	",
-                "	9	,	4	,	0.6	,	-6.8	,	-0.5	,	0.1	",
-                "	9	,	5	,	-13.3	,	-6.9	,	-0.2	,	0.1	",
-                "	9	,	6	,	-0.1	,	7.8	,	0.1	,	0	",
-                "	9	,	7	,	8.7	,	1	,	0	,	-0.2	",
-                "	9	,	8	,	-9.1	,	-3.9	,	-0.2	,	0.4	",
-                "	9	,	9	,	-10.5	,	8.5	,	-0.1	,	0.3	",
-                "	10	,	0	,	-1.9	,	0	,	0	,	0	",
-                "	10	,	1	,	-6.5	,	3.3	,	0	,	0.1	",
-                "	10	,	2	,	0.2	,	-0.3	,	-0.1	,	-0.1	",
-                "	10	,	3	,	0.6	,	4.6	,	0.3	,	0	",
-                "	10	,	4	,	-0.6	,	4.4	,	-0.1	,	0	",
-                "	10	,	5	,	1.7	,	-7.9	,	-0.1	,	-0.2	",
-                "	10	,	6	,	-0.7	,	-0.6	,	-0.1	,	0.1	",
-                "	10	,	7	,	2.1	,	-4.1	,	0	,	-0.1	",
-                "	10	,	8	,	2.3	,	-2.8	,	-0.2	,	-0.2	",
-                "	10	,	9	,	-1.8	,	-1.1	,	-0.1	,	0.1	",
-                "	10	,	10	,	-3.6	,	-8.7	,	-0.2	,	-0.1	",
-                "	11	,	0	,	3.1	,	0	,	0	,	0	",
-                "	11	,	1	,	-1.5	,	-0.1	,	0	,	0	",
-                "	11	,	2	,	-2.3	,	2.1	,	-0.1	,	0.1	",
-                "	11	,	3	,	2.1	,	-0.7	,	0.1	,	0	",
-                "	11	,	4	,	-0.9	,	-1.1	,	0	,	0.1	",
-                "	11	,	5	,	0.6	,	0.7	,	0	,	0	",
-                "	11	,	6	,	-0.7	,	-0.2	,	0	,	0	",
-                "	11	,	7	,	0.2	,	-2.1	,	0	,	0.1	",
-                "	11	,	8	,	1.7	,	-1.5	,	0	,	0	",
-                "	11	,	9	,	-0.2	,	-2.5	,	0	,	-0.1	",
-                "	11	,	10	,	0.4	,	-2	,	-0.1	,	0	",
-                "	11	,	11	,	3.5	,	-2.3	,	-0.1	,	-0.1	",
-                "	12	,	0	,	-2	,	0	,	0.1	,	0	",
-                "	12	,	1	,	-0.3	,	-1	,	0	,	0	",
-                "	12	,	2	,	0.4	,	0.5	,	0	,	0	",
-                "	12	,	3	,	1.3	,	1.8	,	0.1	,	-0.1	",
-                "	12	,	4	,	-0.9	,	-2.2	,	-0.1	,	0	",
-                "	12	,	5	,	0.9	,	0.3	,	0	,	0	",
-                "	12	,	6	,	0.1	,	0.7	,	0.1	,	0	",
-                "	12	,	7	,	0.5	,	-0.1	,	0	,	0	",
-                "	12	,	8	,	-0.4	,	0.3	,	0	,	0	",
-                "	12	,	9	,	-0.4	,	0.2	,	0	,	0	",
-                "	12	,	10	,	0.2	,	-0.9	,	0	,	0	",
-                "	12	,	11	,	-0.9	,	-0.2	,	0	,	0	",
-                "	12	,	12	,	0	,	0.7	,	0	,	0	"
-    };
+    private final WmmCoefficients mCof;
 
 
-    // prepare some arrays for the model
-    private double[][] c  = new double[13][13];
-    private double[][] cd = new double[13][13];
-    private double[][] tc = new double[13][13];
-    private double[][] dp = new double[13][13];
-    private double[][] k  = new double[13][13];
+    /*
+     * Scratch space for the spherical harmonic recursion.
+     *
+     * Every thread gets its own set of arrays, which is what makes the stateless declination()
+     * call safe to use from any thread without allocating anything per call.
+     */
+    static final class Workspace {
+        final double[] p  = new double[WmmCoefficients.SIZE * WmmCoefficients.SIZE];
+        final double[][] dp = new double[WmmCoefficients.SIZE][WmmCoefficients.SIZE];
+        final double[] sp = new double[WmmCoefficients.SIZE];
+        final double[] cp = new double[WmmCoefficients.SIZE];
+        final double[] pp = new double[WmmCoefficients.SIZE];
+        final double[] field = new double[3];
+
+        // Time adjusted Gauss coefficients, kept until the coefficients or the year change
+        final double[][] tc = new double[WmmCoefficients.SIZE][WmmCoefficients.SIZE];
+        WmmCoefficients tcCof;
+        double tcDt;
+    }
 
-    private double[] snorm = new double[169];
-    private double[] sp = new double[13];
-    private double[] cp = new double[13];
-    private double[] fn = new double[13];
-    private double[] fm = new double[13];
-    private double[] pp = new double[13];
+    private static final ThreadLocal<Workspace> sWorkspace = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
 
 
     /*
      * Constructor
      *
-     * Initialize a couple of new variables, otherwise simply reuse everything as named
-     * in the previous port to JavaScript.
-     *
+     * Uses the shared WMM2015 coefficients, so creating a MagneticModel is cheap. Default values
+     * are zero MSL and current time in Decimal Year.
      */
-
     public MagneticModel() {
+        this(WmmCoefficients.wmm2015());
+    }
+
 
-        // Default values zero MSL and current time in Decimal Year
+    /*
+     * Use other coefficients, for example a WMM2020.COF file read with WmmCoefficients.loadOrConvert()
+     */
+    public MagneticModel(WmmCoefficients coefficients) {
+        mCof = coefficients;
         mAltitude = 0;
         mYear = getDecimalYear();
+    }
 
-        // misc variables
-        double maxdeg = 12;
-        double maxord;
-        double a,b,a2,b2,c2,a4,b4,c4,re;
-        double gnm,hnm,dgnm,dhnm,flnmj;
 
-        String c_str;
-        String[] c_flds;
-        maxord = maxdeg;
-        sp[0] = 0.0;
-        cp[0] = snorm[0] = pp[0] = 1.0;
-        dp[0][0] = 0.0;
-        a = 6378.137;
-        b = 6356.7523142;
-        re = 6371.2;
-        a2 = a*a;
-        b2 = b*b;
-        c2 = a2-b2;
-        a4 = a2*a2;
-        b4 = b2*b2;
-        c4 = a4 - b4;
-
-
-        // READ WORLD MAGNETIC MODEL SPHERICAL HARMONIC COEFFICIENTS
-        c[0][0] = 0.0;
-        cd[0][0] = 0.0;
-
-        for(int i=0; i < coff.length; i++) {
-            c_str = coff[i];
-            c_flds = c_str.replaceAll("\\s+","").split(",");
-
-            int n = parseInt(c_flds[0],10);
-            int m = parseInt(c_flds[1],10);
-            gnm = parseFloat(c_flds[2]);
-            hnm = parseFloat(c_flds[3]);
-            dgnm = parseFloat(c_flds[4]);
-            dhnm = parseFloat(c_flds[5]);
-
-            if (m <= n) {
-                c[m][n] = gnm;
-                cd[m][n] = dgnm;
-                if (m != 0) {
-                    c[n][m-1] = hnm;
-                    cd[n][m-1] = dhnm;
-                }
-            }
+    public WmmCoefficients getCoefficients() {
+        return mCof;
+    }
+
+
+    /*
+     * Stateless declination lookup
+     *
+     * Does not touch any of the fields set by setLocation() etc. and can be called on a single
+     * shared instance from any thread.
+     *
+     * @param lat           Latitude in decimal degrees
+     * @param lon           Longitude in decimal degrees
+     * @param altKm         Height above the WGS84 ellipsoid in km
+     * @param decimalYear   For example 2017.5
+     *
+     * @return  declination in degrees, positive east - or NaN if the year is outside the
+     *          validity window of the model
+     */
+    public double declination(double lat, double lon, double altKm, double decimalYear) {
+        if (!mCof.isValidFor(decimalYear)) return Double.NaN;
+
+        Workspace w = sWorkspace.get();
+        double[] field = w.field;
+        timeAdjust(mCof, w, decimalYear - mCof.getEpoch());
+        computeField(mCof, w, lat, lon, altKm, field);
+
+        return Math.atan2(field[1], field[0]) / DTR;
+    }
+
+
+    /*
+     * Batch declination lookup
+     *
+     * Computes the declination for every lat[i], lon[i] pair and writes it to out[i]. The
+     * coefficients are time adjusted once for the whole batch and nothing is allocated per
+     * point, which makes this the call to use for route enrichment and grid generation.
+     *
+     * Like declination() this is stateless and thread-safe.
+     *
+     * @param lat           Latitudes in decimal degrees
+     * @param lon           Longitudes in decimal degrees, same length as lat
+     * @param altKm         Height above the WGS84 ellipsoid in km, used for all points
+     * @param decimalYear   For example 2017.5
+     * @param out           Receives the declinations, must be at least as long as lat. All
+     *                      entries are set to NaN if the year is outside the model validity.
+     */
+    public void declination(double[] lat, double[] lon, double altKm, double decimalYear, double[] out) {
+        int count = lat.length;
+        if (lon.length != count || out.length < count) {
+            throw new IllegalArgumentException("Coordinate and result arrays must have matching lengths");
         }
 
+        if (!mCof.isValidFor(decimalYear)) {
+            for (int i = 0; i < count; i++) out[i] = Double.NaN;
+            return;
+        }
 
-        // CONVERT SCHMIDT NORMALIZED GAUSS COEFFICIENTS TO UNNORMALIZED
-        snorm[0] = 1.0;
-        for (int n=1; n<=maxord; n++) {
-            snorm[n] = snorm[n-1]*(2*n-1)/n;
-            int j = 2;
-            for (int m=0, D1=1, D2=(n-m+D1)/D1; D2>0; D2--, m+=D1) {
-                k[m][n] = (float)(((n-1)*(n-1))-(m*m))/(float)((2*n-1)*(2*n-3));
-                if (m > 0) {
-                    flnmj = (float)((n-m+1)*j)/(float)(n+m);
-                    snorm[n+m*13] = snorm[n+(m-1)*13]*Math.sqrt(flnmj);
-                    j = 1;
-                    c[n][m-1] = snorm[n+m*13]*c[n][m-1];
-                    cd[n][m-1] = snorm[n+m*13]*cd[n][m-1];
-                }
-                c[m][n] = snorm[n+m*13]*c[m][n];
-                cd[m][n] = snorm[n+m*13]*cd[m][n];
-            }
-            fn[n] = (n+1);
-            fm[n] = n;
+        Workspace w = sWorkspace.get();
+        double[] field = w.field;
+        timeAdjust(mCof, w, decimalYear - mCof.getEpoch());
+
+        for (int i = 0; i < count; i++) {
+            computeField(mCof, w, lat[i], lon[i], altKm, field);
+            out[i] = Math.atan2(field[1], field[0]) / DTR;
         }
-        k[1][1] = 0.0;
-        fm[0] = 0.0;// !!!!!! WMM C and Fortran both have a bug in that fm[0] is not initialised
     }
 
 
 
+    private static final double PI = 3.14159265359;
+    private static final double DTR = PI / 180.0;
 
-    private boolean calculate() {
-        double a = 6378.137;
-        double b = 6356.7523142;
-        double re = 6371.2;
-        double a2 = a * a;
-        double b2 = b * b;
-        double c2 = a2 - b2;
-        double a4 = a2 * a2;
-        double b4 = b2 * b2;
-        double c4 = a4 - b4;
-        double r;
-
-
-        double pi, dt, rlon, rlat, srlon, srlat, crlon, crlat, srlat2,
+    // WGS84 ellipsoid and geomagnetic reference radius
+    private static final double A = 6378.137;
+    private static final double B = 6356.7523142;
+    private static final double RE = 6371.2;
+    private static final double A2 = A * A;
+    private static final double B2 = B * B;
+    private static final double C2 = A2 - B2;
+    private static final double A4 = A2 * A2;
+    private static final double B4 = B2 * B2;
+    private static final double C4 = A4 - B4;
+
+
+    /*
+     * TIME ADJUST THE GAUSS COEFFICIENTS
+     *
+     * The result is kept in the workspace, so repeated calls for the same year are free.
+     */
+    static void timeAdjust(WmmCoefficients cof, Workspace w, double dt) {
+        if (w.tcCof == cof && w.tcDt == dt) return;
+
+        double[][] c = cof.c;
+        double[][] cd = cof.cd;
+        double[][] tc = w.tc;
+        int maxord = cof.getMaxDegree();
+
+        for (int n = 1; n <= maxord; n++) {
+            for (int m = 0; m <= n; m++) {
+                tc[m][n] = c[m][n]+dt*cd[m][n];
+                if (m != 0) tc[n][m-1] = c[n][m-1]+dt*cd[n][m-1];
+            }
+        }
+
+        w.tcCof = cof;
+        w.tcDt = dt;
+    }
+
+
+    /*
+     * The spherical harmonic synthesis itself.
+     *
+     * Writes the geodetic X (north), Y (east) and Z (down) field components into out[0..2]. All
+     * temporary storage comes from the workspace, nothing is allocated here. The workspace must
+     * have been time adjusted with timeAdjust() first.
+     */
+    static void computeField(WmmCoefficients cof, Workspace w, double lat, double lon, double alt, double[] out) {
+        double[][] tc = w.tc;
+        double[][] k = cof.k;
+        double[] snorm = w.p;
+        double[][] dp = w.dp;
+        double[] sp = w.sp;
+        double[] cp = w.cp;
+        double[] pp = w.pp;
+
+        double r, rlon, rlat, srlon, srlat, crlon, crlat, srlat2,
                 crlat2, q, q1, q2, ct, d, aor, ar, br, r2, bpp, par,
-                temp1, parp, temp2, dtr, bp, bt, st, ca, sa;
+                temp1, parp, temp2, bp, bt, st, ca, sa;
 
-        int maxord = 12;
-        dt = mYear - 2015.0;
+        int maxord = cof.getMaxDegree();
+        int size = WmmCoefficients.SIZE;
 
-        // if more then 5 years has passed since last epoch update then return invalid
-        if ((dt < 0.0) || (dt > 5.0)) return false;
+        sp[0] = 0.0;
+        cp[0] = snorm[0] = pp[0] = 1.0;
+        dp[0][0] = 0.0;
 
-        pi = 3.14159265359;
-        dtr = pi / 180.0;
-        rlon = mLon * dtr;
-        rlat = mLat * dtr;
+        rlon = lon * DTR;
+        rlat = lat * DTR;
         srlon = Math.sin(rlon);
         srlat = Math.sin(rlat);
         crlon = Math.cos(rlon);
@@ -444,16 +407,16 @@ public class MagneticModel {
 
         // CONVERT FROM GEODETIC COORDS. TO SPHERICAL COORDS.
 
-        q = Math.sqrt(a2 - c2 * srlat2);
-        q1 = mAltitude * q;
-        q2 = ((q1 + a2) / (q1 + b2)) * ((q1 + a2) / (q1 + b2));
+        q = Math.sqrt(A2 - C2 * srlat2);
+        q1 = alt * q;
+        q2 = ((q1 + A2) / (q1 + B2)) * ((q1 + A2) / (q1 + B2));
         ct = srlat / Math.sqrt(q2 * crlat2 + srlat2);
         st = Math.sqrt(1.0 - (ct * ct));
-        r2 = (mAltitude * mAltitude) + 2.0 * q1 + (a4 - c4 * srlat2) / (q * q);
+        r2 = (alt * alt) + 2.0 * q1 + (A4 - C4 * srlat2) / (q * q);
         r = Math.sqrt(r2);
-        d = Math.sqrt(a2 * crlat2 + b2 * srlat2);
-        ca = (mAltitude + d) / r;
-        sa = c2 * crlat * srlat / (r * d);
+        d = Math.sqrt(A2 * crlat2 + B2 * srlat2);
+        ca = (alt + d) / r;
+        sa = C2 * crlat * srlat / (r * d);
 
 
         for (int m = 2; m <= maxord; m++) {
@@ -461,7 +424,7 @@ public class MagneticModel {
             cp[m] = cp[1] * cp[m - 1] - sp[1] * sp[m - 1];
         }
 
-        aor = re / r;
+        aor = RE / r;
         ar = aor * aor;
         br = bt = bp = bpp = 0.0;
 
@@ -476,35 +439,26 @@ public class MagneticModel {
                 //
 
                 if (n == m) {
-                    snorm[n+m*13] = st*snorm[n-1+(m-1)*13];
-                    dp[m][n] = st*dp[m-1][n-1]+ct*snorm[n-1+(m-1)*13];
+                    snorm[n+m*size] = st*snorm[n-1+(m-1)*size];
+                    dp[m][n] = st*dp[m-1][n-1]+ct*snorm[n-1+(m-1)*size];
                 } else if (n == 1 && m == 0) {
-                    snorm[n+m*13] = ct*snorm[n-1+m*13];
-                    dp[m][n] = ct*dp[m][n-1]-st*snorm[n-1+m*13];
+                    snorm[n+m*size] = ct*snorm[n-1+m*size];
+                    dp[m][n] = ct*dp[m][n-1]-st*snorm[n-1+m*size];
                 } else if (n > 1) {
 
                     if (m > n-2) {
-                        snorm[n-2+m*13] = 0.0;
-                    }
-                    if (m > n-2) {
+                        snorm[n-2+m*size] = 0.0;
                         dp[m][n-2] = 0.0;
                     }
-                    snorm[n+m*13] = ct*snorm[n-1+m*13]-k[m][n]*snorm[n-2+m*13];
-                    dp[m][n] = ct*dp[m][n-1] - st*snorm[n-1+m*13]-k[m][n]*dp[m][n-2];
+                    snorm[n+m*size] = ct*snorm[n-1+m*size]-k[m][n]*snorm[n-2+m*size];
+                    dp[m][n] = ct*dp[m][n-1] - st*snorm[n-1+m*size]-k[m][n]*dp[m][n-2];
                 }
 
 
-                //
-                // TIME ADJUST THE GAUSS COEFFICIENTS
-                //
-                tc[m][n] = c[m][n]+dt*cd[m][n];
-
-                if (m != 0) tc[n][m-1] = c[n][m-1]+dt*cd[n][m-1];
-
                 //
                 // ACCUMULATE TERMS OF THE SPHERICAL HARMONIC EXPANSIONS
                 //
-                par = ar*snorm[n+m*13];
+                par = ar*snorm[n+m*size];
 
                 if (m == 0) {
                     temp1 = tc[m][n]*cp[m];
@@ -516,8 +470,8 @@ public class MagneticModel {
 
 
                 bt = bt-ar*temp1*dp[m][n];
-                bp += (fm[m]*temp2*par);
-                br += (fn[n]*temp1*par);
+                bp += (m*temp2*par);
+                br += ((n+1)*temp1*par);
 
 
                 //
@@ -530,7 +484,7 @@ public class MagneticModel {
                         pp[n] = ct*pp[n-1]-k[m][n]*pp[n-2];
 
                     parp = ar*pp[n];
-                    bpp += (fm[m]*temp2*parp);
+                    bpp += (m*temp2*parp);
 
                 }
 
@@ -544,25 +498,41 @@ public class MagneticModel {
             bp /= st;
 
 
-
 //
 //    ROTATE MAGNETIC VECTOR COMPONENTS FROM SPHERICAL TO
 //    GEODETIC COORDINATES
 //
-        mFieldVectorNorthern = -bt*ca-br*sa;
-        mFieldVectorEastern = bp;
-        mFieldVectorDownwards = bt*sa-br*ca;
+        out[0] = -bt*ca-br*sa;
+        out[1] = bp;
+        out[2] = bt*sa-br*ca;
+    }
 
 
 
+    private boolean calculate() {
+        double dt = mYear - mCof.getEpoch();
+
+        // if more then 5 years has passed since last epoch update then return invalid
+        if ((dt < 0.0) || (dt > WmmCoefficients.VALIDITY_YEARS)) return false;
+
+        Workspace w = sWorkspace.get();
+        double[] field = w.field;
+        timeAdjust(mCof, w, dt);
+        computeField(mCof, w, mLat, mLon, mAltitude, field);
+
+        mFieldVectorNorthern = field[0];
+        mFieldVectorEastern = field[1];
+        mFieldVectorDownwards = field[2];
+
+
 //
 //    COMPUTE DECLINATION (DEC), INCLINATION (DIP) AND
 //    TOTAL INTENSITY (TI)
 //
         mHorizontalFieldStrength = Math.sqrt((mFieldVectorNorthern*mFieldVectorNorthern)+(mFieldVectorEastern*mFieldVectorEastern));
         mFieldStrength = Math.sqrt((mHorizontalFieldStrength*mHorizontalFieldStrength)+(mFieldVectorDownwards*mFieldVectorDownwards));
-        mDeclination = Math.atan2(mFieldVectorEastern,mFieldVectorNorthern)/dtr;
-        mInclination = Math.atan2(mFieldVectorDownwards,mHorizontalFieldStrength)/dtr;
+        mDeclination = Math.atan2(mFieldVectorEastern,mFieldVectorNorthern)/DTR;
+        mInclination = Math.atan2(mFieldVectorDownwards,mHorizontalFieldStrength)/DTR;
 
 
 //
@@ -612,8 +582,10 @@ public class MagneticModel {
      * in a javascript edition, that has been ported to Java by Torben Brams, December 2016
      * email:torben@brams.dk
      *
+     * The coefficient tables are immutable and shared (see WmmCoefficients). The setter/getter
+     * API keeps its per instance state, so an instance used that way should stay on one thread.
+     * The declination() call is stateless and thread-safe.
+     *
      */
 
 }
-
-
@@ -10,6 +10,28 @@ public class MyClass {
         System.out.println(parseFrom("2300ft"));
         System.out.println(parseFrom("2300  ft"));
 
+        double[] pos = Coordinates.convertVFG("55 35 08.04N 012 07 53.14E");
+        System.out.println(pos[0] + ", " + pos[1]);
+
+        printDeclinationGridErrors();
+    }
+
+
+    /**
+     * Print interpolation errors for a few declination grid cell sizes over Denmark, so we can
+     * pick a cell size that stays well below the accuracy of the model itself (about 30').
+     */
+    public static void printDeclinationGridErrors() {
+        MagneticModel model = new MagneticModel();
+        double[] cellSizes = {2.0, 1.0, 0.5, 0.25, 0.1};
+
+        System.out.println("cell deg   nodes   max err deg   rms err deg");
+        for (double cellSize : cellSizes) {
+            DeclinationGrid grid = DeclinationGrid.build(model, 2017.5, 54.0, 7.0, 58.0, 16.0, cellSize, 4);
+            double[] err = grid.errorReport(model, 20);
+            System.out.println(String.format(java.util.Locale.US, "%8.2f %7d %13.6f %13.6f",
+                    cellSize, grid.getRows() * grid.getCols(), err[0], err[1]));
+        }
     }
 
     /**
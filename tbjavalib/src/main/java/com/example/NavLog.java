@@ -0,0 +1,194 @@
+package com.example;
+
+
+/*
+ * Navigation log of a route: the wind triangle and timing for every leg.
+ *
+ * Legs are stored as primitive arrays, one per value, so a pass over the route touches no
+ * objects and allocates nothing. Leg i is the leg arriving at way point i; way point 0 is the
+ * start and has no leg, its values stay zero.
+ *
+ * compute() works out all derived values of a leg in one go - the sine and cosine of the wind
+ * angle are shared by ground speed and wind correction angle, and IAS only depends on the global
+ * values so it is calculated once per pass. accumulate() then brings the running sums, ETO and
+ * distance along the route, up to date from a given leg.
+ *
+ * Units: distances in nautical miles, speeds in knots, angles in degrees, altitude in feet and
+ * times in minutes.
+ *
+ * Not thread-safe.
+ */
+public final class NavLog {
+
+    public static final double START_TIME = 2.;     // Minutes added to the first leg
+
+    private int mSize;
+
+    // Input per leg
+    private double[] mDist = new double[0];
+    private double[] mTT = new double[0];
+    private double[] mVar = new double[0];
+
+    // Derived per leg
+    private double[] mGS = new double[0];
+    private double[] mWCA = new double[0];
+    private double[] mIAS = new double[0];
+    private double[] mTH = new double[0];
+    private double[] mMH = new double[0];
+    private double[] mTime = new double[0];
+    private double[] mEto = new double[0];
+    private double[] mAccDist = new double[0];
+
+
+    public int size() {
+        return mSize;
+    }
+
+
+    // Resize to a number of way points, new legs start out zero
+    public void setSize(int size) {
+        ensureCapacity(size);
+        for (int i = mSize; i < size; i++) {
+            clear(i);
+        }
+        mSize = size;
+    }
+
+
+    // Make room for a way point at the index, the new leg starts out zero
+    public void insert(int index) {
+        ensureCapacity(mSize + 1);
+        for (double[] a : arrays()) {
+            System.arraycopy(a, index, a, index + 1, mSize - index);
+        }
+        mSize++;
+        clear(index);
+    }
+
+
+    // Drop the way point at the index
+    public void remove(int index) {
+        for (double[] a : arrays()) {
+            System.arraycopy(a, index + 1, a, index, mSize - index - 1);
+        }
+        mSize--;
+
+        // The next way point became the start, which has no leg
+        if (index == 0 && mSize > 0) clear(0);
+    }
+
+
+    private void ensureCapacity(int size) {
+        if (mDist.length >= size) return;
+
+        int capacity = Math.max(size, Math.max(16, 2 * mDist.length));
+        mDist = grow(mDist, capacity);
+        mTT = grow(mTT, capacity);
+        mVar = grow(mVar, capacity);
+        mGS = grow(mGS, capacity);
+        mWCA = grow(mWCA, capacity);
+        mIAS = grow(mIAS, capacity);
+        mTH = grow(mTH, capacity);
+        mMH = grow(mMH, capacity);
+        mTime = grow(mTime, capacity);
+        mEto = grow(mEto, capacity);
+        mAccDist = grow(mAccDist, capacity);
+    }
+
+
+    private static double[] grow(double[] a, int capacity) {
+        double[] grown = new double[capacity];
+        System.arraycopy(a, 0, grown, 0, a.length);
+        return grown;
+    }
+
+
+    private double[][] arrays() {
+        return new double[][]{mDist, mTT, mVar, mGS, mWCA, mIAS, mTH, mMH, mTime, mEto, mAccDist};
+    }
+
+
+    private void clear(int i) {
+        mDist[i] = mTT[i] = mVar[i] = 0;
+        mGS[i] = mWCA[i] = mIAS[i] = mTH[i] = mMH[i] = mTime[i] = mEto[i] = mAccDist[i] = 0;
+    }
+
+
+    /**
+     * Set the geometry of a leg.
+     *
+     * @param leg           1 .. size()-1
+     * @param dist          Distance in nautical miles
+     * @param trueTrack     True track, 0 .. 360
+     * @param variation     Magnetic variation at the way point, east positive
+     */
+    public void setLeg(int leg, double dist, double trueTrack, double variation) {
+        mDist[leg] = dist;
+        mTT[leg] = trueTrack;
+        mVar[leg] = variation;
+    }
+
+
+    /**
+     * Work out ground speed, wind correction angle, IAS, headings and time for a range of legs.
+     *
+     * @param from          First leg, 1 or higher
+     * @param to            One past the last leg
+     * @param tas           True airspeed
+     * @param alt           Altitude
+     * @param windDir       Direction the wind is from
+     * @param windStr       Wind strength
+     */
+    public void compute(int from, int to, double tas, double alt, double windDir, double windStr) {
+        double ias = ias(tas, alt);
+
+        for (int i = Math.max(1, from); i < to; i++) {
+            double angle = Math.toRadians(windDir - mTT[i]);
+            double cross = windStr * Math.sin(angle) / tas;     // Sine of the wind correction angle
+            double head = windStr * Math.cos(angle);
+
+            double gs = Math.sqrt(1 - cross * cross) * (tas - head);
+            double wca = Math.toDegrees(Math.atan(cross));
+            double th = (mTT[i] + wca + 360.) % 360;
+
+            mGS[i] = gs;
+            mWCA[i] = wca;
+            mIAS[i] = ias;
+            mTH[i] = th;
+            mMH[i] = th - mVar[i];
+            mTime[i] = mDist[i] / gs * 60. + (i == 1 ? START_TIME : 0);
+        }
+    }
+
+
+    // Rule of thumb: IAS is 2% lower than TAS per 1000 feet
+    public static double ias(double tas, double alt) {
+        return tas / (1 + alt / 1000. * 0.02);
+    }
+
+
+    /**
+     * Bring ETO and distance along the route up to date, from a leg to the end.
+     *
+     * @param from  First leg whose time or distance changed
+     */
+    public void accumulate(int from) {
+        for (int i = Math.max(1, from); i < mSize; i++) {
+            mEto[i] = mEto[i - 1] + mTime[i];
+            mAccDist[i] = mAccDist[i - 1] + mDist[i];
+        }
+    }
+
+
+    public double getDist(int leg) { return mDist[leg]; }
+    public double getTT(int leg) { return mTT[leg]; }
+    public double getVar(int leg) { return mVar[leg]; }
+    public double getGS(int leg) { return mGS[leg]; }
+    public double getWCA(int leg) { return mWCA[leg]; }
+    public double getIAS(int leg) { return mIAS[leg]; }
+    public double getTH(int leg) { return mTH[leg]; }
+    public double getMH(int leg) { return mMH[leg]; }
+    public double getTime(int leg) { return mTime[leg]; }
+    public double getEto(int leg) { return mEto[leg]; }
+    public double getAccumulatedDist(int leg) { return mAccDist[leg]; }
+}
@@ -0,0 +1,406 @@
+package com.example;
+
+
+/*
+ * k-nearest neighbour index over a fixed set of points on the sphere.
+ *
+ * The points are stored as unit vectors in a balanced KD-tree. The tree is implicit: the points
+ * are reordered so that the node of a range lo..hi is the median at (lo + hi) / 2, with smaller
+ * coordinates along the split axis to the left of it. Straight line distance between unit
+ * vectors grows with the great circle distance, so ranking by it needs no trigonometry per
+ * point, and it works the same across the date line and near the poles.
+ *
+ * Points can have a coverage, a radio range and a ceiling for example. Every node keeps the
+ * bounding box, the largest range and the highest ceiling of its subtree, so nearestCovered()
+ * skips whole subtrees that are out of reach instead of filtering a complete scan.
+ *
+ * Points are referred to by their position in the arrays the index was built from. Instances are
+ * immutable, queries write into arrays given by the caller and are thread-safe.
+ */
+public final class NearestIndex {
+
+    private final double[] mX;          // Unit vectors, in tree order
+    private final double[] mY;
+    private final double[] mZ;
+    private final int[] mOrder;         // Original index of each tree position
+    private final byte[] mAxis;         // Split axis of the node at each tree position
+
+    // Coverage by tree position: range as squared chord length and ceiling
+    private final double[] mReach;
+    private final double[] mCeiling;
+
+    // Subtree of the node at each tree position: bounding box, 3 values per node, reach and ceiling
+    private final double[] mBoxMin;
+    private final double[] mBoxMax;
+    private final double[] mSubReach;
+    private final double[] mSubCeiling;
+
+
+    /**
+     * Build the index.
+     *
+     * @param lat   Latitudes in degrees
+     * @param lon   Longitudes in degrees
+     */
+    public NearestIndex(double[] lat, double[] lon) {
+        this(lat, lon, null, null);
+    }
+
+
+    /**
+     * Build the index with a coverage for every point.
+     *
+     * @param lat       Latitudes in degrees
+     * @param lon       Longitudes in degrees
+     * @param range     Range in metres, 0 or less for no limit. Null if no point has a limit.
+     * @param ceiling   Highest altitude covered, 0 or less for no limit. Null if no point has a limit.
+     */
+    public NearestIndex(double[] lat, double[] lon, double[] range, double[] ceiling) {
+        if (lat.length != lon.length || (range != null && range.length != lat.length)
+                || (ceiling != null && ceiling.length != lat.length)) {
+            throw new IllegalArgumentException("Point arrays differ in length");
+        }
+
+        int n = lat.length;
+        mX = new double[n];
+        mY = new double[n];
+        mZ = new double[n];
+        mOrder = new int[n];
+        mAxis = new byte[n];
+        mReach = new double[n];
+        mCeiling = new double[n];
+        mBoxMin = new double[3 * n];
+        mBoxMax = new double[3 * n];
+        mSubReach = new double[n];
+        mSubCeiling = new double[n];
+        double[] v = new double[3];
+        for (int i = 0; i < n; i++) {
+            Geodesy.toVector(lat[i], lon[i], v, 0);
+            mX[i] = v[0];
+            mY[i] = v[1];
+            mZ[i] = v[2];
+            mOrder[i] = i;
+            mReach[i] = range == null ? Double.POSITIVE_INFINITY : reach(range[i]);
+            mCeiling[i] = ceiling == null || ceiling[i] <= 0 ? Double.POSITIVE_INFINITY : ceiling[i];
+        }
+
+        // Explicit stack of ranges still to split
+        int[] stack = new int[4 * (32 - Integer.numberOfLeadingZeros(n + 1)) + 8];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n;
+        while (top > 0) {
+            int hi = stack[--top];
+            int lo = stack[--top];
+            if (hi - lo < 1) continue;
+
+            int axis = widestAxis(lo, hi);
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, axis);
+            mAxis[mid] = (byte) axis;
+
+            stack[top++] = lo;
+            stack[top++] = mid;
+            stack[top++] = mid + 1;
+            stack[top++] = hi;
+        }
+
+        summarize(0, n);
+    }
+
+
+    // Squared chord length of a range in metres
+    private static double reach(double range) {
+        if (range <= 0) return Double.POSITIVE_INFINITY;
+        double angle = range / Geodesy.EARTH_RADIUS;
+        if (angle >= Math.PI) return 4;
+        double chord = 2 * Math.sin(angle / 2);
+        return chord * chord;
+    }
+
+
+    // Fill in the subtree boxes, reach and ceiling bottom up, the depth is only log n
+    private void summarize(int lo, int hi) {
+        if (hi <= lo) return;
+        int mid = (lo + hi) >>> 1;
+        summarize(lo, mid);
+        summarize(mid + 1, hi);
+
+        mBoxMin[3 * mid] = mBoxMax[3 * mid] = mX[mid];
+        mBoxMin[3 * mid + 1] = mBoxMax[3 * mid + 1] = mY[mid];
+        mBoxMin[3 * mid + 2] = mBoxMax[3 * mid + 2] = mZ[mid];
+        mSubReach[mid] = mReach[mid];
+        mSubCeiling[mid] = mCeiling[mid];
+        if (mid > lo) merge(mid, (lo + mid) >>> 1);
+        if (hi > mid + 1) merge(mid, (mid + 1 + hi) >>> 1);
+    }
+
+
+    private void merge(int node, int child) {
+        for (int a = 0; a < 3; a++) {
+            mBoxMin[3 * node + a] = Math.min(mBoxMin[3 * node + a], mBoxMin[3 * child + a]);
+            mBoxMax[3 * node + a] = Math.max(mBoxMax[3 * node + a], mBoxMax[3 * child + a]);
+        }
+        mSubReach[node] = Math.max(mSubReach[node], mSubReach[child]);
+        mSubCeiling[node] = Math.max(mSubCeiling[node], mSubCeiling[child]);
+    }
+
+
+    private int widestAxis(int lo, int hi) {
+        double[] spread = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            double[] c = coordinate(axis);
+            double min = c[lo], max = c[lo];
+            for (int i = lo + 1; i < hi; i++) {
+                min = Math.min(min, c[i]);
+                max = Math.max(max, c[i]);
+            }
+            spread[axis] = max - min;
+        }
+        if (spread[0] >= spread[1] && spread[0] >= spread[2]) return 0;
+        return spread[1] >= spread[2] ? 1 : 2;
+    }
+
+
+    private double[] coordinate(int axis) {
+        return axis == 0 ? mX : (axis == 1 ? mY : mZ);
+    }
+
+
+    // Quickselect: put the point of rank k along the axis at position k, smaller ones before it
+    private void select(int lo, int hi, int k, int axis) {
+        double[] c = coordinate(axis);
+        hi--;
+        while (hi > lo) {
+            double pivot = c[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (c[i] < pivot) i++;
+                while (c[j] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+
+    private void swap(int a, int b) {
+        double t = mX[a]; mX[a] = mX[b]; mX[b] = t;
+        t = mY[a]; mY[a] = mY[b]; mY[b] = t;
+        t = mZ[a]; mZ[a] = mZ[b]; mZ[b] = t;
+        int o = mOrder[a]; mOrder[a] = mOrder[b]; mOrder[b] = o;
+        t = mReach[a]; mReach[a] = mReach[b]; mReach[b] = t;
+        t = mCeiling[a]; mCeiling[a] = mCeiling[b]; mCeiling[b] = t;
+    }
+
+
+    /**
+     * Find the k points nearest a position.
+     *
+     * @param lat       Latitude in degrees
+     * @param lon       Longitude in degrees
+     * @param k         Number of points wanted
+     * @param outIdx    Receives the point indexes, nearest first, at least k entries
+     * @param outDist   Receives the squared chord length between the unit vectors, same order.
+     *                  Use angle() to turn it into an angular distance.
+     * @return number of points found, k unless the index holds fewer
+     */
+    public int nearest(double lat, double lon, int k, int[] outIdx, double[] outDist) {
+        return nearest(lat, lon, Double.NEGATIVE_INFINITY, false, k, outIdx, outDist, 0);
+    }
+
+
+    /**
+     * Find the k nearest points covering a position, that is within range and not below the
+     * altitude. Points without a coverage cover everything.
+     *
+     * @param lat       Latitude in degrees
+     * @param lon       Longitude in degrees
+     * @param altitude  Altitude, in the unit of the ceilings
+     * @param k         Number of points wanted
+     * @param outIdx    Receives the point indexes, nearest first, at least k entries
+     * @param outDist   Receives the squared chord lengths, same order
+     * @return number of points found, may be fewer than k
+     */
+    public int nearestCovered(double lat, double lon, double altitude, int k, int[] outIdx, double[] outDist) {
+        return nearest(lat, lon, altitude, true, k, outIdx, outDist, 0);
+    }
+
+
+    /**
+     * Find the k points nearest each of a number of positions, a whole route for example.
+     *
+     * @param lat       Latitudes in degrees
+     * @param lon       Longitudes in degrees
+     * @param k         Number of points wanted per position
+     * @param outIdx    Receives the point indexes for position m at m*k .. m*k+k-1, nearest first
+     * @param outDist   Receives the squared chord lengths, same layout
+     * @return number of points found per position, k unless the index holds fewer
+     */
+    public int nearest(double[] lat, double[] lon, int k, int[] outIdx, double[] outDist) {
+        int found = 0;
+        for (int m = 0; m < lat.length; m++) {
+            found = nearest(lat[m], lon[m], Double.NEGATIVE_INFINITY, false, k, outIdx, outDist, m * k);
+        }
+        return found;
+    }
+
+
+    /**
+     * Like nearestCovered(), for a number of positions.
+     *
+     * @param lat       Latitudes in degrees
+     * @param lon       Longitudes in degrees
+     * @param altitude  Altitudes, in the unit of the ceilings
+     * @param k         Number of points wanted per position
+     * @param outIdx    Receives the point indexes for position m at m*k .. m*k+k-1, nearest first
+     * @param outDist   Receives the squared chord lengths, same layout
+     * @param outCount  Receives the number of points found for each position
+     */
+    public void nearestCovered(double[] lat, double[] lon, double[] altitude, int k,
+                               int[] outIdx, double[] outDist, int[] outCount) {
+        for (int m = 0; m < lat.length; m++) {
+            outCount[m] = nearest(lat[m], lon[m], altitude[m], true, k, outIdx, outDist, m * k);
+        }
+    }
+
+
+    private int nearest(double lat, double lon, double altitude, boolean covered,
+                        int k, int[] outIdx, double[] outDist, int offset) {
+        k = Math.min(k, mX.length);
+        if (k <= 0) return 0;
+
+        double[] v = new double[3];
+        Geodesy.toVector(lat, lon, v, 0);
+
+        // The output arrays hold a max-heap on distance while searching
+        Query q = new Query(v[0], v[1], v[2], altitude, covered, k, outIdx, outDist, offset);
+        search(0, mX.length, q);
+        int size = q.size;
+
+        // Heap sort into nearest first
+        for (int end = size - 1; end > 0; end--) {
+            swapHeap(outIdx, outDist, offset, offset + end);
+            siftDown(outIdx, outDist, offset, end, 0);
+        }
+        return size;
+    }
+
+
+    // One search, kept together so the recursion only passes the range
+    private static final class Query {
+        final double x, y, z;
+        final double altitude;
+        final boolean covered;
+        final int k;
+        final int[] heapIdx;
+        final double[] heapDist;
+        final int offset;
+        int size;
+
+        Query(double x, double y, double z, double altitude, boolean covered,
+              int k, int[] heapIdx, double[] heapDist, int offset) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.altitude = altitude;
+            this.covered = covered;
+            this.k = k;
+            this.heapIdx = heapIdx;
+            this.heapDist = heapDist;
+            this.offset = offset;
+        }
+    }
+
+
+    private void search(int lo, int hi, Query q) {
+        if (hi <= lo) return;
+        int mid = (lo + hi) >>> 1;
+
+        // Skip the subtree if no point in it can be nearer than the worst kept, or cover the query
+        double box = boxDistance(mid, q);
+        if (q.size == q.k && box >= q.heapDist[q.offset]) return;
+        if (q.covered && (box > mSubReach[mid] || mSubCeiling[mid] < q.altitude)) return;
+
+        double dx = mX[mid] - q.x, dy = mY[mid] - q.y, dz = mZ[mid] - q.z;
+        double d = dx * dx + dy * dy + dz * dz;
+        if (!q.covered || (d <= mReach[mid] && mCeiling[mid] >= q.altitude)) {
+            if (q.size < q.k) {
+                q.heapIdx[q.offset + q.size] = mOrder[mid];
+                q.heapDist[q.offset + q.size] = d;
+                siftUp(q.heapIdx, q.heapDist, q.offset, q.size++);
+            } else if (d < q.heapDist[q.offset]) {
+                q.heapIdx[q.offset] = mOrder[mid];
+                q.heapDist[q.offset] = d;
+                siftDown(q.heapIdx, q.heapDist, q.offset, q.size, 0);
+            }
+        }
+
+        // Near side first, it is the more likely to tighten the bound for the other one
+        int axis = mAxis[mid];
+        double diff = (axis == 0 ? q.x : (axis == 1 ? q.y : q.z)) - coordinate(axis)[mid];
+        if (diff < 0) {
+            search(lo, mid, q);
+            search(mid + 1, hi, q);
+        } else {
+            search(mid + 1, hi, q);
+            search(lo, mid, q);
+        }
+    }
+
+
+    // Squared distance from the query to the bounding box of a subtree, 0 inside it
+    private double boxDistance(int node, Query q) {
+        double d = 0;
+        for (int a = 0; a < 3; a++) {
+            double v = a == 0 ? q.x : (a == 1 ? q.y : q.z);
+            double min = mBoxMin[3 * node + a];
+            double max = mBoxMax[3 * node + a];
+            if (v < min) d += (min - v) * (min - v);
+            else if (v > max) d += (v - max) * (v - max);
+        }
+        return d;
+    }
+
+
+    private static void siftUp(int[] idx, double[] dist, int offset, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (dist[offset + parent] >= dist[offset + i]) return;
+            swapHeap(idx, dist, offset + parent, offset + i);
+            i = parent;
+        }
+    }
+
+
+    private static void siftDown(int[] idx, double[] dist, int offset, int size, int i) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1, right = left + 1;
+            if (left < size && dist[offset + left] > dist[offset + largest]) largest = left;
+            if (right < size && dist[offset + right] > dist[offset + largest]) largest = right;
+            if (largest == i) return;
+            swapHeap(idx, dist, offset + i, offset + largest);
+            i = largest;
+        }
+    }
+
+
+    private static void swapHeap(int[] idx, double[] dist, int a, int b) {
+        int t = idx[a]; idx[a] = idx[b]; idx[b] = t;
+        double d = dist[a]; dist[a] = dist[b]; dist[b] = d;
+    }
+
+
+    // Angular distance in radians for a squared chord length from nearest()
+    public static double angle(double chord2) {
+        return 2 * Math.asin(Math.min(1, Math.sqrt(chord2) / 2));
+    }
+
+
+    public int size() {
+        return mX.length;
+    }
+}
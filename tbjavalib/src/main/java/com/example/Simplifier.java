@@ -0,0 +1,142 @@
+package com.example;
+
+
+/*
+ * Douglas-Peucker simplification of polylines and polygons given as lat/lon arrays.
+ *
+ * Rather than simplifying once per tolerance, importance() runs the algorithm once and records for
+ * every point the largest tolerance at which it would still be kept. Simplifying for any tolerance
+ * is then a threshold on that array, which gives exactly the Douglas-Peucker result and makes
+ * the levels nested - a point kept at some tolerance is kept at every smaller one.
+ *
+ * Distances are in metres on a local flat projection around the first point, which is plenty
+ * for areas up to a few hundred kilometres across.
+ */
+public final class Simplifier {
+
+    private static final double METRES_PER_DEGREE = 111195;
+
+    private Simplifier() {
+    }
+
+
+    /**
+     * Largest tolerance in metres at which each point survives simplification.
+     * <p>
+     * The first and last point, and for polygons the point farthest from the first one, are always
+     * kept and get Double.POSITIVE_INFINITY, so a closed ring never collapses below three points.
+     *
+     * @param lat   Latitudes
+     * @param lon   Longitudes
+     * @return importance per point
+     */
+    public static double[] importance(double[] lat, double[] lon) {
+        int n = lat.length;
+        double[] result = new double[n];
+        if (n == 0) return result;
+
+        // Flat coordinates in metres
+        double kx = METRES_PER_DEGREE * Math.cos(Math.toRadians(lat[0]));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (lon[i] - lon[0]) * kx;
+            y[i] = (lat[i] - lat[0]) * METRES_PER_DEGREE;
+        }
+
+        int far = 0;
+        double farDist = -1;
+        for (int i = 1; i < n; i++) {
+            double d = x[i] * x[i] + y[i] * y[i];
+            if (d > farDist) {
+                farDist = d;
+                far = i;
+            }
+        }
+        result[0] = Double.POSITIVE_INFINITY;
+        result[n - 1] = Double.POSITIVE_INFINITY;
+        result[far] = Double.POSITIVE_INFINITY;
+
+        // Explicit stack of (first, last, importance of the split that made them) spans
+        int[] stack = new int[2 * n + 4];
+        double[] cap = new double[n + 2];
+        int top = 0;
+        if (far > 0 && far < n - 1) {
+            stack[2 * top] = 0;
+            stack[2 * top + 1] = far;
+            cap[top++] = Double.POSITIVE_INFINITY;
+            stack[2 * top] = far;
+            stack[2 * top + 1] = n - 1;
+            cap[top++] = Double.POSITIVE_INFINITY;
+        } else {
+            stack[2 * top] = 0;
+            stack[2 * top + 1] = n - 1;
+            cap[top++] = Double.POSITIVE_INFINITY;
+        }
+
+        while (top > 0) {
+            top--;
+            int first = stack[2 * top];
+            int last = stack[2 * top + 1];
+            double limit = cap[top];
+            if (last - first < 2) continue;
+
+            int split = -1;
+            double maxDist = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > maxDist) {
+                    maxDist = d;
+                    split = i;
+                }
+            }
+
+            // A point can never outlive the split that made its span
+            double value = Math.min(maxDist, limit);
+            result[split] = value;
+
+            stack[2 * top] = first;
+            stack[2 * top + 1] = split;
+            cap[top++] = value;
+            stack[2 * top] = split;
+            stack[2 * top + 1] = last;
+            cap[top++] = value;
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Indexes of the points kept at a tolerance.
+     *
+     * @param importance    From importance()
+     * @param tolerance     Largest allowed distance in metres between the simplified and the original line
+     * @return indexes in increasing order
+     */
+    public static int[] select(double[] importance, double tolerance) {
+        int count = 0;
+        for (double v : importance) {
+            if (v > tolerance) count++;
+        }
+
+        int[] kept = new int[count];
+        int k = 0;
+        for (int i = 0; i < importance.length; i++) {
+            if (importance[i] > tolerance) kept[k++] = i;
+        }
+        return kept;
+    }
+
+
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / len2;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+}
@@ -0,0 +1,504 @@
+package com.example;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.Float.parseFloat;
+import static java.lang.Integer.parseInt;
+
+/*
+ * Immutable World Magnetic Model coefficient tables.
+ *
+ * The Gauss coefficients are read and converted from Schmidt normalized to unnormalized form
+ * exactly once. After construction nothing in here is written again, so a single instance can be
+ * shared by any number of MagneticModel objects on any number of threads.
+ *
+ * Tables are indexed the same way as in the original WMM C code and the JavaScript port:
+ * c[m][n] holds g(n,m) and c[n][m-1] holds h(n,m).
+ *
+ * Besides the built in WMM2015 tables, newer models can be read from the WMM.COF files published
+ * by NOAA. A parsed model is cached as a small binary file holding the already unnormalized
+ * tables, so later loads just map that file and skip both text parsing and normalisation.
+ * The binary layout is little-endian:
+ *
+ *      int     MAGIC
+ *      int     FILE_VERSION
+ *      double  model epoch
+ *      int     maximum degree N
+ *      int     reserved, always 0
+ *      double  (N+1)*(N+1) values of c, row by row
+ *      double  (N+1)*(N+1) values of cd, row by row
+ */
+public final class WmmCoefficients {
+
+    // The WMM is a degree and order 12 model, so all tables are 13 x 13
+    public static final int MAX_DEGREE = 12;
+    static final int SIZE = MAX_DEGREE + 1;
+
+    // Each model is valid for five years from its epoch
+    public static final double VALIDITY_YEARS = 5.0;
+
+    private static final int MAGIC = 0x57434f46;     // "WCOF"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+
+    private final double mEpoch;
+    private final int mMaxDegree;
+
+    final double[][] c  = new double[SIZE][SIZE];
+    final double[][] cd = new double[SIZE][SIZE];
+    final double[][] k  = new double[SIZE][SIZE];
+
+
+    private WmmCoefficients(double epoch, int maxDegree) {
+        if (maxDegree < 1 || maxDegree > MAX_DEGREE) {
+            throw new IllegalArgumentException("Degree out of range ! Valid range 1 to " + MAX_DEGREE);
+        }
+
+        mEpoch = epoch;
+        mMaxDegree = maxDegree;
+    }
+
+
+    /*
+     * Build the tables from raw Schmidt normalized coefficient rows.
+     *
+     * Each row holds n, m, gnm, hnm, dgnm, dhnm - the same six columns as a line in WMM.COF.
+     */
+    public WmmCoefficients(double epoch, int maxDegree, double[][] rows) {
+        this(epoch, maxDegree);
+
+        double[] snorm = new double[SIZE * SIZE];
+        double flnmj;
+
+        // READ WORLD MAGNETIC MODEL SPHERICAL HARMONIC COEFFICIENTS
+        c[0][0] = 0.0;
+        cd[0][0] = 0.0;
+
+        for (double[] row : rows) {
+            int n = (int) row[0];
+            int m = (int) row[1];
+
+            if (n > maxDegree) continue;
+
+            if (m <= n) {
+                c[m][n] = row[2];
+                cd[m][n] = row[4];
+                if (m != 0) {
+                    c[n][m-1] = row[3];
+                    cd[n][m-1] = row[5];
+                }
+            }
+        }
+
+
+        // CONVERT SCHMIDT NORMALIZED GAUSS COEFFICIENTS TO UNNORMALIZED
+        snorm[0] = 1.0;
+        for (int n=1; n<=maxDegree; n++) {
+            snorm[n] = snorm[n-1]*(2*n-1)/n;
+            int j = 2;
+            for (int m=0, D1=1, D2=(n-m+D1)/D1; D2>0; D2--, m+=D1) {
+                if (m > 0) {
+                    flnmj = (float)((n-m+1)*j)/(float)(n+m);
+                    snorm[n+m*SIZE] = snorm[n+(m-1)*SIZE]*Math.sqrt(flnmj);
+                    j = 1;
+                    c[n][m-1] = snorm[n+m*SIZE]*c[n][m-1];
+                    cd[n][m-1] = snorm[n+m*SIZE]*cd[n][m-1];
+                }
+                c[m][n] = snorm[n+m*SIZE]*c[m][n];
+                cd[m][n] = snorm[n+m*SIZE]*cd[m][n];
+            }
+        }
+
+        initRecursion();
+    }
+
+
+    /*
+     * The recursion terms for the associated Legendre functions only depend on the degree,
+     * so they are never stored in files.
+     */
+    private void initRecursion() {
+        for (int n=1; n<=mMaxDegree; n++) {
+            for (int m=0; m<=n; m++) {
+                k[m][n] = (float)(((n-1)*(n-1))-(m*m))/(float)((2*n-1)*(2*n-3));
+            }
+        }
+        k[1][1] = 0.0;
+    }
+
+
+    public double getEpoch() {
+        return mEpoch;
+    }
+
+    public int getMaxDegree() {
+        return mMaxDegree;
+    }
+
+
+    /*
+     * True if the decimal year is inside the five year validity window of this model
+     */
+    public boolean isValidFor(double decimalYear) {
+        double dt = decimalYear - mEpoch;
+        return dt >= 0.0 && dt <= VALIDITY_YEARS;
+    }
+
+
+    /*
+     * The shared WMM2015 tables, built the first time somebody asks for them.
+     */
+    public static WmmCoefficients wmm2015() {
+        return Wmm2015Holder.INSTANCE;
+    }
+
+
+    private static class Wmm2015Holder {
+        static final WmmCoefficients INSTANCE = buildWmm2015();
+    }
+
+
+    /*
+     * Parse and normalise the built in WMM2015 coefficients from scratch. Only the holder above
+     * and the benchmarks should need this.
+     */
+    static WmmCoefficients buildWmm2015() {
+        return new WmmCoefficients(2015.0, MAX_DEGREE, parseRows(WMM2015_COF));
+    }
+
+
+    /*
+     * Split the comma separated coefficient strings into numeric rows.
+     *
+     * The values are read as floats, just like the original port did, so results stay
+     * bit for bit identical with earlier versions.
+     */
+    static double[][] parseRows(String[] lines) {
+        double[][] rows = new double[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            String[] c_flds = lines[i].replaceAll("\\s+", "").split(",");
+            rows[i] = new double[]{
+                    parseInt(c_flds[0], 10),
+                    parseInt(c_flds[1], 10),
+                    parseFloat(c_flds[2]),
+                    parseFloat(c_flds[3]),
+                    parseFloat(c_flds[4]),
+                    parseFloat(c_flds[5])
+            };
+        }
+        return rows;
+    }
+
+
+    /**
+     * Read a WMM.COF file as published by NOAA, for example WMM2020.COF.
+     *
+     * The first line holds the epoch and model name, followed by one line per coefficient and
+     * terminated by a line of nines.
+     *
+     * @param file  Coefficient file
+     * @return the coefficient tables
+     * @throws IOException if the file cannot be read or does not look like a WMM.COF file
+     */
+    public static WmmCoefficients readCof(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "US-ASCII"));
+        try {
+            String line = reader.readLine();
+            while (line != null && line.trim().isEmpty()) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                throw new IOException("Empty coefficient file: " + file);
+            }
+
+            double epoch;
+            try {
+                epoch = Double.parseDouble(line.trim().split("\\s+")[0]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Missing epoch in coefficient file: " + file);
+            }
+
+            List<double[]> rows = new ArrayList<>();
+            int maxDegree = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] c_flds = line.trim().split("\\s+");
+                if (c_flds[0].startsWith("9999")) break;
+                if (c_flds.length < 6) continue;
+
+                try {
+                    double[] row = new double[]{
+                            parseInt(c_flds[0], 10),
+                            parseInt(c_flds[1], 10),
+                            parseFloat(c_flds[2]),
+                            parseFloat(c_flds[3]),
+                            parseFloat(c_flds[4]),
+                            parseFloat(c_flds[5])
+                    };
+                    rows.add(row);
+                    maxDegree = Math.max(maxDegree, (int) row[0]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad coefficient line in " + file + ": " + line);
+                }
+            }
+
+            try {
+                return new WmmCoefficients(epoch, Math.min(maxDegree, MAX_DEGREE),
+                        rows.toArray(new double[rows.size()][]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("No usable coefficients in " + file);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+
+    /**
+     * Memory map tables saved earlier with save().
+     *
+     * @param file  Binary coefficient file
+     * @return the coefficient tables
+     * @throws IOException if the file cannot be read or is not a coefficient file
+     */
+    public static WmmCoefficients load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FILE_VERSION) {
+                throw new IOException("Not a coefficient file: " + file);
+            }
+
+            double epoch = buffer.getDouble();
+            int maxDegree = buffer.getInt();
+            buffer.getInt();
+
+            if (maxDegree < 1 || maxDegree > MAX_DEGREE) {
+                throw new IOException("Degree out of range in coefficient file: " + file);
+            }
+            int n = maxDegree + 1;
+            if (buffer.remaining() != 2 * n * n * 8) {
+                throw new IOException("Truncated coefficient file: " + file);
+            }
+
+            WmmCoefficients cof = new WmmCoefficients(epoch, maxDegree);
+            DoubleBuffer values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            for (int i = 0; i < n; i++) {
+                values.get(cof.c[i], 0, n);
+            }
+            for (int i = 0; i < n; i++) {
+                values.get(cof.cd[i], 0, n);
+            }
+            cof.initRecursion();
+            return cof;
+        } finally {
+            raf.close();
+        }
+    }
+
+
+    /**
+     * Write the unnormalized tables to a binary file. The data is written to a temporary file
+     * first and then renamed, so a reader never sees a half written file.
+     *
+     * @param file  Destination
+     * @throws IOException on write errors
+     */
+    public void save(File file) throws IOException {
+        int n = mMaxDegree + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 2 * n * n * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FILE_VERSION);
+        buffer.putDouble(mEpoch);
+        buffer.putInt(mMaxDegree);
+        buffer.putInt(0);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                buffer.putDouble(c[i][j]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                buffer.putDouble(cd[i][j]);
+            }
+        }
+        buffer.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            // renameTo will not replace an existing file on all platforms
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Could not write coefficient file: " + file);
+            }
+        }
+    }
+
+
+    /**
+     * Load a WMM.COF file through a binary cache in the directory.
+     *
+     * The first time a COF file is seen it is parsed and saved in binary form, after that the
+     * binary file is mapped directly, until the COF file changes. Each COF file gets its own
+     * cache file, so several model epochs can live side by side.
+     *
+     * @param cofFile   Coefficient file, for example WMM2020.COF
+     * @param cacheDir  Directory for the binary files
+     * @return the coefficient tables
+     * @throws IOException if neither the cache nor the COF file can be read
+     */
+    public static WmmCoefficients loadOrConvert(File cofFile, File cacheDir) throws IOException {
+        File cache = new File(cacheDir, fileName(cofFile));
+
+        if (cache.exists() && cache.lastModified() >= cofFile.lastModified()) {
+            try {
+                return load(cache);
+            } catch (IOException e) {
+                // Corrupt or old file - just convert again below
+            }
+        }
+
+        WmmCoefficients cof = readCof(cofFile);
+        try {
+            cof.save(cache);
+        } catch (IOException e) {
+            // Read-only or full storage - the parsed tables are still good, just not cached
+            Logger.getLogger(WmmCoefficients.class.getName()).log(Level.WARNING, "Could not cache " + cofFile, e);
+        }
+        return cof;
+    }
+
+
+    /*
+     * Binary cache files are named after the COF file, for example "WMM2020.COF.bin"
+     */
+    public static String fileName(File cofFile) {
+        return cofFile.getName() + ".bin";
+    }
+
+
+    /*
+     * Import the 2015 - 2020 coefficients from WMM.COF as strings
+     *
+     * This is easy to maintain, distribute and parse in the Class.
+     */
+    private static final String[] WMM2015_COF = {
+                "	1	,	0	,	-29438.5	,	0	,	10.7	,	0	",
+                "	1	,	1	,	-1501.1	,	4796.2	,	17.9	,	-26.8	",
+                "	2	,	0	,	-2445.3	,	0	,	-8.6	,	0	",
+                "	2	,	1	,	3012.5	,	-2845.6	,	-3.3	,	-27.1	",
+                "	2	,	2	,	1676.6	,	-642	,	2.4	,	-13.3	",
+                "	3	,	0	,	1351.1	,	0	,	3.1	,	0	",
+                "	3	,	1	,	-2352.3	,	-115.3	,	-6.2	,	8.4	",
+                "	3	,	2	,	1225.6	,	245	,	-0.4	,	-0.4	",
+                "	3	,	3	,	581.9	,	-538.3	,	-10.4	,	2.3	",
+                "	4	,	0	,	907.2	,	0	,	-0.4	,	0	",
+                "	4	,	1	,	813.7	,	283.4	,	0.8	,	-0.6	",
+                "	4	,	2	,	120.3	,	-188.6	,	-9.2	,	5.3	",
+                "	4	,	3	,	-335	,	180.9	,	4	,	3	",
+                "	4	,	4	,	70.3	,	-329.5	,	-4.2	,	-5.3	",
+                "	5	,	0	,	-232.6	,	0	,	-0.2	,	0	",
+                "	5	,	1	,	360.1	,	47.4	,	0.1	,	0.4	",
+                "	5	,	2	,	192.4	,	196.9	,	-1.4	,	1.6	",
+                "	5	,	3	,	-141	,	-119.4	,	0	,	-1.1	",
+                "	5	,	4	,	-157.4	,	16.1	,	1.3	,	3.3	",
+                "	5	,	5	,	4.3	,	100.1	,	3.8	,	0.1	",
+                "	6	,	0	,	69.5	,	0	,	-0.5	,	0	",
+                "	6	,	1	,	67.4	,	-20.7	,	-0.2	,	0	",
+                "	6	,	2	,	72.8	,	33.2	,	-0.6	,	-2.2	",
+                "	6	,	3	,	-129.8	,	58.8	,	2.4	,	-0.7	",
+                "	6	,	4	,	-29	,	-66.5	,	-1.1	,	0.1	",
+                "	6	,	5	,	13.2	,	7.3	,	0.3	,	1	",
+                "	6	,	6	,	-70.9	,	62.5	,	1.5	,	1.3	",
+                "	7	,	0	,	81.6	,	0	,	0.2	,	0	",
+                "	7	,	1	,	-76.1	,	-54.1	,	-0.2	,	0.7	",
+                "	7	,	2	,	-6.8	,	-19.4	,	-0.4	,	0.5	",
+                "	7	,	3	,	51.9	,	5.6	,	1.3	,	-0.2	",
+                "	7	,	4	,	15	,	24.4	,	0.2	,	-0.1	",
+                "	7	,	5	,	9.3	,	3.3	,	-0.4	,	-0.7	",
+                "	7	,	6	,	-2.8	,	-27.5	,	-0.9	,	0.1	",
+                "	7	,	7	,	6.7	,	-2.3	,	0.3	,	0.1	",
+                "	8	,	0	,	24	,	0	,	0	,	0	",
+                "	8	,	1	,	8.6	,	10.2	,	0.1	,	-0.3	",
+                "	8	,	2	,	-16.9	,	-18.1	,	-0.5	,	0.3	",
+                "	8	,	3	,	-3.2	,	13.2	,	0.5	,	0.3	",
+                "	8	,	4	,	-20.6	,	-14.6	,	-0.2	,	0.6	",
+                "	8	,	5	,	13.3	,	16.2	,	0.4	,	-0.1	",
+                "	8	,	6	,	11.7	,	5.7	,	0.2	,	-0.2	",
+                "	8	,	7	,	-16	,	-9.1	,	-0.4	,	0.3	",
+                "	8	,	8	,	-2	,	2.2	,	0.3	,	0	",
+                "	9	,	0	,	5.4	,	0	,	0	,	0	",
+                "	9	,	1	,	8.8	,	-21.6	,	-0.1	,	-0.2	",
+                "	9	,	2	,	3.1	,	10.8	,	-0.1	,	-0.1	",
+                "	9	,	3	,	-3.1	,	11.7	,	0.4	,	-0.2	",
+                "	9	,	4	,	0.6	,	-6.8	,	-0.5	,	0.1	",
+                "	9	,	5	,	-13.3	,	-6.9	,	-0.2	,	0.1	",
+                "	9	,	6	,	-0.1	,	7.8	,	0.1	,	0	",
+                "	9	,	7	,	8.7	,	1	,	0	,	-0.2	",
+                "	9	,	8	,	-9.1	,	-3.9	,	-0.2	,	0.4	",
+                "	9	,	9	,	-10.5	,	8.5	,	-0.1	,	0.3	",
+                "	10	,	0	,	-1.9	,	0	,	0	,	0	",
+                "	10	,	1	,	-6.5	,	3.3	,	0	,	0.1	",
+                "	10	,	2	,	0.2	,	-0.3	,	-0.1	,	-0.1	",
+                "	10	,	3	,	0.6	,	4.6	,	0.3	,	0	",
+                "	10	,	4	,	-0.6	,	4.4	,	-0.1	,	0	",
+                "	10	,	5	,	1.7	,	-7.9	,	-0.1	,	-0.2	",
+                "	10	,	6	,	-0.7	,	-0.6	,	-0.1	,	0.1	",
+                "	10	,	7	,	2.1	,	-4.1	,	0	,	-0.1	",
+                "	10	,	8	,	2.3	,	-2.8	,	-0.2	,	-0.2	",
+                "	10	,	9	,	-1.8	,	-1.1	,	-0.1	,	0.1	",
+                "	10	,	10	,	-3.6	,	-8.7	,	-0.2	,	-0.1	",
+                "	11	,	0	,	3.1	,	0	,	0	,	0	",
+                "	11	,	1	,	-1.5	,	-0.1	,	0	,	0	",
+                "	11	,	2	,	-2.3	,	2.1	,	-0.1	,	0.1	",
+                "	11	,	3	,	2.1	,	-0.7	,	0.1	,	0	",
+                "	11	,	4	,	-0.9	,	-1.1	,	0	,	0.1	",
+                "	11	,	5	,	0.6	,	0.7	,	0	,	0	",
+                "	11	,	6	,	-0.7	,	-0.2	,	0	,	0	",
+                "	11	,	7	,	0.2	,	-2.1	,	0	,	0.1	",
+                "	11	,	8	,	1.7	,	-1.5	,	0	,	0	",
+                "	11	,	9	,	-0.2	,	-2.5	,	0	,	-0.1	",
+                "	11	,	10	,	0.4	,	-2	,	-0.1	,	0	",
+                "	11	,	11	,	3.5	,	-2.3	,	-0.1	,	-0.1	",
+                "	12	,	0	,	-2	,	0	,	0.1	,	0	",
+                "	12	,	1	,	-0.3	,	-1	,	0	,	0	",
+                "	12	,	2	,	0.4	,	0.5	,	0	,	0	",
+                "	12	,	3	,	1.3	,	1.8	,	0.1	,	-0.1	",
+                "	12	,	4	,	-0.9	,	-2.2	,	-0.1	,	0	",
+                "	12	,	5	,	0.9	,	0.3	,	0	,	0	",
+                "	12	,	6	,	0.1	,	0.7	,	0.1	,	0	",
+                "	12	,	7	,	0.5	,	-0.1	,	0	,	0	",
+                "	12	,	8	,	-0.4	,	0.3	,	0	,	0	",
+                "	12	,	9	,	-0.4	,	0.2	,	0	,	0	",
+                "	12	,	10	,	0.2	,	-0.9	,	0	,	0	",
+                "	12	,	11	,	-0.9	,	-0.2	,	0	,	0	",
+                "	12	,	12	,	0	,	0.7	,	0	,	0	"
+    };
+}
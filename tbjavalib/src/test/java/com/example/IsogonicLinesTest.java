@@ -0,0 +1,98 @@
+package com.example;
+
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Contour lines traced through WMM2015 grids, checked against the grid they came from.
+ */
+public class IsogonicLinesTest {
+
+    private static final double YEAR = 2017.5;
+
+
+    @Test
+    public void linesFollowTheirDeclinationAcrossTheWrap() {
+        // Both magnetic poles, where declination jumps between +180 and -180
+        DeclinationGrid north = DeclinationGrid.build(new MagneticModel(), YEAR, 60, -180, 89, 180, 1, 2);
+        DeclinationGrid south = DeclinationGrid.build(new MagneticModel(), YEAR, -89, 60, -50, 180, 1, 2);
+        assertTrue(hasWrap(north));
+        assertTrue(hasWrap(south));
+
+        assertLinesOnLevel(north, IsogonicLines.trace(north, 10));
+        assertLinesOnLevel(south, IsogonicLines.trace(south, 10));
+    }
+
+
+    @Test
+    public void linesFollowTheirDeclinationWithoutWrap() {
+        DeclinationGrid grid = DeclinationGrid.build(new MagneticModel(), YEAR, 50, 0, 60, 20, 0.25, 1);
+        assertFalse(hasWrap(grid));
+
+        assertLinesOnLevel(grid, IsogonicLines.trace(grid, 1));
+    }
+
+
+    private static boolean hasWrap(DeclinationGrid grid) {
+        for (int r = 0; r < grid.getRows(); r++) {
+            for (int c = 0; c < grid.getCols() - 1; c++) {
+                if (Math.abs(grid.value(r, c) - grid.value(r, c + 1)) > 180) return true;
+            }
+        }
+        return false;
+    }
+
+
+    /*
+     * Every point sits on a grid edge. Interpolating along that edge the short way round, as the
+     * declination really changes, has to give the level of the line back. A false crossing of an
+     * edge from +179 to -179 comes out near 180 here.
+     */
+    private static void assertLinesOnLevel(DeclinationGrid grid, List<IsogonicLines.Line> lines) {
+        assertFalse(lines.isEmpty());
+        for (IsogonicLines.Line line : lines) {
+            for (int i = 0; i < line.size(); i++) {
+                double lat = line.getLat(i);
+                double lon = line.getLon(i);
+                assertEquals("Line " + line.getDeclination() + " at " + lat + "," + lon,
+                        0, difference(line.getDeclination(), edgeValue(grid, lat, lon)), 1e-3);
+            }
+        }
+    }
+
+
+    private static double edgeValue(DeclinationGrid grid, double lat, double lon) {
+        double y = (lat - grid.getMinLat()) / grid.getCellSize();
+        double x = (lon - grid.getMinLon()) / grid.getCellSize();
+        int r, c, r2, c2;
+        double t;
+        if (Math.abs(y - Math.rint(y)) < 1e-9) {
+            r = r2 = (int) Math.rint(y);
+            c = Math.min((int) x, grid.getCols() - 2);
+            c2 = c + 1;
+            t = x - c;
+        } else {
+            c = c2 = (int) Math.rint(x);
+            r = Math.min((int) y, grid.getRows() - 2);
+            r2 = r + 1;
+            t = y - r;
+        }
+        double v1 = grid.value(r, c);
+        return v1 + t * difference(v1, grid.value(r2, c2));
+    }
+
+
+    // Signed angle from a to b, -180 .. 180
+    private static double difference(double a, double b) {
+        double d = (b - a) % 360;
+        if (d > 180) d -= 360;
+        if (d < -180) d += 360;
+        return d;
+    }
+}
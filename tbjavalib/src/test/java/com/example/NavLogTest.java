@@ -0,0 +1,179 @@
+package com.example;
+
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * NavLog against the per leg formulas MarkerObject used before the log was introduced, on random
+ * routes, winds and edits.
+ */
+public class NavLogTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+
+    // The old MarkerObject calculations, one value at a time
+    private static final class Leg {
+        double dist, tt, var;
+        double gs, wca, ias, th, mh, time, eto;
+
+        void calc(double tas, double alt, double windDir, double windStr, boolean first) {
+            double a = windStr * Math.sin(Math.toRadians(windDir - tt)) / tas;
+            double b = windStr * Math.cos(Math.toRadians(windDir - tt));
+            gs = Math.sqrt(1 - Math.pow(a, 2)) * (tas - b);
+            wca = Math.toDegrees(Math.atan(windStr * Math.sin(Math.toRadians(windDir - tt)) / tas));
+            ias = tas / (1 + alt / 1000. * 0.02);
+            th = (tt + wca + 360.) % 360;
+            mh = th - var;
+            time = (dist / gs) * 60.;
+            if (first) time += 2;
+        }
+    }
+
+
+    @Test
+    public void computeMatchesPerLegFormulas() {
+        Random random = new Random(1);
+        for (int run = 0; run < 200; run++) {
+            int n = 2 + random.nextInt(40);
+            Leg[] legs = randomLegs(random, n);
+            double tas = 60 + random.nextDouble() * 140;
+            double alt = random.nextDouble() * 9500;
+            double windDir = random.nextDouble() * 360;
+            double windStr = random.nextDouble() * 40;
+
+            NavLog log = new NavLog();
+            log.setSize(n);
+            for (int i = 1; i < n; i++) {
+                log.setLeg(i, legs[i].dist, legs[i].tt, legs[i].var);
+            }
+            log.compute(1, n, tas, alt, windDir, windStr);
+            log.accumulate(1);
+
+            calcAll(legs, tas, alt, windDir, windStr);
+            assertLog(legs, log);
+        }
+    }
+
+
+    @Test
+    public void editsMatchFullRecalculation() {
+        Random random = new Random(2);
+        NavLog log = new NavLog();
+        Leg[] legs = randomLegs(random, 5);
+        double tas = 95, alt = 2500, windDir = 240, windStr = 15;
+
+        log.setSize(legs.length);
+        for (int i = 1; i < legs.length; i++) {
+            log.setLeg(i, legs[i].dist, legs[i].tt, legs[i].var);
+        }
+        log.compute(1, legs.length, tas, alt, windDir, windStr);
+        log.accumulate(1);
+
+        for (int edit = 0; edit < 500; edit++) {
+            int n = legs.length;
+            int index;
+            if (n > 2 && random.nextBoolean()) {
+                // Remove a way point, the legs on both sides change
+                index = random.nextInt(n);
+                Leg[] fewer = new Leg[n - 1];
+                System.arraycopy(legs, 0, fewer, 0, index);
+                System.arraycopy(legs, index + 1, fewer, index, n - index - 1);
+                legs = fewer;
+                log.remove(index);
+                if (index == 0) legs[0] = new Leg();
+            } else {
+                // Insert a way point
+                index = random.nextInt(n + 1);
+                Leg[] more = new Leg[n + 1];
+                System.arraycopy(legs, 0, more, 0, index);
+                System.arraycopy(legs, index, more, index + 1, n - index);
+                more[index] = index == 0 ? new Leg() : randomLeg(random);
+                legs = more;
+                log.insert(index);
+            }
+
+            // Like RouteNav: new geometry for the legs touching the edit, then recalculate those
+            int from = Math.max(1, index);
+            int to = Math.min(legs.length, index + 2);
+            if (index == 0 && legs.length > 1) legs[1] = randomLeg(random);
+            for (int i = from; i < to; i++) {
+                log.setLeg(i, legs[i].dist, legs[i].tt, legs[i].var);
+            }
+            log.compute(1, Math.min(legs.length, 3), tas, alt, windDir, windStr);   // First leg start time
+            log.compute(from, to, tas, alt, windDir, windStr);
+            log.accumulate(1);
+
+            calcAll(legs, tas, alt, windDir, windStr);
+            assertLog(legs, log);
+        }
+    }
+
+
+    @Test
+    public void startHasNoLeg() {
+        NavLog log = new NavLog();
+        log.setSize(3);
+        log.setLeg(1, 10, 90, 2);
+        log.setLeg(2, 20, 180, 2);
+        log.compute(1, 3, 100, 1000, 0, 0);
+        log.accumulate(1);
+
+        log.remove(0);
+        assertEquals(2, log.size());
+        assertEquals(0, log.getDist(0), 0);
+        assertEquals(0, log.getTime(0), 0);
+        assertEquals(0, log.getEto(0), 0);
+    }
+
+
+    private static Leg[] randomLegs(Random random, int n) {
+        Leg[] legs = new Leg[n];
+        legs[0] = new Leg();
+        for (int i = 1; i < n; i++) {
+            legs[i] = randomLeg(random);
+        }
+        return legs;
+    }
+
+
+    private static Leg randomLeg(Random random) {
+        Leg leg = new Leg();
+        leg.dist = 0.5 + random.nextDouble() * 60;
+        leg.tt = random.nextDouble() * 360;
+        leg.var = -5 + random.nextDouble() * 10;
+        return leg;
+    }
+
+
+    private static void calcAll(Leg[] legs, double tas, double alt, double windDir, double windStr) {
+        double eto = 0;
+        for (int i = 1; i < legs.length; i++) {
+            legs[i].calc(tas, alt, windDir, windStr, i == 1);
+            eto += legs[i].time;
+            legs[i].eto = eto;
+        }
+    }
+
+
+    private static void assertLog(Leg[] legs, NavLog log) {
+        assertEquals(legs.length, log.size());
+        double accDist = 0;
+        for (int i = 1; i < legs.length; i++) {
+            Leg leg = legs[i];
+            accDist += leg.dist;
+            assertEquals("GS " + i, leg.gs, log.getGS(i), TOLERANCE);
+            assertEquals("WCA " + i, leg.wca, log.getWCA(i), TOLERANCE);
+            assertEquals("IAS " + i, leg.ias, log.getIAS(i), TOLERANCE);
+            assertEquals("TH " + i, leg.th, log.getTH(i), TOLERANCE);
+            assertEquals("MH " + i, leg.mh, log.getMH(i), TOLERANCE);
+            assertEquals("time " + i, leg.time, log.getTime(i), TOLERANCE);
+            assertEquals("ETO " + i, leg.eto, log.getEto(i), TOLERANCE);
+            assertEquals("distance " + i, accDist, log.getAccumulatedDist(i), TOLERANCE);
+        }
+    }
+}